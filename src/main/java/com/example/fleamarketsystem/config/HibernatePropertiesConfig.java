@@ -0,0 +1,14 @@
+package com.example.fleamarketsystem.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+/**
+ * Hibernate の2次キャッシュ・バッチ書き込み・コネクションの返却時期の設定を読み込む。
+ * application.properties は環境ごとに用意するため、これらの設定は別ファイルでリポジトリに含める。
+ */
+@Configuration
+@PropertySource({ "classpath:hibernate-cache.properties", "classpath:hibernate-batch.properties",
+		"classpath:hibernate-connection.properties" })
+public class HibernatePropertiesConfig {
+}
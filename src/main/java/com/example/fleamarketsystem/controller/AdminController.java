@@ -1,9 +1,7 @@
 package com.example.fleamarketsystem.controller;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.time.LocalDate;
-import java.util.stream.Collectors;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -19,27 +17,53 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import com.example.fleamarketsystem.entity.Item;
-import com.example.fleamarketsystem.service.AdminUserService;
+import com.example.fleamarketsystem.entity.ItemStatus;
 import com.example.fleamarketsystem.service.AppOrderService;
 import com.example.fleamarketsystem.service.ContactService;
+import com.example.fleamarketsystem.service.CsvExportService;
+import com.example.fleamarketsystem.service.EntityCacheStatistics;
 import com.example.fleamarketsystem.service.ItemService;
+import com.example.fleamarketsystem.service.RefundQueue;
+import com.example.fleamarketsystem.service.RefundWorker;
+import com.example.fleamarketsystem.service.SalesStatisticsService;
+import com.example.fleamarketsystem.service.SearchResultCache;
+import com.example.fleamarketsystem.service.StripeService;
 
 @Controller
 @RequestMapping("/admin")
 @PreAuthorize("hasRole('ADMIN')")
 public class AdminController {
 
+	private static final int DASHBOARD_PAGE_SIZE = 20;
+	private static final int TOP_SELLERS = 10;
+	private static final int FAILED_REFUNDS = 50;
+
 	private final ItemService itemService;
 	private final AppOrderService appOrderService;
-	private final AdminUserService adminUserService;
 	private final ContactService contactService;
+	private final SearchResultCache searchResultCache;
+	private final EntityCacheStatistics entityCacheStatistics;
+	private final SalesStatisticsService salesStatisticsService;
+	private final CsvExportService csvExportService;
+	private final RefundQueue refundQueue;
+	private final RefundWorker refundWorker;
+	private final StripeService stripeService;
 
 	public AdminController(ItemService itemService, AppOrderService appOrderService,
-			AdminUserService adminUserService, ContactService contactService) {
+			ContactService contactService, SearchResultCache searchResultCache,
+			EntityCacheStatistics entityCacheStatistics,
+			SalesStatisticsService salesStatisticsService, CsvExportService csvExportService,
+			RefundQueue refundQueue, RefundWorker refundWorker, StripeService stripeService) {
 		this.itemService = itemService;
 		this.appOrderService = appOrderService;
-		this.adminUserService = adminUserService;
 		this.contactService = contactService;
+		this.searchResultCache = searchResultCache;
+		this.entityCacheStatistics = entityCacheStatistics;
+		this.salesStatisticsService = salesStatisticsService;
+		this.csvExportService = csvExportService;
+		this.refundQueue = refundQueue;
+		this.refundWorker = refundWorker;
+		this.stripeService = stripeService;
 	}
 
 	@GetMapping("/items")
@@ -49,17 +73,26 @@ public class AdminController {
 	}
 
 	@GetMapping("/dashboard")
-	public String dashboard(Model model) {
+	public String dashboard(@RequestParam(value = "activePage", defaultValue = "0") int activePage,
+			@RequestParam(value = "pendingPage", defaultValue = "0") int pendingPage,
+			@RequestParam(value = "cancelledPage", defaultValue = "0") int cancelledPage,
+			Model model) {
 	    // 修正前: itemService.getAvailableItems() など（出品中のものだけを取得していた）
 	    // 修正後: getAllItems() を使用して、売却済みの商品も表示されるようにする
-	    model.addAttribute("recentItems", itemService.getAllItems().stream()
-	            .limit(10) // 最新10件などに制限すると見やすくなります
-	            .collect(Collectors.toList()));
-
-	    model.addAttribute("activeOrders", appOrderService.getActiveOrders());
-	    model.addAttribute("pendingCancels", appOrderService.getPendingCancelOrders());
-	    model.addAttribute("finalizedCancels", appOrderService.getFinalizedCancelledOrders());
+	    model.addAttribute("recentItems", itemService.getRecentItemsForAdmin());
+
+	    // 注文はステータスごとに1ページ分だけ取得し、件数はステータス別の集計1回で求める
+	    model.addAttribute("orderSummary", appOrderService.getDashboardSummary());
+	    model.addAttribute("activeOrders", appOrderService.getActiveOrders(Math.max(0, activePage), DASHBOARD_PAGE_SIZE));
+	    model.addAttribute("pendingCancels", appOrderService.getPendingCancelOrders(Math.max(0, pendingPage), DASHBOARD_PAGE_SIZE));
+	    model.addAttribute("finalizedCancels", appOrderService.getFinalizedCancelledOrders(Math.max(0, cancelledPage), DASHBOARD_PAGE_SIZE));
+	    model.addAttribute("failedRefunds", refundQueue.findFailed(FAILED_REFUNDS));
 	    model.addAttribute("unreadContactCount", contactService.getUnreadCount());
+	    model.addAttribute("searchCacheSize", searchResultCache.size());
+	    model.addAttribute("searchCacheStats", searchResultCache.stats());
+	    model.addAttribute("entityCacheRegions", entityCacheStatistics.regions());
+	    model.addAttribute("stripeCircuitState", stripeService.getCircuitState());
+	    model.addAttribute("stripeOperations", stripeService.getOperationStats());
 	    
 	    return "admin_dashboard";
 	}
@@ -68,6 +101,7 @@ public class AdminController {
 	public String showStatistics(
 			@RequestParam(value = "startDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
 			@RequestParam(value = "endDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+			@RequestParam(value = "granularity", defaultValue = "DAY") SalesStatisticsService.Granularity granularity,
 			Model model) {
 
 		if (startDate == null)
@@ -75,11 +109,17 @@ public class AdminController {
 		if (endDate == null)
 			endDate = LocalDate.now();
 
-		// Service側の戻り値（BigDecimal/Map）を正しく受け取ってModelへ
+		// 集計はすべて DB 側で行い、集計結果だけを受け取る
 		model.addAttribute("startDate", startDate);
 		model.addAttribute("endDate", endDate);
-		model.addAttribute("totalSales", appOrderService.getTotalSales(startDate, endDate));
-		model.addAttribute("orderCountByStatus", appOrderService.getOrderCountByStatus(startDate, endDate));
+		model.addAttribute("totalSales", salesStatisticsService.getTotalSales(startDate, endDate));
+		model.addAttribute("orderCountByStatus", salesStatisticsService.getOrderCountByStatus(startDate, endDate));
+
+		model.addAttribute("granularity", granularity);
+		model.addAttribute("granularities", SalesStatisticsService.Granularity.values());
+		model.addAttribute("salesByPeriod", salesStatisticsService.getSalesByPeriod(granularity, startDate, endDate));
+		model.addAttribute("salesByCategory", salesStatisticsService.getSalesByCategory(startDate, endDate));
+		model.addAttribute("topSellers", salesStatisticsService.getTopSellers(startDate, endDate, TOP_SELLERS));
 
 		return "admin_statistics";
 	}
@@ -89,7 +129,7 @@ public class AdminController {
 	    // 新しく作った方のメソッドを呼ぶ
 	    Item item = itemService.getItemByIdOrThrow(itemId); 
 
-	    if ("取引中".equals(item.getStatus())) {
+	    if (item.getStatus() == ItemStatus.TRADING || item.isReserved()) {
 	        return "redirect:/admin/items?error=trading";
 	    }
 
@@ -98,9 +138,14 @@ public class AdminController {
 	}
 
 	@PostMapping("/orders/{id}/final-cancel")
-	public String finalizeCancelByAdmin(@PathVariable("id") Long orderId) throws com.stripe.exception.StripeException {
-		appOrderService.finalCancel(orderId);
-		return "redirect:/admin/dashboard?success=refunded";
+	public String finalizeCancelByAdmin(@PathVariable("id") Long orderId, RedirectAttributes redirectAttributes) {
+		try {
+			appOrderService.finalCancel(orderId);
+			redirectAttributes.addFlashAttribute("successMessage", "返金を受け付けました。返金が完了するとキャンセルが確定します。");
+		} catch (Exception e) {
+			redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
+		}
+		return "redirect:/admin/dashboard";
 	}
 
 	@PostMapping("/orders/{id}/force-cancel")
@@ -109,13 +154,24 @@ public class AdminController {
 			RedirectAttributes redirectAttributes) {
 		try {
 			appOrderService.forceCancelByAdmin(orderId, reason);
-			redirectAttributes.addFlashAttribute("successMessage", "強制キャンセルを実行しました。");
+			redirectAttributes.addFlashAttribute("successMessage", "強制キャンセルを受け付けました。返金が完了するとキャンセルが確定します。");
 		} catch (Exception e) {
 			redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
 		}
 		return "redirect:/admin/dashboard";
 	}
 
+	// 再試行の上限に達した返金を、試行回数を戻して待ち行列に戻す
+	@PostMapping("/refunds/{orderId}/retry")
+	public String retryRefund(@PathVariable("orderId") Long orderId, RedirectAttributes redirectAttributes) {
+		if (refundWorker.retry(orderId)) {
+			redirectAttributes.addFlashAttribute("successMessage", "返金を再試行します。");
+		} else {
+			redirectAttributes.addFlashAttribute("errorMessage", "再試行できる返金が見つかりません。");
+		}
+		return "redirect:/admin/dashboard";
+	}
+
 	@GetMapping("/contacts")
 	public String showContacts(Model model) {
 		model.addAttribute("contacts", contactService.getAllContacts());
@@ -145,22 +201,42 @@ public class AdminController {
 		if (endDate == null)
 			endDate = LocalDate.now();
 
-		response.setContentType("text/csv; charset=UTF-8");
-		response.setHeader("Content-Disposition", "attachment;filename=\"flea_market_statistics.csv\"");
-
-		try (PrintWriter writer = response.getWriter()) {
-			// 1. Excel用BOMの書き込み
-			writer.write('\ufeff');
-
-			// 2. サービス側の詳細なCSV出力ロジックを呼び出す
-			// 統計期間のヘッダー等もサービス側で統一的に管理
-			writer.append("統計期間：").append(String.valueOf(startDate))
-					.append("から").append(String.valueOf(endDate)).append("\n\n");
-
-			// 注文明細やステータス集計など、AdminUserServiceに実装したロジックを利用
-			adminUserService.writeStatisticsCsv(writer, startDate, endDate);
+		startCsv(response, "flea_market_statistics.csv");
+		// 集計のあとに期間内の注文明細を続ける（明細は1行ずつ応答へ書き出す）
+		csvExportService.exportStatistics(response.getWriter(), startDate, endDate);
+	}
 
-			writer.flush();
+	// 注文・商品・ユーザー・お問い合わせの CSV。件数に関わらず1行ずつ応答へ書き出す
+	@GetMapping("/export/{dataset}")
+	public void exportCsv(@PathVariable("dataset") String dataset,
+			@RequestParam(value = "startDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+			@RequestParam(value = "endDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+			HttpServletResponse response) throws IOException {
+		switch (dataset) {
+		case "orders" -> {
+			startCsv(response, "flea_market_orders.csv");
+			csvExportService.exportOrders(response.getWriter(),
+					startDate != null ? startDate : LocalDate.of(2000, 1, 1),
+					endDate != null ? endDate : LocalDate.now());
 		}
+		case "items" -> {
+			startCsv(response, "flea_market_items.csv");
+			csvExportService.exportItems(response.getWriter());
+		}
+		case "users" -> {
+			startCsv(response, "flea_market_users.csv");
+			csvExportService.exportUsers(response.getWriter());
+		}
+		case "contacts" -> {
+			startCsv(response, "flea_market_contacts.csv");
+			csvExportService.exportContacts(response.getWriter());
+		}
+		default -> response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		}
+	}
+
+	private static void startCsv(HttpServletResponse response, String filename) {
+		response.setContentType("text/csv; charset=UTF-8");
+		response.setHeader("Content-Disposition", "attachment;filename=\"" + filename + "\"");
 	}
-}
\ No newline at end of file
+}
@@ -72,6 +72,8 @@ public class AdminUserController {
 		model.addAttribute("user", user);
 		// 平均評価を Model に格納
 		model.addAttribute("avgRating", avg);
+		// 評価の件数と星ごとの内訳を Model に格納
+		model.addAttribute("reputation", service.reputation(id));
 		// クレーム件数を Model に格納
 		model.addAttribute("complaintCount", complaints);
 		// クレーム詳細一覧を Model に格納
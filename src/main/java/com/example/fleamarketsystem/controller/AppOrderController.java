@@ -1,6 +1,7 @@
 package com.example.fleamarketsystem.controller;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
@@ -9,14 +10,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import com.example.fleamarketsystem.entity.OrderStatus;
 import com.example.fleamarketsystem.entity.User;
 import com.example.fleamarketsystem.service.AppOrderService;
+import com.example.fleamarketsystem.service.StripeWebhookService;
 import com.example.fleamarketsystem.service.UserService;
-import com.stripe.exception.StripeException;
+import com.stripe.exception.SignatureVerificationException;
 
 @Controller
 @RequestMapping("/orders")
@@ -24,13 +30,16 @@ public class AppOrderController {
 
 	private final AppOrderService appOrderService;
 	private final UserService userService;
+	private final StripeWebhookService stripeWebhookService;
 
 	@Value("${stripe.public.key}")
 	private String stripePublicKey;
 
-	public AppOrderController(AppOrderService appOrderService, UserService userService) {
+	public AppOrderController(AppOrderService appOrderService, UserService userService,
+			StripeWebhookService stripeWebhookService) {
 		this.appOrderService = appOrderService;
 		this.userService = userService;
+		this.stripeWebhookService = stripeWebhookService;
 	}
 
 	@PostMapping("/initiate-purchase")
@@ -60,17 +69,38 @@ public class AppOrderController {
 		return "payment_confirmation";
 	}
 
+	// 決済後に Stripe から戻ってくる画面。Stripe への確認はワーカーと Webhook に任せ、ここでは待たない
 	@GetMapping("/complete-purchase")
 	public String completePurchase(@RequestParam("paymentIntentId") String paymentIntentId,
 			RedirectAttributes redirectAttributes) {
-		try {
-			appOrderService.completePurchase(paymentIntentId);
-			redirectAttributes.addFlashAttribute("successMessage", "決済完了！取引を開始しました。");
-			return "redirect:/my_page/orders"; // 購入済ではなく取引履歴へ
-		} catch (StripeException | IllegalStateException e) {
-			redirectAttributes.addFlashAttribute("errorMessage", "エラー: " + e.getMessage());
+		OrderStatus status = appOrderService.getOrderStatusByPaymentIntentId(paymentIntentId).orElse(null);
+		if (status == null) {
+			redirectAttributes.addFlashAttribute("errorMessage", "エラー: 注文が見つかりません。");
 			return "redirect:/items";
 		}
+		if (status == OrderStatus.PAYMENT_PENDING) {
+			stripeWebhookService.requestPaymentCheck(paymentIntentId);
+			redirectAttributes.addFlashAttribute("successMessage", "決済を受け付けました。確認ができしだい取引を開始します。");
+		} else {
+			redirectAttributes.addFlashAttribute("successMessage", "決済完了！取引を開始しました。");
+		}
+		return "redirect:/my_page/orders"; // 購入済ではなく取引履歴へ
+	}
+
+	// Stripe からの Webhook。署名を確かめてイベントを保存したらすぐに 200 を返し、処理はワーカーで行う
+	@PostMapping("/stripe-webhook")
+	@ResponseBody
+	public ResponseEntity<Void> stripeWebhook(@RequestBody String payload,
+			@RequestHeader(value = "Stripe-Signature", required = false) String signature) {
+		if (signature == null) {
+			return ResponseEntity.badRequest().build();
+		}
+		try {
+			stripeWebhookService.receive(payload, signature);
+			return ResponseEntity.ok().build();
+		} catch (SignatureVerificationException e) {
+			return ResponseEntity.badRequest().build();
+		}
 	}
 
 	@PostMapping("/{id}/confirm-arrival")
@@ -135,9 +165,9 @@ public class AppOrderController {
 	public String finalCancel(@PathVariable("id") Long orderId, RedirectAttributes redirectAttributes) {
 		try {
 			appOrderService.finalCancel(orderId);
-			redirectAttributes.addFlashAttribute("successMessage", "返金処理とキャンセルが完了しました。");
+			redirectAttributes.addFlashAttribute("successMessage", "返金を受け付けました。返金が完了するとキャンセルが確定します。");
 		} catch (Exception e) {
-			redirectAttributes.addFlashAttribute("errorMessage", "返金失敗: " + e.getMessage());
+			redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
 		}
 		return "redirect:/admin/dashboard"; // 管理者用注文一覧へ
 	}
@@ -1,30 +1,48 @@
 package com.example.fleamarketsystem.controller;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
-import org.springframework.data.domain.Page;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Slice;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import com.example.fleamarketsystem.entity.Category;
 import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
 import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.repository.ItemSort;
 import com.example.fleamarketsystem.service.CategoryService;
 import com.example.fleamarketsystem.service.ChatService;
 import com.example.fleamarketsystem.service.FavoriteService;
+import com.example.fleamarketsystem.service.ItemCard;
+import com.example.fleamarketsystem.service.ItemDetail;
+import com.example.fleamarketsystem.service.ItemDetailService;
+import com.example.fleamarketsystem.service.ItemImportService;
+import com.example.fleamarketsystem.service.ItemSearchResult;
+import com.example.fleamarketsystem.service.ItemSuggestIndex;
+import com.example.fleamarketsystem.service.ListingHighWaterMarks;
 import com.example.fleamarketsystem.service.ItemService;
-import com.example.fleamarketsystem.service.ReviewService;
 import com.example.fleamarketsystem.service.UserService;
+import com.example.fleamarketsystem.util.ItemCursor;
 
 @Controller
 @RequestMapping("/items")
@@ -40,33 +58,86 @@ public class ItemController {
 
 	private final FavoriteService favoriteService;
 
-	private final ReviewService reviewService;
+	private final ItemDetailService itemDetailService;
+
+	private final ListingHighWaterMarks listingHighWaterMarks;
+
+	private final ItemImportService itemImportService;
 
 	public ItemController(ItemService itemService, CategoryService categoryService,
 			UserService userService, ChatService chatService, FavoriteService favoriteService,
-			ReviewService reviewService) {
+			ItemDetailService itemDetailService, ListingHighWaterMarks listingHighWaterMarks,
+			ItemImportService itemImportService) {
 		this.itemService = itemService;
 		this.categoryService = categoryService;
 		this.userService = userService;
 		this.chatService = chatService;
 		this.favoriteService = favoriteService;
-		this.reviewService = reviewService;
+		this.itemDetailService = itemDetailService;
+		this.listingHighWaterMarks = listingHighWaterMarks;
+		this.itemImportService = itemImportService;
 	}
 
 	@GetMapping
 	public String listItems(@RequestParam(value = "keyword", required = false) String keyword,
 			@RequestParam(value = "categoryId", required = false) Long categoryId,
 			@RequestParam(value = "page", defaultValue = "0") int page,
-			@RequestParam(value = "size", defaultValue = "10") int size, Model model) {
-		Page<Item> items = itemService.searchItems(keyword, categoryId, page, size);
+			@RequestParam(value = "cursor", required = false) String cursor,
+			@RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+			@RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "size", defaultValue = "10") int size,
+			@AuthenticationPrincipal UserDetails userDetails, WebRequest webRequest, HttpServletResponse response,
+			Model model) {
+		// 未ログインの閲覧者には、カテゴリの最終変更時刻が変わっていなければ 304 を返す
+		if (userDetails == null && checkNotModified(webRequest, response, "items",
+				listingHighWaterMarks.lastModified(categoryId))) {
+			return null;
+		}
 		List<Category> categories = categoryService.getAllCategories();
-
-		model.addAttribute("items", items);
+		ItemSort itemSort = ItemSort.fromParam(sort);
+
+		if (minPrice != null || maxPrice != null || itemSort != null) {
+			// 価格帯・並び順の指定がある場合は条件を組み合わせた検索（ページ番号で移動）
+			model.addAttribute("items", itemService.filterItems(keyword, categoryId, minPrice, maxPrice, itemSort,
+					page, size));
+			model.addAttribute("cursorMode", false);
+		} else if (StringUtils.hasText(keyword)) {
+			// キーワード検索は関連度順のためページ番号で移動する
+			ItemSearchResult result = itemService.searchItemsWithFacets(keyword, categoryId, page, size);
+			model.addAttribute("items", result.getPage());
+			model.addAttribute("facets", result.getFacets());
+			model.addAttribute("cursorMode", false);
+		} else {
+			// 通常の一覧は新着順のカーソルページング
+			Slice<ItemCard> items = itemService.browseItems(categoryId, cursor, size);
+			model.addAttribute("items", items);
+			model.addAttribute("cursorMode", true);
+			model.addAttribute("nextCursor", ItemCursor.next(items, ItemCard::createdAt, ItemCard::id));
+		}
 		model.addAttribute("categories", categories);
+		model.addAttribute("sorts", ItemSort.values());
 
 		return "item_list";
 	}
 
+	// ETag と Last-Modified を設定し、リクエストの検証子と一致すれば true（304 応答）を返す。
+	// ログイン状態で内容が変わるため、キャッシュには毎回再検証させ Cookie ごとに区別させる
+	private static boolean checkNotModified(WebRequest webRequest, HttpServletResponse response, String scope,
+			long lastModified) {
+		response.setHeader("Cache-Control", "no-cache");
+		response.setHeader("Vary", "Cookie");
+		return webRequest.checkNotModified("W/\"" + scope + "-" + lastModified + "\"", lastModified);
+	}
+
+	// 検索窓の入力補完（JSON）。1文字入力するごとに呼ばれるため件数は最大20件に制限する
+	@GetMapping("/suggest")
+	@ResponseBody
+	public List<ItemSuggestIndex.Suggestion> suggest(@RequestParam(value = "q", required = false) String q,
+			@RequestParam(value = "limit", defaultValue = "8") int limit) {
+		return itemService.suggest(q, Math.max(1, Math.min(limit, 20)));
+	}
+
 	@GetMapping("/new")
 	public String showAddItemForm(Model model) {
 		model.addAttribute("item", new Item());
@@ -75,23 +146,64 @@ public class ItemController {
 		return "item_form";
 	}
 
+	@GetMapping("/import")
+	public String showImportForm(@AuthenticationPrincipal UserDetails userDetails) {
+		if (userDetails == null) {
+			return "redirect:/login";
+		}
+		return "item_import";
+	}
+
+	// CSV（商品名, 説明, 価格, カテゴリ名, 画像URL）で一括出品し、行ごとの結果を表示する
+	@PostMapping("/import")
+	public String importItems(@AuthenticationPrincipal UserDetails userDetails,
+			@RequestParam("file") MultipartFile file, Model model, RedirectAttributes redirectAttributes) {
+		if (userDetails == null) {
+			redirectAttributes.addFlashAttribute("errorMessage", "セッションが切れました。もう一度ログインしてください。");
+			return "redirect:/login";
+		}
+		if (file.isEmpty()) {
+			model.addAttribute("errorMessage", "CSVファイルを選択してください。");
+			return "item_import";
+		}
+		User seller = userService.getUserByEmail(userDetails.getUsername())
+				.orElseThrow(() -> new RuntimeException("Seller not found"));
+
+		try (InputStreamReader reader = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)) {
+			model.addAttribute("report", itemImportService.importCsv(reader, seller.getId()));
+		} catch (IOException e) {
+			model.addAttribute("errorMessage", "CSVファイルを読み込めませんでした:" + e.getMessage());
+		}
+		return "item_import";
+	}
+
 	@GetMapping("/{id}")
 	public String showItemDetail(@PathVariable("id") Long id,
-			@AuthenticationPrincipal UserDetails userDetails, Model model) {
-		Optional<Item> item = itemService.getItemById(id);
-		if (item.isEmpty()) {
+			@AuthenticationPrincipal UserDetails userDetails, WebRequest webRequest, HttpServletResponse response,
+			Model model) {
+		// 未ログインの閲覧者には、商品が変わっていなければチャットなどを読み込む前に 304 を返す
+		if (userDetails == null) {
+			Optional<Long> lastModified = itemDetailService.getLastModified(id);
+			if (lastModified.isPresent()
+					&& checkNotModified(webRequest, response, "item-" + id, lastModified.get())) {
+				return null;
+			}
+		}
+		// 商品・出品者・評価平均・お気に入り状態とチャットを、まとめて2回の問い合わせで取得する
+		Optional<ItemDetail> detail = itemDetailService.getItemDetail(id,
+				userDetails != null ? userDetails.getUsername() : null);
+		if (detail.isEmpty()) {
 			return "redirect:/items"; // Item not found
 		}
-		model.addAttribute("item", item.get());
-		model.addAttribute("chats", chatService.getChatMessagesByItem(id));
+		model.addAttribute("item", detail.get().getItem());
+		model.addAttribute("chats", detail.get().getChats());
 
-		reviewService.getAverageRatingForSeller(item.get().getSeller()).ifPresent(
-				avg -> model.addAttribute("sellerAverageRating", String.format("%.1f", avg)));
+		if (detail.get().getSellerAverageRating() != null) {
+			model.addAttribute("sellerAverageRating", String.format("%.1f", detail.get().getSellerAverageRating()));
+		}
 
 		if (userDetails != null) {
-			User currentUser = userService.getUserByEmail(userDetails.getUsername())
-					.orElseThrow(() -> new RuntimeException("User not found"));
-			model.addAttribute("isFavorited", favoriteService.isFavorited(currentUser, id));
+			model.addAttribute("isFavorited", detail.get().isFavorited());
 		}
 
 		return "item_detail";
@@ -140,7 +252,7 @@ public class ItemController {
 		Item item = itemService.getItemById(id)
 				.orElseThrow(() -> new RuntimeException("Item not found"));
 
-		if (!"出品中".equals(item.getStatus())) {
+		if (item.getStatus() != ItemStatus.LISTED) {
 			redirectAttributes.addFlashAttribute("errorMessage", "この商品は現在チャットを受け付けておりません。");
 			return "redirect:/items/" + id;
 		}
@@ -163,7 +275,7 @@ public class ItemController {
 				.orElseThrow(() -> new RuntimeException("Item not found"));
 
 		// 【追加】売却済みの場合は編集不可
-		if ("売却済".equals(item.getStatus())) {
+		if (item.getStatus() == ItemStatus.SOLD) {
 			redirectAttributes.addFlashAttribute("errorMessage", "売却済みの商品は編集できません。");
 			return "redirect:/my_page/selling";
 		}
@@ -186,8 +298,8 @@ public class ItemController {
 				.orElseThrow(() -> new RuntimeException("Item not found"));
 
 		// 【追加】取引ステータスのチェック（編集制限）
-		if ("取引中".equals(existingItem.getStatus())) {
-			redirectAttributes.addFlashAttribute("errorMessage", "取引中の商品は編集できません。");
+		if (existingItem.getStatus() == ItemStatus.TRADING || existingItem.isReserved()) {
+			redirectAttributes.addFlashAttribute("errorMessage", "取引中・購入手続き中の商品は編集できません。");
 			return "redirect:/items/" + id;
 		}
 
@@ -214,6 +326,10 @@ public class ItemController {
 			redirectAttributes.addFlashAttribute("errorMessage",
 					"画像のアップロードに失敗しました:" + e.getMessage());
 			return "redirect:/item/{id}/edit";
+		} catch (OptimisticLockingFailureException e) {
+			// 編集画面を開いている間に購入手続きが始まった
+			redirectAttributes.addFlashAttribute("errorMessage", "購入手続きが始まったため、商品を更新できませんでした。");
+			return "redirect:/items/" + id;
 		}
 
 		return "redirect:/my_page/selling";
@@ -228,8 +344,8 @@ public class ItemController {
 				.orElseThrow(() -> new RuntimeException("Item not found"));
 
 		// 【追加】取引ステータスのチェック（削除制限）
-		if ("取引中".equals(itemToDelete.getStatus())) {
-			redirectAttributes.addFlashAttribute("errorMessage", "取引中の商品は削除できません。");
+		if (itemToDelete.getStatus() == ItemStatus.TRADING || itemToDelete.isReserved()) {
+			redirectAttributes.addFlashAttribute("errorMessage", "取引中・購入手続き中の商品は削除できません。");
 			return "redirect:/items/" + id;
 		}
 
@@ -51,6 +51,7 @@ public class ReviewController {
 	    List<Review> receivedReviews = reviewService.getReviewsReceivedByUser(currentUser);
 	    
 	    model.addAttribute("reviews", receivedReviews);
+	    model.addAttribute("reputation", reviewService.getReputation(currentUser));
 	    model.addAttribute("title", "自分への評価一覧");
 	    
 	    return "review_list"; // 新しく作成するHTML名
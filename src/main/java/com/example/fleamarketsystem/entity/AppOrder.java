@@ -7,42 +7,54 @@ import java.util.List;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedSubgraph;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Entity
 @Table(name = "app_order")
+@NamedEntityGraph(name = AppOrder.GRAPH_HISTORY, attributeNodes = {
+		@NamedAttributeNode(value = "item", subgraph = "item"), @NamedAttributeNode("buyer") },
+		subgraphs = @NamedSubgraph(name = "item", attributeNodes = @NamedAttributeNode("seller")))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 
 public class AppOrder {
 	
-	public static final String STATUS_TRADING = "取引中";
-	public static final String STATUS_CANCEL_REQUESTED = "キャンセル要請中";
-	public static final String STATUS_CANCEL_AGREED = "キャンセル同意済";
-	public static final String STATUS_CANCELLED = "キャンセル済";
-	public static final String STATUS_SHIPPED = "発送済";
-	public static final String STATUS_COMPLETED = "売却済";
+	// 購入・販売履歴（商品・出品者・購入者）
+	public static final String GRAPH_HISTORY = "AppOrder.history";
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "app_order_id_seq")
+	@SequenceGenerator(name = "app_order_id_seq", sequenceName = "app_order_id_seq", allocationSize = 50)
 	private Long id;
 	
-	@ManyToOne
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "item_id", nullable = false)
 	private Item item;
 	
-	@ManyToOne
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "buyer_id", nullable = false)
 	private User buyer;
 	
@@ -56,7 +68,16 @@ public class AppOrder {
 	private LocalDateTime createdAt = LocalDateTime.now();
 	
 	@Column(nullable = false)
-    private String status = STATUS_TRADING;
+    private OrderStatus status = OrderStatus.TRADING;
+
+	// 最後にステータスが変わった日時（決済・返金の途中で止まった注文を見つけるために使う）
+	@Column(name = "updated_at")
+	private LocalDateTime updatedAt;
+
+	// 楽観ロック。Webhook・完了画面・管理画面から同じ注文のステータスが同時に変わるのを防ぐ
+	@Version
+	@Column(nullable = false)
+	private Long version;
 
 	@Column(nullable = false)
 	private boolean buyerCancelRequested = false; // 購入者がキャンセルボタンを押したか
@@ -64,6 +85,8 @@ public class AppOrder {
 	@Column(nullable = false)
 	private boolean sellerCancelApproved = false; // 出品者が了承ボタンを押したか
 
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
 	@OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
 	private List<Review> reviews;
 }
@@ -1,23 +1,32 @@
 package com.example.fleamarketsystem.entity;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
+// 2次キャッシュ: 変更は Hibernate 経由（CategoryService）で行い、キャッシュも同時に更新される
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "category")
 @Table(name = "category")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Category {
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "category_id_seq")
+	@SequenceGenerator(name = "category_id_seq", sequenceName = "category_id_seq", allocationSize = 50)
 	private Long id;
 	
 	@Column(nullable = false, unique = true)
@@ -7,30 +7,49 @@ import java.util.List;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 import lombok.AllArgsConstructor;
 import lombok.Data; // 戻す
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Entity
 @Table(name = "item")
+// 関連はすべて遅延読み込みにし、画面ごとに必要な関連だけをエンティティグラフで一緒に取得する
+// （商品詳細は ItemRepository.findDetailById の fetch join、一覧カードは関連を参照しない）
+@NamedEntityGraph(name = Item.GRAPH_ADMIN, attributeNodes = {
+		@NamedAttributeNode("seller"), @NamedAttributeNode("category") })
 @Data // 戻す
 @NoArgsConstructor
 @AllArgsConstructor
 public class Item {
 	
+	// 管理画面の商品一覧・ダッシュボード（出品者・カテゴリ）
+	public static final String GRAPH_ADMIN = "Item.admin";
+	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_id_seq")
+	@SequenceGenerator(name = "item_id_seq", sequenceName = "item_id_seq", allocationSize = 50)
 	private Long id;
 	
-	@ManyToOne
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "user_id", nullable = false)
 	private User seller;
 	
@@ -43,26 +62,62 @@ public class Item {
 	@Column(nullable = false)
 	private BigDecimal price;
 	
-	@ManyToOne
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "category_id")
 	private Category category;
 	
-	private String status = "出品中";
+	private ItemStatus status = ItemStatus.LISTED;
 	
 	private String imageUrl;
 	
 	@Column(name = "created_at", nullable = false)
 	private LocalDateTime createdAt = LocalDateTime.now();
 	
+	// 条件付き GET の検証子。商品の変更のたびに更新する（チャット投稿時は ChatService が version を変えずに更新する）
+	@Column(name = "updated_at")
+	private LocalDateTime updatedAt;
+	
+	// 購入手続き中（決済待ち）の予約。予約した注文と期限。予約中も status は出品中のままで、一覧・詳細ではこの列を見て「購入手続き中」と表示する
+	@Column(name = "reservation_order_id")
+	private Long reservationOrderId;
+	
+	@Column(name = "reserved_until")
+	private LocalDateTime reservedUntil;
+	
+	// 楽観ロック。購入の受付（AppOrderService#initiatePurchase）で、同時に購入した人のうち1人だけが商品を予約できる
+	@Version
+	@Column(nullable = false)
+	private Long version;
+	
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
 	@OneToMany(mappedBy = "item", cascade = CascadeType.ALL, orphanRemoval = true)
 	private List<AppOrder> orders;
 	
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
 	@OneToMany(mappedBy = "item", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Chat> chats;
 	
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
 	@OneToMany(mappedBy = "item", cascade = CascadeType.ALL, orphanRemoval = true)
 	private List<FavoriteItem> favorites;
 	
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
 	@OneToMany(mappedBy = "item", cascade = CascadeType.ALL, orphanRemoval = true)
 	private List<Review> reviews;
-}
\ No newline at end of file
+	
+	public boolean isReserved() {
+		return reservationOrderId != null;
+	}
+	
+	@PrePersist
+	@PreUpdate
+	public void touch() {
+		updatedAt = LocalDateTime.now();
+	}
+}
@@ -0,0 +1,41 @@
+package com.example.fleamarketsystem.entity;
+
+/**
+ * 商品のステータス。DB には smallint のコードで保存する（ItemStatusConverter）。
+ * コードは保存済みのデータと部分インデックスの条件に使われるため、既存の値を変更しないこと。
+ */
+public enum ItemStatus {
+
+	LISTED(ItemStatus.LISTED_CODE, "出品中"),
+	TRADING(2, "取引中"),
+	SOLD(3, "売却済");
+
+	// ネイティブクエリと部分インデックス（where status = 1）に埋め込む出品中のコード
+	public static final int LISTED_CODE = 1;
+
+	private final short code;
+	private final String label;
+
+	ItemStatus(int code, String label) {
+		this.code = (short) code;
+		this.label = label;
+	}
+
+	public short getCode() {
+		return code;
+	}
+
+	// 画面に表示する名称
+	public String getLabel() {
+		return label;
+	}
+
+	public static ItemStatus fromCode(short code) {
+		for (ItemStatus status : values()) {
+			if (status.code == code) {
+				return status;
+			}
+		}
+		throw new IllegalArgumentException("Unknown item status code: " + code);
+	}
+}
@@ -0,0 +1,18 @@
+package com.example.fleamarketsystem.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter(autoApply = true)
+public class ItemStatusConverter implements AttributeConverter<ItemStatus, Short> {
+
+	@Override
+	public Short convertToDatabaseColumn(ItemStatus status) {
+		return status != null ? status.getCode() : null;
+	}
+
+	@Override
+	public ItemStatus convertToEntityAttribute(Short code) {
+		return code != null ? ItemStatus.fromCode(code) : null;
+	}
+}
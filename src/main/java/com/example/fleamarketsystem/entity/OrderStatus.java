@@ -0,0 +1,57 @@
+package com.example.fleamarketsystem.entity;
+
+/**
+ * 注文のステータス。DB には smallint のコードで保存する（OrderStatusConverter）。
+ * コードは保存済みのデータに使われるため、既存の値を変更しないこと。
+ */
+public enum OrderStatus {
+
+	PAYMENT_PENDING(1, "決済待ち"),
+	TRADING(2, "取引中"),
+	SHIPPED(3, "発送済"),
+	COMPLETED(OrderStatus.COMPLETED_CODE, "売却済"),
+	CANCEL_REQUESTED(5, "キャンセル要請中"),
+	CANCEL_AGREED(6, "キャンセル同意済"),
+	CANCELLED(7, "キャンセル済"),
+	// Stripe への問い合わせ中の状態。問い合わせの前にこの状態を保存し、応答を受けてから次の状態へ進める
+	// （DB のトランザクションを閉じてから Stripe を呼ぶため、途中で停止しても PaymentRecoveryService が続きを処理する）
+	PAYMENT_CREATING(8, "決済準備中"),
+	PAYMENT_FAILED(9, "決済失敗"),
+	REFUNDING(10, "返金処理中"),
+	// 決済待ちのまま予約の期限が切れた（PaymentIntent は取り消し済み）
+	EXPIRED(11, "期限切れ");
+
+	// 売上集計のネイティブクエリに埋め込む取引完了のコード
+	public static final int COMPLETED_CODE = 4;
+
+	private final short code;
+	private final String label;
+
+	OrderStatus(int code, String label) {
+		this.code = (short) code;
+		this.label = label;
+	}
+
+	public short getCode() {
+		return code;
+	}
+
+	// 画面に表示する名称
+	public String getLabel() {
+		return label;
+	}
+
+	// キャンセルの手続き中または完了
+	public boolean isCancellation() {
+		return this == CANCEL_REQUESTED || this == CANCEL_AGREED || this == REFUNDING || this == CANCELLED;
+	}
+
+	public static OrderStatus fromCode(short code) {
+		for (OrderStatus status : values()) {
+			if (status.code == code) {
+				return status;
+			}
+		}
+		throw new IllegalArgumentException("Unknown order status code: " + code);
+	}
+}
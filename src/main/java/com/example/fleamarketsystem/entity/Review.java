@@ -4,42 +4,62 @@ import java.time.LocalDateTime;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
 import jakarta.persistence.OneToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Entity
 @Table(name = "review")
+@NamedEntityGraph(name = Review.GRAPH_LIST, attributeNodes = {
+		@NamedAttributeNode("reviewer"), @NamedAttributeNode("seller"), @NamedAttributeNode("item") })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Review {
 	
+	// 評価一覧（評価者・出品者・商品）
+	public static final String GRAPH_LIST = "Review.list";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "review_id_seq")
+	@SequenceGenerator(name = "review_id_seq", sequenceName = "review_id_seq", allocationSize = 50)
 	private Long id;
 	
-	@OneToOne
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	@OneToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "order_id", nullable = false, unique = true)
 	private AppOrder order;
 	
-	@ManyToOne
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "reviewer_id", nullable = false)
 	private User reviewer;
 	
-	@ManyToOne
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "seller_id", nullable = false)
 	private User seller;
 	
-	@ManyToOne
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "item_id", nullable = false)
 	private Item item;
 	
@@ -0,0 +1,55 @@
+package com.example.fleamarketsystem.entity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 出品者ごとの評価集計。更新は SellerReputationRepository の加算クエリと再集計でのみ行う。
+ */
+@Entity
+@Table(name = "seller_reputation")
+@Data
+@NoArgsConstructor
+public class SellerReputation {
+
+	@Id
+	@Column(name = "seller_id")
+	private Long sellerId;
+
+	@Column(name = "review_count", nullable = false)
+	private long reviewCount;
+
+	@Column(name = "rating_sum", nullable = false)
+	private long ratingSum;
+
+	private long star1;
+	private long star2;
+	private long star3;
+	private long star4;
+	private long star5;
+
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+
+	public SellerReputation(Long sellerId) {
+		this.sellerId = sellerId;
+	}
+
+	// 評価がまだない場合は null
+	public Double getAverageRating() {
+		return reviewCount > 0 ? (double) ratingSum / reviewCount : null;
+	}
+
+	// 星1〜5の順の件数
+	public List<Long> getStarCounts() {
+		return List.of(star1, star2, star3, star4, star5);
+	}
+}
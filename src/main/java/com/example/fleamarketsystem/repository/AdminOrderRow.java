@@ -0,0 +1,20 @@
+package com.example.fleamarketsystem.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.OrderStatus;
+
+/**
+ * 管理画面ダッシュボードの注文一覧の1行。画面に出す列だけを結合して取得する（エンティティは読み込まない）。
+ */
+public record AdminOrderRow(
+		Long id,
+		String itemName,
+		String buyerName,
+		BigDecimal price,
+		OrderStatus status,
+		ItemStatus itemStatus,
+		LocalDateTime createdAt) {
+}
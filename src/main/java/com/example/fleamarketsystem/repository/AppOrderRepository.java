@@ -1,12 +1,22 @@
 package com.example.fleamarketsystem.repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.fleamarketsystem.entity.AppOrder;
+import com.example.fleamarketsystem.entity.OrderStatus;
 import com.example.fleamarketsystem.entity.User;
 
 @Repository
@@ -14,7 +24,96 @@ public interface AppOrderRepository extends JpaRepository<AppOrder, Long> {
 
 	Optional<AppOrder> findByPaymentIntentId(String paymentIntentId);
 
+	// 決済準備中・返金処理中のまま一定時間たった注文（PaymentRecoveryService）
+	@Query("select o.id from AppOrder o where o.status = :status and o.updatedAt < :before order by o.updatedAt")
+	List<Long> findIdsByStatusAndUpdatedAtBefore(@Param("status") OrderStatus status,
+			@Param("before") LocalDateTime before);
+
+	// 予約の期限が切れた決済待ちの注文（古い順、ReservationExpiryService が limit 件ずつ処理する）
+	@Query("select o.id from AppOrder o where o.status = :status and o.createdAt < :before order by o.createdAt")
+	List<Long> findIdsByStatusAndCreatedAtBefore(@Param("status") OrderStatus status,
+			@Param("before") LocalDateTime before, Pageable pageable);
+
+	// 購入・販売履歴: 商品・出品者・購入者を一緒に取得する
+	@EntityGraph(AppOrder.GRAPH_HISTORY)
 	List<AppOrder> findByBuyer(User buyer);
 
+	@EntityGraph(AppOrder.GRAPH_HISTORY)
 	List<AppOrder> findByItem_seller(User seller);
-}
\ No newline at end of file
+
+	// 管理画面ダッシュボード: 指定したステータスの注文を新しい順に、画面に出す列だけ取得する
+	// 件数は countByStatus でまとめて求めるため、ページは Slice（count なし）で返す
+	@Query("select new com.example.fleamarketsystem.repository.AdminOrderRow("
+			+ "o.id, i.name, b.name, o.price, o.status, i.status, o.createdAt)"
+			+ " from AppOrder o join o.item i join o.buyer b"
+			+ " where o.status in :statuses order by o.createdAt desc, o.id desc")
+	Slice<AdminOrderRow> findAdminRowsByStatusIn(@Param("statuses") Collection<OrderStatus> statuses,
+			Pageable pageable);
+
+	// ステータスごとの注文件数（結果行は (OrderStatus, Long)）
+	@Query("select o.status, count(o) from AppOrder o group by o.status")
+	List<Object[]> countByStatus();
+
+	// --- 管理画面の統計: すべて DB 側で集計する ---
+	// 期間は日付の半開区間 [:from, :to)。前日までは日別集計（sales_daily_rollup）を読み、
+	// 当日（:today 以降）の分だけ app_order を created_at の範囲で集計して足し合わせる
+
+	String COMPLETED = "o.status = " + OrderStatus.COMPLETED_CODE;
+
+	String DAILY_SALES = "with daily as ("
+			+ "select r.sales_date, r.category_id, r.status, r.order_count, r.amount from sales_daily_rollup r"
+			+ " where r.sales_date >= :from and r.sales_date < least(:to, :today)"
+			+ " union all"
+			+ " select cast(o.created_at as date), coalesce(i.category_id, 0), o.status, count(*), sum(o.price)"
+			+ " from app_order o join item i on i.id = o.item_id"
+			+ " where o.created_at >= cast(greatest(:from, :today) as timestamp)"
+			+ " and o.created_at < cast(:to as timestamp)"
+			+ " group by 1, 2, 3) ";
+
+	String DAILY_COMPLETED = "d.status = " + OrderStatus.COMPLETED_CODE;
+
+	// ステータス別件数（結果行は (ステータスのコード, 件数)）
+	@Query(value = DAILY_SALES + "select d.status, sum(d.order_count) from daily d group by d.status",
+			nativeQuery = true)
+	List<Object[]> countByStatusBetween(@Param("from") LocalDate from, @Param("to") LocalDate to,
+			@Param("today") LocalDate today);
+
+	// 取引完了した注文の売上合計
+	@Query(value = DAILY_SALES + "select coalesce(sum(d.amount), 0) from daily d where " + DAILY_COMPLETED,
+			nativeQuery = true)
+	BigDecimal sumCompletedPriceBetween(@Param("from") LocalDate from, @Param("to") LocalDate to,
+			@Param("today") LocalDate today);
+
+	// 期間を unit（day / week / month）ごとに区切った注文件数と売上。注文のない区間も 0 件の行として返す
+	// 結果行は (区間の開始日時, 注文件数, 売上)
+	@Query(value = DAILY_SALES + "select b.bucket, coalesce(sum(d.order_count), 0),"
+			+ " coalesce(sum(d.amount) filter (where " + DAILY_COMPLETED + "), 0)"
+			+ " from generate_series(date_trunc(:unit, cast(:from as timestamp)),"
+			+ " cast(:to as timestamp) - interval '1 day', cast('1 ' || :unit as interval)) as b(bucket)"
+			+ " left join daily d on d.sales_date >= b.bucket and d.sales_date < b.bucket + cast('1 ' || :unit as interval)"
+			+ " group by b.bucket order by b.bucket",
+			nativeQuery = true)
+	List<Object[]> summarizeByPeriod(@Param("unit") String unit, @Param("from") LocalDate from,
+			@Param("to") LocalDate to, @Param("today") LocalDate today);
+
+	// カテゴリ別の注文件数と売上（カテゴリ未設定の商品は categoryId が null の1行にまとまる）
+	// 結果行は (カテゴリID, カテゴリ名, 注文件数, 売上)
+	@Query(value = DAILY_SALES + "select nullif(d.category_id, 0), c.name, sum(d.order_count),"
+			+ " coalesce(sum(d.amount) filter (where " + DAILY_COMPLETED + "), 0) as sales"
+			+ " from daily d left join category c on c.id = d.category_id"
+			+ " group by d.category_id, c.name order by sales desc, sum(d.order_count) desc, d.category_id",
+			nativeQuery = true)
+	List<Object[]> summarizeByCategory(@Param("from") LocalDate from, @Param("to") LocalDate to,
+			@Param("today") LocalDate today);
+
+	// 売上上位の出品者（取引完了の注文のみ）。日別集計は出品者を持たないため app_order を期間で集計する
+	// 期間は created_at の半開区間 [from, to)
+	// 結果行は (出品者ID, 出品者名, 注文件数 Long, 売上 BigDecimal)
+	@Query(value = "select u.id, u.name, count(*), sum(o.price) as sales"
+			+ " from app_order o join item i on i.id = o.item_id join users u on u.id = i.user_id"
+			+ " where " + COMPLETED + " and o.created_at >= :from and o.created_at < :to"
+			+ " group by u.id, u.name order by sales desc, u.id limit :limit",
+			nativeQuery = true)
+	List<Object[]> findTopSellers(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+			@Param("limit") int limit);
+}
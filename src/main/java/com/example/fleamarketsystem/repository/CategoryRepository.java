@@ -1,14 +1,25 @@
 package com.example.fleamarketsystem.repository;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import com.example.fleamarketsystem.entity.Category;
 
+import jakarta.persistence.QueryHint;
+
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Long>{
 
+	// 一覧・出品画面のたびに呼ばれるため、結果をクエリキャッシュに載せる（カテゴリ変更時は Hibernate が無効化する）
+	@Override
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+	List<Category> findAll();
+
+	// CSV 一括出品でカテゴリ名を解決する際に繰り返し呼ばれる
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	Optional<Category> findByName(String name);
 }
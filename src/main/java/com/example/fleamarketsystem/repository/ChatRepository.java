@@ -2,7 +2,11 @@ package com.example.fleamarketsystem.repository;
 
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.fleamarketsystem.entity.Chat;
@@ -11,5 +15,10 @@ import com.example.fleamarketsystem.entity.Item;
 @Repository
 public interface ChatRepository extends JpaRepository<Chat, Long> {
 
+	@EntityGraph(attributePaths = "sender")
 	List<Chat> findByItemOrderByCreatedAtAsc(Item item);
+
+	// 商品詳細ページ用: 最新のメッセージから指定件数を送信者と一緒に取得する（新しい順）
+	@Query("select c from Chat c join fetch c.sender where c.item.id = :itemId order by c.createdAt desc, c.id desc")
+	List<Chat> findLatestByItemId(@Param("itemId") Long itemId, Pageable pageable);
 }
@@ -2,6 +2,7 @@ package com.example.fleamarketsystem.repository;
 
 import java.util.List;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -10,8 +11,11 @@ import com.example.fleamarketsystem.entity.Contact;
 @Repository
 public interface ContactRepository extends JpaRepository<Contact, Long> {
 
+	// 問い合わせ一覧: 送信者を一緒に取得する
+	@EntityGraph(attributePaths = "user")
 	List<Contact> findAllByOrderByCreatedAtDesc();
 
+	@EntityGraph(attributePaths = "user")
 	List<Contact> findByReadFalseOrderByCreatedAtDesc();
 
 	long countByReadFalse();
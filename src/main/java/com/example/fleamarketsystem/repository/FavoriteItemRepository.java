@@ -3,6 +3,7 @@ package com.example.fleamarketsystem.repository;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -14,6 +15,8 @@ import com.example.fleamarketsystem.entity.User;
 public interface FavoriteItemRepository extends JpaRepository<FavoriteItem, Long> {
 
 	Optional<FavoriteItem> findByUserAndItem(User user, Item item);
+	// お気に入り一覧: 商品を一緒に取得する
+	@EntityGraph(FavoriteItem.GRAPH_CARD)
 	List<FavoriteItem> findByUser(User user);
 	boolean existsByUserAndItem(User user, Item item);
 }
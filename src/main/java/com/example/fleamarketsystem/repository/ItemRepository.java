@@ -1,22 +1,115 @@
 package com.example.fleamarketsystem.repository;
 
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
 import com.example.fleamarketsystem.entity.User;
 
 @Repository
-public interface ItemRepository extends JpaRepository<Item, Long> {
-	
-	Page<Item> findByNameContainingIgnoreCaseAndStatus(String name, String status, Pageable pageable);
-	Page<Item> findByCategoryIdAndStatus(Long categoryId, String status, Pageable pageable);
-	Page<Item> findByNameContainingIgnoreCaseAndCategoryIdAndStatus(String name, Long categoryId, String status, Pageable pageable);
-	Page<Item> findByStatus(String status, Pageable pageable);
+public interface ItemRepository extends JpaRepository<Item, Long>, JpaSpecificationExecutor<Item> {
+
+	// 出品中の条件。部分インデックス（where status = 1）を汎用プランでも使えるよう、バインド変数ではなく定数で書く
+	String LISTED = "i.status = " + ItemStatus.LISTED_CODE;
+	String LISTED_JPQL = "i.status = com.example.fleamarketsystem.entity.ItemStatus.LISTED";
+
+	// キーワード検索（pg_trgm の GIN インデックスを使用）
+	// 商品名に一致するものを説明文のみの一致より優先し、その中で類似度・新着順に並べる
+	// メモリ上の検索インデックス（ItemSearchIndex）も同じ順序で返すため、変える場合は両方を揃えること
+	String KEYWORD_CONDITION = "(lower(i.name) like :pattern escape '\\' or lower(i.description) like :pattern escape '\\')";
+	String RELEVANCE_ORDER = " order by (lower(i.name) like :pattern escape '\\') desc,"
+			+ " similarity(lower(i.name), :keyword) desc, i.created_at desc, i.id desc";
+
+	@Query(value = "select i.* from item i where " + LISTED + " and " + KEYWORD_CONDITION + RELEVANCE_ORDER,
+			countQuery = "select count(*) from item i where " + LISTED + " and " + KEYWORD_CONDITION,
+			nativeQuery = true)
+	Page<Item> searchByKeyword(@Param("keyword") String keyword, @Param("pattern") String pattern,
+			Pageable pageable);
+
+	@Query(value = "select i.* from item i where " + LISTED + " and i.category_id = :categoryId and "
+			+ KEYWORD_CONDITION + RELEVANCE_ORDER,
+			countQuery = "select count(*) from item i where " + LISTED + " and i.category_id = :categoryId and "
+					+ KEYWORD_CONDITION,
+			nativeQuery = true)
+	Page<Item> searchByKeywordAndCategory(@Param("keyword") String keyword, @Param("pattern") String pattern,
+			@Param("categoryId") Long categoryId, Pageable pageable);
+
+	// 絞り込み候補の件数をカテゴリ別・価格帯別に1回の集計で求める（grouping sets）
+	// 価格帯の境界は SearchFacets と揃えること。カテゴリ条件なしは categoryId = -1
+	String PRICE_BUCKET = "case when i.price < 1000 then 0 when i.price < 3000 then 1"
+			+ " when i.price < 5000 then 2 when i.price < 10000 then 3 else 4 end";
+
+	@Query(value = "select grouping(i.category_id) as by_price, i.category_id, " + PRICE_BUCKET + " as price_bucket,"
+			+ " count(*) as hits,"
+			+ " sum(case when :categoryId < 0 or i.category_id = :categoryId then 1 else 0 end) as hits_in_category"
+			+ " from item i where " + LISTED + " and " + KEYWORD_CONDITION
+			+ " group by grouping sets ((i.category_id), (" + PRICE_BUCKET + "))",
+			nativeQuery = true)
+	List<Object[]> countFacetsByKeyword(@Param("pattern") String pattern, @Param("categoryId") long categoryId);
+
+	// キーセットページング: (created_at, id) の降順で、カーソル位置より後ろの商品を取得する
+	// 行値の比較で書き、(created_at desc, id desc) の部分インデックスの範囲条件（Index Cond）にそのまま載せる
+	// 件数取得（count）は行わず、Slice で次ページの有無だけを判定する
+	String AFTER_CURSOR = " and (i.created_at, i.id) < (:createdAt, :id) order by i.created_at desc, i.id desc";
+
+	@Query(value = "select i.* from item i where " + LISTED + AFTER_CURSOR, nativeQuery = true)
+	Slice<Item> findPageAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id,
+			Pageable pageable);
+
+	@Query(value = "select i.* from item i where " + LISTED + " and i.category_id = :categoryId" + AFTER_CURSOR,
+			nativeQuery = true)
+	Slice<Item> findPageAfterInCategory(@Param("categoryId") Long categoryId,
+			@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+	// 商品詳細ページ用: 商品・出品者・カテゴリに、出品者の評価平均（集計表から主キーで参照）と
+	// 閲覧者のお気に入り状態を添えて1回で取得する
+	// 結果行は (Item, Double 評価平均 [評価なしは null], Boolean お気に入り済み)
+	@Query("select i,"
+			+ " (select cast(sr.ratingSum as Double) / nullif(sr.reviewCount, 0) from SellerReputation sr"
+			+ " where sr.sellerId = i.seller.id),"
+			+ " case when exists (select f.id from FavoriteItem f where f.item = i and f.user.email = :viewerEmail)"
+			+ " then true else false end"
+			+ " from Item i join fetch i.seller left join fetch i.category where i.id = :id")
+	List<Object[]> findDetailById(@Param("id") Long id, @Param("viewerEmail") String viewerEmail);
+
+	// 商品詳細ページの条件付き GET 用: 商品と出品者の評価集計の更新日時（結果行は (LocalDateTime, LocalDateTime)）
+	@Query("select i.updatedAt, (select sr.updatedAt from SellerReputation sr where sr.sellerId = i.seller.id)"
+			+ " from Item i where i.id = :id")
+	List<Object[]> findDetailTimestampsById(@Param("id") Long id);
+
+	// チャット投稿時に条件付き GET の検証子だけを進める。一括更新のため @Version は増えず、購入・編集と競合しない
+	@Modifying
+	@Query("update Item i set i.updatedAt = :updatedAt where i.id = :id")
+	int touchUpdatedAt(@Param("id") Long id, @Param("updatedAt") LocalDateTime updatedAt);
+
+	@Query("select i.category.id from Item i where i.id = :id")
+	Long findCategoryIdById(@Param("id") Long id);
+
+	// 管理画面の商品一覧・ダッシュボード: 出品者・カテゴリを一緒に取得する（新しい順）
+	@EntityGraph(Item.GRAPH_ADMIN)
+	List<Item> findAllByOrderByCreatedAtDesc();
+
+	@EntityGraph(Item.GRAPH_ADMIN)
+	List<Item> findTop10ByOrderByCreatedAtDesc();
+
+	@Query("select i from Item i where " + LISTED_JPQL + " and i.category.id = :categoryId")
+	Page<Item> findListedByCategoryId(@Param("categoryId") Long categoryId, Pageable pageable);
+
+	@Query("select i from Item i where " + LISTED_JPQL)
+	Page<Item> findListed(Pageable pageable);
+
 	List<Item> findBySeller(User seller);
 }
@@ -0,0 +1,46 @@
+package com.example.fleamarketsystem.repository;
+
+import org.springframework.data.domain.Sort;
+
+/**
+ * 商品一覧の並び順。同じ値の商品が続いてもページ間で順序がぶれないよう、最後に id で並べる。
+ * どの並び順も出品中の部分インデックス ([category_id,] 並び替え列, id) で取り出せる。
+ */
+public enum ItemSort {
+
+	NEWEST("newest", "新着順", Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"))),
+	PRICE_ASC("price_asc", "価格の安い順", Sort.by(Sort.Order.asc("price"), Sort.Order.asc("id"))),
+	PRICE_DESC("price_desc", "価格の高い順", Sort.by(Sort.Order.desc("price"), Sort.Order.desc("id")));
+
+	private final String param;
+	private final String label;
+	private final Sort sort;
+
+	ItemSort(String param, String label, Sort sort) {
+		this.param = param;
+		this.label = label;
+		this.sort = sort;
+	}
+
+	public String getParam() {
+		return param;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public Sort toSort() {
+		return sort;
+	}
+
+	// リクエストパラメータの値から変換する。未指定・不明な値は null（既定の並び順）
+	public static ItemSort fromParam(String value) {
+		for (ItemSort s : values()) {
+			if (s.param.equals(value)) {
+				return s;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,48 @@
+package com.example.fleamarketsystem.repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.criteria.Predicate;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+
+/**
+ * 商品一覧の絞り込み条件。
+ * 条件の組み合わせごとにリポジトリのメソッドを増やさず、指定された条件だけを AND でつなぐ。
+ * 各条件はインデックスの列と同じ形（category_id, price, lower(name/description)）で組み立てること。
+ * ステータスは部分インデックスの条件と一致させるため、バインド変数ではなくリテラルとして SQL に埋め込む。
+ */
+public final class ItemSpecifications {
+
+	private ItemSpecifications() {
+	}
+
+	// keywordPattern は LIKE 用にエスケープ済みの小文字パターン（%...%）。null の条件は使わない
+	public static Specification<Item> matching(ItemStatus status, Long categoryId, String keywordPattern,
+			BigDecimal minPrice, BigDecimal maxPrice) {
+		return (root, query, cb) -> {
+			List<Predicate> predicates = new ArrayList<>();
+			predicates.add(cb.equal(root.get("status"), cb.literal(status)));
+			if (categoryId != null) {
+				predicates.add(cb.equal(root.get("category").get("id"), categoryId));
+			}
+			if (keywordPattern != null) {
+				predicates.add(cb.or(
+						cb.like(cb.lower(root.get("name")), keywordPattern, '\\'),
+						cb.like(cb.lower(root.get("description")), keywordPattern, '\\')));
+			}
+			if (minPrice != null) {
+				predicates.add(cb.greaterThanOrEqualTo(root.get("price"), minPrice));
+			}
+			if (maxPrice != null) {
+				predicates.add(cb.lessThanOrEqualTo(root.get("price"), maxPrice));
+			}
+			return cb.and(predicates.toArray(new Predicate[0]));
+		};
+	}
+}
@@ -3,6 +3,7 @@ package com.example.fleamarketsystem.repository;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -12,11 +13,15 @@ import com.example.fleamarketsystem.entity.User;
 @Repository
 public interface ReviewRepository extends JpaRepository<Review, Long> {
 
+	// 評価一覧: 評価者・出品者・商品を一緒に取得する
+	@EntityGraph(Review.GRAPH_LIST)
 	List<Review> findBySeller(User seller);
 
 	Optional<Review> findByOrderId(Long orderId);
 
+	@EntityGraph(Review.GRAPH_LIST)
 	List<Review> findByReviewer(User reviewer);
 	
+	@EntityGraph(Review.GRAPH_LIST)
 	List<Review> findByItem_SellerOrderByCreatedAtDesc(User seller);
 }
@@ -0,0 +1,29 @@
+package com.example.fleamarketsystem.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.fleamarketsystem.entity.SellerReputation;
+
+@Repository
+public interface SellerReputationRepository extends JpaRepository<SellerReputation, Long> {
+
+	// レビュー1件分を加算する。行がなければ作成する（同時に登録されても行ロックで直列化される）
+	@Modifying
+	@Query(value = "insert into seller_reputation as sr"
+			+ " (seller_id, review_count, rating_sum, star1, star2, star3, star4, star5, updated_at)"
+			+ " values (:sellerId, 1, :rating,"
+			+ " case when :rating = 1 then 1 else 0 end, case when :rating = 2 then 1 else 0 end,"
+			+ " case when :rating = 3 then 1 else 0 end, case when :rating = 4 then 1 else 0 end,"
+			+ " case when :rating = 5 then 1 else 0 end, now())"
+			+ " on conflict (seller_id) do update set"
+			+ " review_count = sr.review_count + 1, rating_sum = sr.rating_sum + excluded.rating_sum,"
+			+ " star1 = sr.star1 + excluded.star1, star2 = sr.star2 + excluded.star2,"
+			+ " star3 = sr.star3 + excluded.star3, star4 = sr.star4 + excluded.star4,"
+			+ " star5 = sr.star5 + excluded.star5, updated_at = now()",
+			nativeQuery = true)
+	void addReview(@Param("sellerId") Long sellerId, @Param("rating") int rating);
+}
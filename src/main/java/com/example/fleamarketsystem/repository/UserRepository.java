@@ -3,13 +3,18 @@ package com.example.fleamarketsystem.repository;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import com.example.fleamarketsystem.entity.User;
 
+import jakarta.persistence.QueryHint;
+
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     
+    // ログイン中ユーザーの取得で1リクエストに何度も呼ばれるため、結果をクエリキャッシュに載せる
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     Optional<User> findByEmail(String email);
 
     // 管理者のメールアドレスで検索するために必要（大文字小文字を無視）
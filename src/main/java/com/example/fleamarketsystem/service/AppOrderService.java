@@ -1,19 +1,31 @@
 package com.example.fleamarketsystem.service;
 
-import java.math.BigDecimal;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
-
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.example.fleamarketsystem.entity.AppOrder;
 import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.OrderStatus;
 import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.repository.AdminOrderRow;
 import com.example.fleamarketsystem.repository.AppOrderRepository;
 import com.example.fleamarketsystem.repository.ItemRepository;
 import com.stripe.exception.StripeException;
@@ -22,17 +34,40 @@ import com.stripe.model.PaymentIntent;
 @Service
 public class AppOrderService {
 
+	// ダッシュボードの「現在の取引状況」に出すステータス（キャンセル処理中・済と、決済が成立していないもの以外）
+	private static final List<OrderStatus> ACTIVE_STATUSES = Arrays.stream(OrderStatus.values())
+			.filter(status -> !EnumSet.of(OrderStatus.CANCEL_AGREED, OrderStatus.REFUNDING, OrderStatus.CANCELLED,
+					OrderStatus.PAYMENT_CREATING, OrderStatus.PAYMENT_FAILED, OrderStatus.EXPIRED).contains(status))
+			.toList();
+
+	private static final String RESERVED_MESSAGE = "他の方が購入手続き中のため、この商品は現在購入できません。";
+
+	// 返金する支払いがない、返金を受け付け済み、またはキャンセル済みの注文
+	private static final Set<OrderStatus> NOT_REFUNDABLE_STATUSES = EnumSet.of(OrderStatus.PAYMENT_CREATING,
+			OrderStatus.PAYMENT_PENDING, OrderStatus.PAYMENT_FAILED, OrderStatus.EXPIRED, OrderStatus.REFUNDING,
+			OrderStatus.CANCELLED);
+
 	private final AppOrderRepository appOrderRepository;
 	private final ItemRepository itemRepository;
 	private final StripeService stripeService;
-	private final LineMessagingService lineMessagingService;
+	private final ApplicationEventPublisher eventPublisher;
+	private final SalesRollupService salesRollupService;
+	private final TransactionTemplate transactionTemplate;
+	private final ItemReservations itemReservations;
+	private final RefundQueue refundQueue;
 
 	public AppOrderService(AppOrderRepository appOrderRepository, ItemRepository itemRepository,
-			StripeService stripeService, LineMessagingService lineMessagingService) {
+			StripeService stripeService, ApplicationEventPublisher eventPublisher,
+			SalesRollupService salesRollupService, TransactionTemplate transactionTemplate,
+			ItemReservations itemReservations, RefundQueue refundQueue) {
 		this.appOrderRepository = appOrderRepository;
 		this.itemRepository = itemRepository;
 		this.stripeService = stripeService;
-		this.lineMessagingService = lineMessagingService;
+		this.eventPublisher = eventPublisher;
+		this.salesRollupService = salesRollupService;
+		this.transactionTemplate = transactionTemplate;
+		this.itemReservations = itemReservations;
+		this.refundQueue = refundQueue;
 	}
 
 	// --- 1. 一般ユーザー向け：注文・出品履歴取得 (今回のエラー修正箇所) ---
@@ -51,90 +86,151 @@ public class AppOrderService {
 
 	// --- 2. 管理画面ダッシュボード用：ステータス別取得 ---
 
-	public List<AppOrder> getActiveOrders() {
-		return appOrderRepository.findAll().stream()
-				.filter(order -> !AppOrder.STATUS_CANCELLED.equals(order.getStatus())
-						&& !AppOrder.STATUS_CANCEL_AGREED.equals(order.getStatus()))
-				// STATUS_COMPLETED を除外しないことで、完了後も表示され続けます
-				.collect(Collectors.toList());
+	public Slice<AdminOrderRow> getActiveOrders(int page, int size) {
+		// COMPLETED を除外しないことで、完了後も表示され続けます
+		return appOrderRepository.findAdminRowsByStatusIn(ACTIVE_STATUSES, PageRequest.of(page, size));
+	}
+
+	public Slice<AdminOrderRow> getPendingCancelOrders(int page, int size) {
+		// 返金処理中（返金に失敗して再実行待ちのものを含む）もここに出す
+		return appOrderRepository.findAdminRowsByStatusIn(List.of(OrderStatus.CANCEL_AGREED, OrderStatus.REFUNDING),
+				PageRequest.of(page, size));
 	}
 
-	public List<AppOrder> getPendingCancelOrders() {
-		return appOrderRepository.findAll().stream()
-				.filter(order -> AppOrder.STATUS_CANCEL_AGREED.equals(order.getStatus()))
-				.collect(Collectors.toList());
+	public Slice<AdminOrderRow> getFinalizedCancelledOrders(int page, int size) {
+		return appOrderRepository.findAdminRowsByStatusIn(List.of(OrderStatus.CANCELLED),
+				PageRequest.of(page, size));
 	}
 
-	public List<AppOrder> getFinalizedCancelledOrders() {
-		return appOrderRepository.findAll().stream()
-				.filter(order -> AppOrder.STATUS_CANCELLED.equals(order.getStatus()))
-				.collect(Collectors.toList());
+	// ステータス別の件数を1回の集計で取得する
+	public OrderStatusSummary getDashboardSummary() {
+		Map<OrderStatus, Long> counts = new EnumMap<>(OrderStatus.class);
+		for (Object[] row : appOrderRepository.countByStatus()) {
+			counts.put((OrderStatus) row[0], ((Number) row[1]).longValue());
+		}
+		return new OrderStatusSummary(counts);
 	}
 
 	// --- 3. 取引アクション（購入・発送・到着・キャンセル） ---
+	// Stripe の呼び出しは DB のトランザクションの外で行い、応答を待つ間に行ロックやトランザクションを持ち続けない。
+	// 呼び出しの前に中間状態（決済準備中・返金処理中）をコミットし、応答を受けてから別のトランザクションで次の状態へ進める。
+	// 返金は待ち行列（RefundQueue）に登録するだけで戻り、RefundWorker が返金してキャンセルを確定する。
+	// 途中で止まった注文は PaymentRecoveryService が続きを処理する。
+	// LINE 通知はコミット後に送る（LineMessagingService#onOrderNotification）。
 
-	@Transactional
 	public PaymentIntent initiatePurchase(Long itemId, User buyer) throws StripeException {
-		Item item = itemRepository.findById(itemId).orElseThrow(() -> new IllegalArgumentException("Item not found"));
-		if (!"出品中".equals(item.getStatus())) {
-			throw new IllegalStateException("この商品は現在購入できません。");
+		// 1. 商品を予約（出品中のまま予約の列を書き込む）して、注文を「決済準備中」で登録する。
+		// 同じ商品の購入が重なった場合は、メモリ上の予約表で2人目以降をすぐに断る。
+		// 複数のサーバーで受け付けた場合も、商品のバージョンの更新で1人だけが成功する（行ロックは短いトランザクションの間だけ）
+		ItemReservations.Hold hold = itemReservations.tryHold(itemId, LocalDateTime.now());
+		if (hold == null) {
+			throw new IllegalStateException(RESERVED_MESSAGE);
 		}
+		AppOrder order;
+		try {
+			order = transactionTemplate.execute(status -> reserve(itemId, buyer, hold.expiresAt()));
+		} catch (RuntimeException e) {
+			itemReservations.release(hold);
+			if (e instanceof OptimisticLockingFailureException) {
+				throw new IllegalStateException(RESERVED_MESSAGE, e);
+			}
+			throw e;
+		}
+		itemReservations.attach(hold, order.getId());
 
-		PaymentIntent paymentIntent = stripeService.createPaymentIntent(item.getPrice(), "jpy",
-				"購入: " + item.getName());
+		// 2. トランザクションの外で PaymentIntent を作成する
+		PaymentIntent paymentIntent;
+		try {
+			paymentIntent = stripeService.createPaymentIntent(order.getPrice(), "jpy",
+					"購入: " + order.getItem().getName(), order.getId(), itemId);
+		} catch (StripeException | RuntimeException e) {
+			// client_secret は購入者に渡っていないため、この注文が支払われることはない
+			compensate(e, () -> abandonPaymentCreation(order.getId()));
+			throw e;
+		}
+
+		// 3. PaymentIntent を注文に結び付けて「決済待ち」にする
+		transactionTemplate.executeWithoutResult(status -> {
+			AppOrder appOrder = appOrderRepository.findById(order.getId()).orElseThrow();
+			if (appOrder.getStatus() != OrderStatus.PAYMENT_CREATING) {
+				throw new IllegalStateException("決済の準備中に注文の状態が変わりました。");
+			}
+			appOrder.setPaymentIntentId(paymentIntent.getId());
+			changeStatus(appOrder, OrderStatus.PAYMENT_PENDING);
+		});
+		return paymentIntent;
+	}
+
+	private AppOrder reserve(Long itemId, User buyer, LocalDateTime reservedUntil) {
+		Item item = itemRepository.findById(itemId)
+				.orElseThrow(() -> new IllegalArgumentException("Item not found"));
+		// 予約中の商品は期限切れでも、掃除ジョブが前の注文を終わらせるまで受け付けない
+		if (item.getStatus() != ItemStatus.LISTED || item.isReserved()) {
+			throw new IllegalStateException("この商品は現在購入できません。");
+		}
 
 		AppOrder appOrder = new AppOrder();
 		appOrder.setItem(item);
 		appOrder.setBuyer(buyer);
 		appOrder.setPrice(item.getPrice());
-		appOrder.setStatus("決済待ち");
-		appOrder.setPaymentIntentId(paymentIntent.getId());
+		appOrder.setStatus(OrderStatus.PAYMENT_CREATING);
 		appOrder.setCreatedAt(LocalDateTime.now());
+		appOrder.setUpdatedAt(appOrder.getCreatedAt());
+		// ID を採番してから商品の予約に書き込む（flush では注文の insert が商品の update より先に送られる）
+		appOrderRepository.save(appOrder);
 
-		appOrderRepository.saveAndFlush(appOrder);
-		return paymentIntent;
+		// 商品は出品中のまま一覧に残し、予約の列で「購入手続き中」と表示する。取引中にするのは支払いの確認後（markPaid）
+		item.setReservationOrderId(appOrder.getId());
+		item.setReservedUntil(reservedUntil);
+		itemRepository.saveAndFlush(item);
+		eventPublisher.publishEvent(ItemChangedEvent.of(item));
+		salesRollupService.recordStatusChange(appOrder, null);
+		return appOrder;
 	}
 
-	@Transactional
 	public AppOrder completePurchase(String paymentIntentId) throws StripeException {
 		PaymentIntent paymentIntent = stripeService.retrievePaymentIntent(paymentIntentId);
 		if (!"succeeded".equals(paymentIntent.getStatus())) {
 			throw new IllegalStateException("決済が完了していません。");
 		}
+		return markPaid(paymentIntentId);
+	}
 
-		AppOrder appOrder = appOrderRepository.findByPaymentIntentId(paymentIntentId)
-				.orElseThrow(() -> new IllegalStateException("注文が見つかりません。"));
-
-		if (AppOrder.STATUS_TRADING.equals(appOrder.getStatus())
-				|| AppOrder.STATUS_COMPLETED.equals(appOrder.getStatus())) {
-			return appOrder;
-		}
-
-		appOrder.setStatus(AppOrder.STATUS_TRADING);
-		Item item = appOrder.getItem();
-		item.setStatus("取引中");
-
-		itemRepository.saveAndFlush(item);
-		AppOrder savedOrder = appOrderRepository.saveAndFlush(appOrder);
-
-		// 【修正】自分（管理者）へのLINE通知
-		try {
-			// DBからLINE IDを取得せず、固定の宛先に送る既存のメソッドを呼び出す
-			String messageText = String.format(
-					"【自分宛通知】商品が購入されました！\n商品名: %s\n購入者: %s\n価格: ¥%s",
-					item.getName(),
-					savedOrder.getBuyer().getName(),
-					savedOrder.getPrice());
-
-			// 引数を messageText だけにすることで、LineMessagingService の既存メソッドと一致させます
-			lineMessagingService.sendMessage(messageText);
-
-		} catch (Exception e) {
-			// 通知の失敗で取引処理を止めないよう、エラー内容を出力
-			System.err.println("LINE通知送信失敗: " + e.getMessage());
-		}
+	// 決済が成功した注文の取引を開始する。Stripe への確認は済んでいること（completePurchase または署名付きの Webhook）
+	public AppOrder markPaid(String paymentIntentId) {
+		AppOrder paid = transactionTemplate.execute(status -> {
+			AppOrder appOrder = appOrderRepository.findByPaymentIntentId(paymentIntentId)
+					.orElseThrow(() -> new IllegalStateException("注文が見つかりません。"));
+
+			// Webhook と完了画面の両方から呼ばれるため、2回目以降はそのまま返す
+			if (appOrder.getStatus() != OrderStatus.PAYMENT_PENDING) {
+				return appOrder;
+			}
+
+			changeStatus(appOrder, OrderStatus.TRADING);
+			Item item = appOrder.getItem();
+			item.setStatus(ItemStatus.TRADING);
+			// 支払いが済んだので予約の期限はなくなる
+			if (appOrder.getId().equals(item.getReservationOrderId())) {
+				item.setReservationOrderId(null);
+				item.setReservedUntil(null);
+			}
+
+			itemRepository.saveAndFlush(item);
+			eventPublisher.publishEvent(ItemChangedEvent.of(item));
+			AppOrder savedOrder = appOrderRepository.saveAndFlush(appOrder);
+
+			// 自分（管理者）へのLINE通知
+			notify(String.format("【自分宛通知】商品が購入されました！\n商品名: %s\n購入者: %s\n価格: ¥%s",
+					item.getName(), savedOrder.getBuyer().getName(), savedOrder.getPrice()));
+			return savedOrder;
+		});
+		itemReservations.release(paid.getItem().getId(), paid.getId());
+		return paid;
+	}
 
-		return savedOrder;
+	public Optional<OrderStatus> getOrderStatusByPaymentIntentId(String paymentIntentId) {
+		return appOrderRepository.findByPaymentIntentId(paymentIntentId).map(AppOrder::getStatus);
 	}
 
 	@Transactional
@@ -149,40 +245,31 @@ public class AppOrderService {
 
 		// 【追加】発送ステータスのチェック
 		// ステータスが「発送済」でない場合はエラーを投げる
-		if (!AppOrder.STATUS_SHIPPED.equals(order.getStatus())) {
+		if (order.getStatus() != OrderStatus.SHIPPED) {
 			throw new IllegalStateException("出品者が発送通知を出すまで、到着報告はできません。");
 		}
 
 		// 到着報告処理（ステータス更新）
-		order.setStatus(AppOrder.STATUS_COMPLETED);
+		changeStatus(order, OrderStatus.COMPLETED);
 		Item item = order.getItem();
-		item.setStatus("売却済");
+		item.setStatus(ItemStatus.SOLD);
 
 		itemRepository.saveAndFlush(item);
+		eventPublisher.publishEvent(ItemChangedEvent.of(item));
 		appOrderRepository.saveAndFlush(order);
 
-		try {
-			String message = String.format("【受取通知】取引が完了しました！\n商品名: %s\n購入者: %s",
-					item.getName(), order.getBuyer().getName());
-			lineMessagingService.sendMessage(message);
-		} catch (Exception e) {
-			System.err.println("LINE通知失敗: " + e.getMessage());
-		}
+		notify(String.format("【受取通知】取引が完了しました！\n商品名: %s\n購入者: %s",
+				item.getName(), order.getBuyer().getName()));
 	}
 
 	@Transactional
 	public void markOrderAsShipped(Long orderId) {
 		AppOrder appOrder = appOrderRepository.findById(orderId).orElseThrow();
-		appOrder.setStatus(AppOrder.STATUS_SHIPPED);
+		changeStatus(appOrder, OrderStatus.SHIPPED);
 		appOrderRepository.saveAndFlush(appOrder);
 
-		try {
-			String message = String.format("【発送通知】商品が発送されました。\n商品名: %s\n出品者: %s",
-					appOrder.getItem().getName(), appOrder.getItem().getSeller().getName());
-			lineMessagingService.sendMessage(message);
-		} catch (Exception e) {
-			System.err.println("LINE通知失敗: " + e.getMessage());
-		}
+		notify(String.format("【発送通知】商品が発送されました。\n商品名: %s\n出品者: %s",
+				appOrder.getItem().getName(), appOrder.getItem().getSeller().getName()));
 	}
 
 	@Transactional
@@ -190,12 +277,17 @@ public class AppOrderService {
 		AppOrder order = appOrderRepository.findById(orderId).orElseThrow();
 		if (!order.getBuyer().getId().equals(buyer.getId()))
 			throw new IllegalStateException("権限がありません。");
-		if (AppOrder.STATUS_SHIPPED.equals(order.getStatus())
-				|| AppOrder.STATUS_COMPLETED.equals(order.getStatus())) {
+		if (order.getStatus() == OrderStatus.SHIPPED
+				|| order.getStatus() == OrderStatus.COMPLETED) {
 			throw new IllegalStateException("発送通知後はキャンセルできません。");
 		}
+		// 決済待ちの注文は予約の期限切れ（ReservationExpiryService）で、返金処理中の注文は RefundWorker で片付くため、
+		// 支払い済みで取引中の注文だけを受け付ける
+		if (order.getStatus() != OrderStatus.TRADING) {
+			throw new IllegalStateException("取引中の注文のみキャンセルを申請できます。");
+		}
 		order.setBuyerCancelRequested(true);
-		order.setStatus(AppOrder.STATUS_CANCEL_REQUESTED);
+		changeStatus(order, OrderStatus.CANCEL_REQUESTED);
 		appOrderRepository.saveAndFlush(order);
 	}
 
@@ -204,71 +296,186 @@ public class AppOrderService {
 		AppOrder order = appOrderRepository.findById(orderId).orElseThrow();
 		if (!order.getItem().getSeller().getId().equals(seller.getId()))
 			throw new IllegalStateException("権限がありません。");
+		if (order.getStatus() != OrderStatus.CANCEL_REQUESTED) {
+			throw new IllegalStateException("キャンセル申請中の注文のみ承認できます。");
+		}
 		order.setSellerCancelApproved(true);
-		order.setStatus(AppOrder.STATUS_CANCEL_AGREED);
+		changeStatus(order, OrderStatus.CANCEL_AGREED);
 		appOrderRepository.saveAndFlush(order);
 	}
 
-	@Transactional
-	public void finalCancel(Long orderId) throws StripeException {
-		AppOrder order = appOrderRepository.findById(orderId).orElseThrow();
-		stripeService.refund(order.getPaymentIntentId());
-		order.setStatus(AppOrder.STATUS_CANCELLED);
-		Item item = order.getItem();
-		item.setStatus("出品中");
-		itemRepository.saveAndFlush(item);
-		appOrderRepository.saveAndFlush(order);
+	public void finalCancel(Long orderId) {
+		requestRefund(orderId, status -> !NOT_REFUNDABLE_STATUSES.contains(status),
+				"この注文は返金できる状態ではありません。", AppOrderService::finalCancelMessage);
+	}
 
-		try {
-			String message = String.format("【キャンセル確定】返金処理が完了しました。\n商品名: %s\n価格: ¥%s",
-					item.getName(), order.getPrice());
-			lineMessagingService.sendMessage(message);
-		} catch (Exception e) {
-			System.err.println("LINE通知失敗: " + e.getMessage());
-		}
+	public void forceCancelByAdmin(Long orderId, String reason) {
+		String reasonText = (reason == null || reason.isBlank()) ? "理由: (未入力)" : "理由: " + reason;
+		requestRefund(orderId, status -> status == OrderStatus.TRADING, "取引中の商品のみ強制キャンセルできます。",
+				order -> String.format("【強制キャンセル】運営側で取引をキャンセルしました。\n商品名: %s\n価格: ¥%s\n%s",
+						order.getItem().getName(), order.getPrice(), reasonText));
 	}
 
-	@Transactional
-	public void forceCancelByAdmin(Long orderId, String reason) throws StripeException {
-		AppOrder order = appOrderRepository.findById(orderId).orElseThrow();
-		if (!AppOrder.STATUS_TRADING.equals(order.getStatus())) {
-			throw new IllegalStateException("取引中の商品のみ強制キャンセルできます。");
+	// --- 4. 中間状態で止まった注文の後始末（PaymentRecoveryService・StripeWebhookService・RefundWorker から呼ぶ） ---
+
+	public List<Long> findStalledOrderIds(OrderStatus status, LocalDateTime updatedBefore) {
+		return appOrderRepository.findIdsByStatusAndUpdatedAtBefore(status, updatedBefore);
+	}
+
+	// Stripe から返金完了の通知（Webhook）を受けた注文のキャンセルを確定する。返金処理中でなければ何もしない。
+	// 待ち行列の返金も完了にし、RefundWorker が同じ返金を再試行しないようにする
+	public boolean confirmRefund(String paymentIntentId) {
+		Optional<Long> orderId = appOrderRepository.findByPaymentIntentId(paymentIntentId)
+				.filter(order -> order.getStatus() == OrderStatus.REFUNDING)
+				.map(AppOrder::getId);
+		orderId.ifPresent(id -> {
+			completeRefund(id, AppOrderService::finalCancelMessage);
+			refundQueue.markDone(id);
+		});
+		return orderId.isPresent();
+	}
+
+	// 返金が済んだ注文のキャンセルを確定し、message を LINE に通知する（RefundWorker から呼ぶ）
+	public void finishRefund(Long orderId, String message) {
+		completeRefund(orderId, order -> message);
+	}
+
+	// PaymentIntent を作成できなかった注文を「決済失敗」にし、予約していた商品を出品中に戻す。
+	// client_secret は購入者に渡っていないため、この注文が支払われることはない
+	public boolean abandonPaymentCreation(Long orderId) {
+		return endReservation(orderId, OrderStatus.PAYMENT_CREATING, OrderStatus.PAYMENT_FAILED);
+	}
+
+	// 予約の期限が切れた決済待ちの注文（ReservationExpiryService が limit 件ずつ処理する）
+	public List<Long> findExpiredReservationIds(int limit) {
+		return appOrderRepository.findIdsByStatusAndCreatedAtBefore(OrderStatus.PAYMENT_PENDING,
+				LocalDateTime.now().minus(itemReservations.getTtl()), PageRequest.of(0, limit));
+	}
+
+	// 予約の期限が切れた決済待ちの注文の PaymentIntent を取り消し、注文を期限切れにして商品を出品中に戻す。
+	// 期限の直前に支払われていた場合は取引を開始する。注文が決済待ちでなくなれば true、次回に持ち越す場合は false
+	public boolean expireReservation(Long orderId) throws StripeException {
+		String paymentIntentId = transactionTemplate.execute(status -> {
+			AppOrder order = appOrderRepository.findById(orderId).orElseThrow();
+			return order.getStatus() == OrderStatus.PAYMENT_PENDING ? Objects.toString(order.getPaymentIntentId(), "")
+					: null;
+		});
+		if (paymentIntentId == null) {
+			return true;
 		}
-		if (order.getPaymentIntentId() != null && !order.getPaymentIntentId().isBlank()) {
-			stripeService.refund(order.getPaymentIntentId());
+		if (!paymentIntentId.isBlank()) {
+			// 取り消してから注文を閉じる。取り消した PaymentIntent には支払えない
+			PaymentIntent paymentIntent = stripeService.cancelPaymentIntent(paymentIntentId);
+			if ("succeeded".equals(paymentIntent.getStatus())) {
+				markPaid(paymentIntentId);
+				return true;
+			}
+			if (!"canceled".equals(paymentIntent.getStatus())) {
+				// 支払いの処理中。結果が出てから次回に確かめる
+				return false;
+			}
 		}
+		endReservation(orderId, OrderStatus.PAYMENT_PENDING, OrderStatus.EXPIRED);
+		return true;
+	}
 
-		order.setStatus(AppOrder.STATUS_CANCELLED);
-		Item item = order.getItem();
-		item.setStatus("出品中");
+	// 注文を expected から next に進め、この注文の予約を解いて商品を出品中に戻す
+	private boolean endReservation(Long orderId, OrderStatus expected, OrderStatus next) {
+		Long itemId = transactionTemplate.execute(status -> {
+			AppOrder order = appOrderRepository.findById(orderId).orElseThrow();
+			if (order.getStatus() != expected) {
+				return null;
+			}
+			changeStatus(order, next);
+			Item item = order.getItem();
+			if (orderId.equals(item.getReservationOrderId())) {
+				item.setStatus(ItemStatus.LISTED);
+				item.setReservationOrderId(null);
+				item.setReservedUntil(null);
+				itemRepository.saveAndFlush(item);
+				eventPublisher.publishEvent(ItemChangedEvent.of(item));
+			}
+			return item.getId();
+		});
+		if (itemId == null) {
+			return false;
+		}
+		itemReservations.release(itemId, orderId);
+		return true;
+	}
 
-		itemRepository.saveAndFlush(item);
-		appOrderRepository.saveAndFlush(order);
+	// 返金処理中なのに待ち行列にない注文（待ち行列の導入前に止まったものなど）を登録し直す。登録した場合は true
+	public boolean resumeRefund(Long orderId) {
+		return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+			AppOrder order = appOrderRepository.findById(orderId).orElseThrow();
+			if (order.getStatus() != OrderStatus.REFUNDING
+					|| !refundQueue.enqueue(orderId, order.getPaymentIntentId(), finalCancelMessage(order))) {
+				return false;
+			}
+			eventPublisher.publishEvent(new RefundRequestedEvent(orderId));
+			return true;
+		}));
+	}
 
+	// 返金を受け付ける。「返金処理中」にするのと同じトランザクションで待ち行列に登録し、返金の完了を待たずに戻る。
+	// 返金と「キャンセル済」への変更・再出品・通知は、コミット後に RefundWorker が行う
+	private void requestRefund(Long orderId, Predicate<OrderStatus> allowed, String notAllowedMessage,
+			Function<AppOrder, String> message) {
+		transactionTemplate.executeWithoutResult(status -> {
+			AppOrder order = appOrderRepository.findById(orderId).orElseThrow();
+			if (!allowed.test(order.getStatus())) {
+				throw new IllegalStateException(notAllowedMessage);
+			}
+			changeStatus(order, OrderStatus.REFUNDING);
+			appOrderRepository.saveAndFlush(order);
+			refundQueue.enqueue(orderId, order.getPaymentIntentId(), message.apply(order));
+			eventPublisher.publishEvent(new RefundRequestedEvent(orderId));
+		});
+	}
+
+	private void completeRefund(Long orderId, Function<AppOrder, String> message) {
+		transactionTemplate.executeWithoutResult(status -> {
+			AppOrder order = appOrderRepository.findById(orderId).orElseThrow();
+			// 同じ注文の返金が重なった場合は、先に確定した側だけが再出品と通知を行う
+			if (order.getStatus() != OrderStatus.REFUNDING) {
+				return;
+			}
+			changeStatus(order, OrderStatus.CANCELLED);
+			Item item = order.getItem();
+			item.setStatus(ItemStatus.LISTED);
+
+			itemRepository.saveAndFlush(item);
+			eventPublisher.publishEvent(ItemChangedEvent.of(item));
+			appOrderRepository.saveAndFlush(order);
+
+			notify(message.apply(order));
+		});
+	}
+
+	private static String finalCancelMessage(AppOrder order) {
+		return String.format("【キャンセル確定】返金処理が完了しました。\n商品名: %s\n価格: ¥%s",
+				order.getItem().getName(), order.getPrice());
+	}
+
+	// Stripe の呼び出しに失敗したときの巻き戻し。巻き戻しにも失敗した注文は中間状態のまま残り、PaymentRecoveryService が処理する
+	private void compensate(Exception cause, Runnable compensation) {
 		try {
-			String reasonText = (reason == null || reason.isBlank()) ? "理由: (未入力)" : "理由: " + reason;
-			String message = String.format("【強制キャンセル】運営側で取引をキャンセルしました。\n商品名: %s\n価格: ¥%s\n%s",
-					item.getName(), order.getPrice(), reasonText);
-			lineMessagingService.sendMessage(message);
-		} catch (Exception e) {
-			System.err.println("LINE通知失敗: " + e.getMessage());
+			compensation.run();
+		} catch (RuntimeException e) {
+			cause.addSuppressed(e);
 		}
 	}
 
-	// --- 4. 統計画面用 ---
-
-	public Map<String, Long> getOrderCountByStatus(LocalDate startDate, LocalDate endDate) {
-		return appOrderRepository.findAll().stream()
-				.filter(o -> !o.getCreatedAt().toLocalDate().isBefore(startDate)
-						&& !o.getCreatedAt().toLocalDate().isAfter(endDate))
-				.collect(Collectors.groupingBy(AppOrder::getStatus, Collectors.counting()));
+	// LINE 通知はコミット後に送る。ロールバックされた変更は通知しない
+	private void notify(String message) {
+		eventPublisher.publishEvent(new OrderNotificationEvent(message));
 	}
 
-	public BigDecimal getTotalSales(LocalDate startDate, LocalDate endDate) {
-		return appOrderRepository.findAll().stream()
-				.filter(o -> AppOrder.STATUS_COMPLETED.equals(o.getStatus()))
-				.filter(o -> !o.getCreatedAt().toLocalDate().isBefore(startDate)
-						&& !o.getCreatedAt().toLocalDate().isAfter(endDate))
-				.map(AppOrder::getPrice).reduce(BigDecimal.ZERO, BigDecimal::add);
+	// ステータスを変更し、日別売上集計へ同じトランザクションで反映する
+	private void changeStatus(AppOrder order, OrderStatus status) {
+		OrderStatus previous = order.getStatus();
+		order.setStatus(status);
+		order.setUpdatedAt(LocalDateTime.now());
+		salesRollupService.recordStatusChange(order, previous);
 	}
-}
\ No newline at end of file
+}
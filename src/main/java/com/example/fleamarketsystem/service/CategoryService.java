@@ -12,8 +12,13 @@ import com.example.fleamarketsystem.repository.CategoryRepository;
 public class CategoryService {
 	
 	private final CategoryRepository categoryRepository;
-	public CategoryService(CategoryRepository categoryRepository) {
+	private final ListingHighWaterMarks listingHighWaterMarks;
+	private final ItemSuggestIndex itemSuggestIndex;
+	public CategoryService(CategoryRepository categoryRepository, ListingHighWaterMarks listingHighWaterMarks,
+			ItemSuggestIndex itemSuggestIndex) {
 		this.categoryRepository = categoryRepository;
+		this.listingHighWaterMarks = listingHighWaterMarks;
+		this.itemSuggestIndex = itemSuggestIndex;
 	}
 	
 	public List<Category> getAllCategories() {
@@ -29,10 +34,15 @@ public class CategoryService {
 	}
 	
 	public Category saveCategory(Category category) {
-		return categoryRepository.save(category);
+		Category saved = categoryRepository.save(category);
+		listingHighWaterMarks.categoriesChanged();
+		itemSuggestIndex.categoriesChanged();
+		return saved;
 	}
 	
 	public void deleteCategory(Long id) {
 		categoryRepository.deleteById(id);
+		listingHighWaterMarks.categoriesChanged();
+		itemSuggestIndex.categoriesChanged();
 	}
 }
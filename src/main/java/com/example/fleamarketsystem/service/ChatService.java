@@ -42,6 +42,8 @@ public class ChatService {
 		chat.setCreatedAt(LocalDateTime.now());
 
 		Chat savedChat = chatRepository.save(chat);
+		// 商品詳細ページにチャットが表示されるため、商品の更新日時も進める（バージョンは変えない）
+		itemRepository.touchUpdatedAt(itemId, LocalDateTime.now());
 
 		// LINE通知の送信（Messaging API 形式）
 		// 誰がログインしていても、propertiesで設定した管理者のLINEに通知が届く設定です
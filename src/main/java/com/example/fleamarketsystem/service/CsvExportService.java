@@ -0,0 +1,166 @@
+package com.example.fleamarketsystem.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.OrderStatus;
+import com.example.fleamarketsystem.util.CsvWriter;
+
+/**
+ * 管理画面の CSV エクスポート（注文・商品・ユーザー・お問い合わせ・統計）。
+ * 行は JDBC の前方向カーソルで fetch-size 件ずつ受け取り、1行ずつ出力先へ書き出す。
+ * エンティティや行のリストを作らないため、件数が増えてもメモリ使用量は一定になる。
+ * PostgreSQL はトランザクション内（autocommit なし）でのみカーソルで読むため、各メソッドは読み取り専用トランザクションで実行する。
+ */
+@Service
+@Transactional(readOnly = true)
+public class CsvExportService {
+
+	@FunctionalInterface
+	private interface RowWriter {
+		void write(ResultSet rs, CsvWriter csv) throws SQLException;
+	}
+
+	private static final String ORDERS_SQL = "select o.id, o.created_at, o.status, o.price, o.payment_intent_id,"
+			+ " i.id, i.name, c.name, s.id, s.name, b.id, b.name"
+			+ " from app_order o join item i on i.id = o.item_id left join category c on c.id = i.category_id"
+			+ " join users s on s.id = i.user_id join users b on b.id = o.buyer_id"
+			+ " where o.created_at >= ? and o.created_at < ? order by o.created_at, o.id";
+
+	private static final String ITEMS_SQL = "select i.id, i.name, i.description, c.name, s.id, s.name, i.price,"
+			+ " i.status, i.created_at, i.updated_at"
+			+ " from item i left join category c on c.id = i.category_id join users s on s.id = i.user_id"
+			+ " order by i.id";
+
+	// パスワード・LINE トークンは出力しない
+	private static final String USERS_SQL = "select u.id, u.name, u.email, u.role, u.enabled, u.banned, u.ban_reason"
+			+ " from users u order by u.id";
+
+	private static final String CONTACTS_SQL = "select ct.id, ct.created_at, u.id, u.name, u.email, ct.subject,"
+			+ " ct.message, ct.read from contact ct join users u on u.id = ct.user_id order by ct.id";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final SalesStatisticsService salesStatisticsService;
+	private final int fetchSize;
+	private final int flushRows;
+
+	public CsvExportService(JdbcTemplate jdbcTemplate, SalesStatisticsService salesStatisticsService,
+			@Value("${csv.export.fetch-size:1000}") int fetchSize,
+			@Value("${csv.export.flush-rows:1000}") int flushRows) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.salesStatisticsService = salesStatisticsService;
+		this.fetchSize = fetchSize;
+		this.flushRows = flushRows;
+	}
+
+	/**
+	 * 期間（開始日・終了日とも含む）内の注文を注文日時順に書き出す。
+	 *
+	 * @return 書き出したデータ行数（見出し行を除く）
+	 */
+	public long exportOrders(Writer out, LocalDate startDate, LocalDate endDate) throws IOException {
+		CsvWriter csv = new CsvWriter(out).bom();
+		return writeOrders(csv, startDate, endDate);
+	}
+
+	public long exportItems(Writer out) throws IOException {
+		CsvWriter csv = new CsvWriter(out).bom();
+		csv.row("商品ID", "商品名", "説明", "カテゴリ", "出品者ID", "出品者名", "価格", "ステータス", "出品日時", "更新日時");
+		return stream(csv, ITEMS_SQL, (rs, row) -> row.field(rs.getLong(1)).field(rs.getString(2))
+				.field(rs.getString(3)).field(rs.getString(4)).field(rs.getLong(5)).field(rs.getString(6))
+				.field(rs.getBigDecimal(7)).field(itemStatusLabel(rs.getObject(8)))
+				.field(rs.getString(9)).field(rs.getString(10)));
+	}
+
+	public long exportUsers(Writer out) throws IOException {
+		CsvWriter csv = new CsvWriter(out).bom();
+		csv.row("ユーザーID", "名前", "メールアドレス", "権限", "ログイン可", "BAN", "BAN理由");
+		return stream(csv, USERS_SQL, (rs, row) -> row.field(rs.getLong(1)).field(rs.getString(2))
+				.field(rs.getString(3)).field(rs.getString(4)).field(rs.getBoolean(5)).field(rs.getBoolean(6))
+				.field(rs.getString(7)));
+	}
+
+	public long exportContacts(Writer out) throws IOException {
+		CsvWriter csv = new CsvWriter(out).bom();
+		csv.row("問い合わせID", "受付日時", "ユーザーID", "名前", "メールアドレス", "件名", "内容", "既読");
+		return stream(csv, CONTACTS_SQL, (rs, row) -> row.field(rs.getLong(1)).field(rs.getString(2))
+				.field(rs.getLong(3)).field(rs.getString(4)).field(rs.getString(5)).field(rs.getString(6))
+				.field(rs.getString(7)).field(rs.getBoolean(8)));
+	}
+
+	/**
+	 * 統計画面の CSV。期間・総売上・ステータス別件数のあとに、期間内の注文明細を続ける。
+	 */
+	public long exportStatistics(Writer out, LocalDate startDate, LocalDate endDate) throws IOException {
+		CsvWriter csv = new CsvWriter(out).bom();
+		csv.row("統計期間", startDate.toString(), endDate.toString());
+		BigDecimal totalSales = salesStatisticsService.getTotalSales(startDate, endDate);
+		csv.field("総売上").field(totalSales).endRow();
+		csv.endRow();
+		csv.row("ステータス", "注文数");
+		for (Map.Entry<String, Long> entry : salesStatisticsService.getOrderCountByStatus(startDate, endDate)
+				.entrySet()) {
+			csv.field(entry.getKey()).field(entry.getValue().longValue()).endRow();
+		}
+		csv.endRow();
+		return writeOrders(csv, startDate, endDate);
+	}
+
+	private long writeOrders(CsvWriter csv, LocalDate startDate, LocalDate endDate) throws IOException {
+		csv.row("注文ID", "注文日時", "ステータス", "価格", "PaymentIntent", "商品ID", "商品名", "カテゴリ",
+				"出品者ID", "出品者名", "購入者ID", "購入者名");
+		return stream(csv, ORDERS_SQL, (rs, row) -> row.field(rs.getLong(1)).field(rs.getString(2))
+				.field(OrderStatus.fromCode(rs.getShort(3)).getLabel()).field(rs.getBigDecimal(4))
+				.field(rs.getString(5)).field(rs.getLong(6)).field(rs.getString(7)).field(rs.getString(8))
+				.field(rs.getLong(9)).field(rs.getString(10)).field(rs.getLong(11)).field(rs.getString(12)),
+				startDate.atStartOfDay(), endDate.plusDays(1).atStartOfDay());
+	}
+
+	private long stream(CsvWriter csv, String sql, RowWriter rowWriter, Object... params) throws IOException {
+		long[] rows = { 0 };
+		try {
+			jdbcTemplate.query(connection -> {
+				PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+						ResultSet.CONCUR_READ_ONLY);
+				statement.setFetchSize(fetchSize);
+				for (int i = 0; i < params.length; i++) {
+					statement.setObject(i + 1, params[i]);
+				}
+				return statement;
+			}, rs -> {
+				rowWriter.write(rs, csv);
+				try {
+					csv.endRow();
+					// 受け取った分を順に送り出し、応答のバッファに溜め込まない
+					if (++rows[0] % flushRows == 0) {
+						csv.flush();
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			// クライアントの切断など。カーソルは JdbcTemplate が閉じる
+			throw e.getCause();
+		}
+		csv.flush();
+		return rows[0];
+	}
+
+	private static String itemStatusLabel(Object code) {
+		return code != null ? ItemStatus.fromCode(((Number) code).shortValue()).getLabel() : null;
+	}
+}
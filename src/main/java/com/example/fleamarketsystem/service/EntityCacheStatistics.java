@@ -0,0 +1,52 @@
+package com.example.fleamarketsystem.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hibernate 2次キャッシュ（Caffeine JCache）の領域ごとの統計。
+ * application.conf で monitoring.statistics を有効にすると JCache 標準の MBean に記録されるため、それを読み出す。
+ */
+@Component
+public class EntityCacheStatistics {
+
+	private static final Logger logger = LoggerFactory.getLogger(EntityCacheStatistics.class);
+
+	private static final String STATISTICS_PATTERN = "javax.cache:type=CacheStatistics,*";
+
+	/**
+	 * 1領域分の統計。region はエンティティの領域名（category / user）やクエリキャッシュの領域名。
+	 */
+	public record Region(String region, long hits, long misses, float hitPercentage, long evictions) {
+	}
+
+	private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+	public List<Region> regions() {
+		List<Region> regions = new ArrayList<>();
+		try {
+			for (ObjectName name : mBeanServer.queryNames(new ObjectName(STATISTICS_PATTERN), null)) {
+				regions.add(new Region(name.getKeyProperty("Cache"),
+						(Long) mBeanServer.getAttribute(name, "CacheHits"),
+						(Long) mBeanServer.getAttribute(name, "CacheMisses"),
+						(Float) mBeanServer.getAttribute(name, "CacheHitPercentage"),
+						(Long) mBeanServer.getAttribute(name, "CacheEvictions")));
+			}
+		} catch (JMException e) {
+			// 統計が取れなくても管理画面の表示は続ける
+			logger.warn("2次キャッシュの統計を取得できませんでした: {}", e.getMessage());
+		}
+		regions.sort(Comparator.comparing(Region::region));
+		return regions;
+	}
+}
@@ -0,0 +1,22 @@
+package com.example.fleamarketsystem.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+
+/**
+ * 商品一覧・検索結果のカード1枚分の表示項目。
+ * SearchResultCache で全利用者が共有するため、エンティティではなく変更できない値として持つ
+ * （遅延ロードの関連を持たず、キャッシュの外で書き換えられることもない）。
+ */
+public record ItemCard(Long id, String name, BigDecimal price, String imageUrl, ItemStatus status,
+		boolean reserved, LocalDateTime createdAt) {
+
+	// 関連（出品者・カテゴリ）には触れないため、トランザクションの外でも呼べる
+	public static ItemCard of(Item item) {
+		return new ItemCard(item.getId(), item.getName(), item.getPrice(), item.getImageUrl(), item.getStatus(),
+				item.isReserved(), item.getCreatedAt());
+	}
+}
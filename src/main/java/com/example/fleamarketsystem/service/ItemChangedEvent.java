@@ -0,0 +1,49 @@
+package com.example.fleamarketsystem.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+
+/**
+ * 商品の登録・更新・削除・ステータス変更を通知するイベント。
+ * 検索インデックスなどの派生データはこのイベントを受けて更新する（コミット後に配信）。
+ * リスナーが遅延ロードに触れないよう、発行時点の値をコピーして保持する。
+ */
+public record ItemChangedEvent(
+		Long itemId,
+		Long categoryId,
+		Long previousCategoryId,
+		ItemStatus status,
+		String name,
+		String description,
+		BigDecimal price,
+		LocalDateTime createdAt,
+		boolean deleted) {
+
+	public static ItemChangedEvent of(Item item) {
+		return of(item, categoryIdOf(item));
+	}
+
+	// 編集でカテゴリが変わった場合は、変更前のカテゴリも通知する
+	public static ItemChangedEvent of(Item item, Long previousCategoryId) {
+		return new ItemChangedEvent(item.getId(), categoryIdOf(item), previousCategoryId,
+				item.getStatus(), item.getName(), item.getDescription(), item.getPrice(), item.getCreatedAt(), false);
+	}
+
+	public static ItemChangedEvent deleted(Item item) {
+		Long categoryId = categoryIdOf(item);
+		return new ItemChangedEvent(item.getId(), categoryId, categoryId,
+				item.getStatus(), item.getName(), item.getDescription(), item.getPrice(), item.getCreatedAt(), true);
+	}
+
+	private static Long categoryIdOf(Item item) {
+		return item.getCategory() != null ? item.getCategory().getId() : null;
+	}
+
+	// 検索対象（出品中）として扱うべきか
+	public boolean isListed() {
+		return !deleted && status == ItemStatus.LISTED;
+	}
+}
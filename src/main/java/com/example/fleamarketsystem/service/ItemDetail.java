@@ -0,0 +1,42 @@
+package com.example.fleamarketsystem.service;
+
+import java.util.List;
+
+import com.example.fleamarketsystem.entity.Chat;
+import com.example.fleamarketsystem.entity.Item;
+
+/**
+ * 商品詳細ページの表示内容（商品・出品者・カテゴリ、最新のチャット、出品者の評価平均、お気に入り状態）
+ */
+public class ItemDetail {
+
+	private final Item item;
+	private final List<Chat> chats;
+	private final Double sellerAverageRating;
+	private final boolean favorited;
+
+	public ItemDetail(Item item, List<Chat> chats, Double sellerAverageRating, boolean favorited) {
+		this.item = item;
+		this.chats = chats;
+		this.sellerAverageRating = sellerAverageRating;
+		this.favorited = favorited;
+	}
+
+	public Item getItem() {
+		return item;
+	}
+
+	// 古い順（画面の表示順）
+	public List<Chat> getChats() {
+		return chats;
+	}
+
+	// 評価がまだない場合は null
+	public Double getSellerAverageRating() {
+		return sellerAverageRating;
+	}
+
+	public boolean isFavorited() {
+		return favorited;
+	}
+}
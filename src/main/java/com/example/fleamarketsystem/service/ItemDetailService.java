@@ -0,0 +1,75 @@
+package com.example.fleamarketsystem.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.fleamarketsystem.entity.Chat;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.repository.ChatRepository;
+import com.example.fleamarketsystem.repository.ItemRepository;
+
+/**
+ * 商品詳細ページの表示内容をまとめて取得する。
+ * 商品（出品者・カテゴリ・評価平均・お気に入り状態込み）で1回、最新のチャットで1回の計2回の問い合わせで済ませる。
+ */
+@Service
+public class ItemDetailService {
+
+	private final ItemRepository itemRepository;
+	private final ChatRepository chatRepository;
+	private final int chatLimit;
+
+	public ItemDetailService(ItemRepository itemRepository, ChatRepository chatRepository,
+			@Value("${item.detail.chat-limit:50}") int chatLimit) {
+		this.itemRepository = itemRepository;
+		this.chatRepository = chatRepository;
+		this.chatLimit = chatLimit;
+	}
+
+	/**
+	 * 商品詳細ページ（未ログイン時の表示）の最終更新時刻（エポックミリ秒）。
+	 * 商品の更新日時と、ページに表示する出品者の評価集計の更新日時の新しいほう。
+	 */
+	@Transactional(readOnly = true)
+	public Optional<Long> getLastModified(Long itemId) {
+		List<Object[]> rows = itemRepository.findDetailTimestampsById(itemId);
+		if (rows.isEmpty() || rows.get(0)[0] == null) {
+			return Optional.empty();
+		}
+		LocalDateTime lastModified = (LocalDateTime) rows.get(0)[0];
+		LocalDateTime reputationUpdatedAt = (LocalDateTime) rows.get(0)[1];
+		if (reputationUpdatedAt != null && reputationUpdatedAt.isAfter(lastModified)) {
+			lastModified = reputationUpdatedAt;
+		}
+		return Optional.of(lastModified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+	}
+
+	/**
+	 * @param viewerEmail ログイン中のユーザーのメールアドレス（未ログインは null）
+	 */
+	@Transactional(readOnly = true)
+	public Optional<ItemDetail> getItemDetail(Long itemId, String viewerEmail) {
+		List<Object[]> rows = itemRepository.findDetailById(itemId, viewerEmail);
+		if (rows.isEmpty()) {
+			return Optional.empty();
+		}
+		Object[] row = rows.get(0);
+		Item item = (Item) row[0];
+		Double sellerAverageRating = row[1] != null ? ((Number) row[1]).doubleValue() : null;
+		boolean favorited = Boolean.TRUE.equals(row[2]);
+
+		// 新しい順に取得したものを、表示用に古い順へ並べ替える
+		List<Chat> chats = new ArrayList<>(chatRepository.findLatestByItemId(itemId, PageRequest.of(0, chatLimit)));
+		Collections.reverse(chats);
+		return Optional.of(new ItemDetail(item, chats, sellerAverageRating, favorited));
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.fleamarketsystem.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * CSV 一括出品の結果。行ごとの成否（成功した行は登録した商品の ID、失敗した行は理由）を CSV の行番号順に持つ。
+ */
+public class ItemImportReport {
+
+	/**
+	 * 1行分の結果。line は CSV ファイル上の行番号（1始まり）。
+	 */
+	public record Row(long line, boolean success, Long itemId, String name, String message) {
+
+		static Row success(long line, Long itemId, String name) {
+			return new Row(line, true, itemId, name, null);
+		}
+
+		static Row failure(long line, String name, String message) {
+			return new Row(line, false, null, name, message);
+		}
+	}
+
+	private final List<Row> rows = new ArrayList<>();
+	private int successCount;
+	private int failureCount;
+	private boolean truncated;
+	private String abortMessage;
+
+	void add(Row row) {
+		rows.add(row);
+		if (row.success()) {
+			successCount++;
+		} else {
+			failureCount++;
+		}
+	}
+
+	// 上限件数を超えたため、以降の行を読まずに打ち切った
+	void markTruncated() {
+		truncated = true;
+	}
+
+	// CSV の形式が壊れていたため、以降の行を読めなかった
+	void abort(String message) {
+		abortMessage = message;
+	}
+
+	// 書き込みはまとめて行うため、行番号順に並べ直してから返す
+	void sortByLine() {
+		rows.sort(Comparator.comparingLong(Row::line));
+	}
+
+	public List<Row> getRows() {
+		return rows;
+	}
+
+	public List<Row> getFailures() {
+		return rows.stream().filter(row -> !row.success()).toList();
+	}
+
+	public int getSuccessCount() {
+		return successCount;
+	}
+
+	public int getFailureCount() {
+		return failureCount;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public String getAbortMessage() {
+		return abortMessage;
+	}
+}
@@ -0,0 +1,220 @@
+package com.example.fleamarketsystem.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import jakarta.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.fleamarketsystem.entity.Category;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.repository.ItemRepository;
+import com.example.fleamarketsystem.util.CsvReader;
+
+/**
+ * CSV による商品の一括出品。
+ * 列は「商品名, 説明, 価格, カテゴリ名, 画像URL」（1行目が見出しなら読み飛ばす）。
+ * ファイルは1行ずつ読み、検証を通った行を batch-size 件ごとに1トランザクションでまとめて登録する。
+ * 画像は Cloudinary へアップロードせず、指定された URL をそのまま使う。
+ */
+@Service
+public class ItemImportService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemImportService.class);
+
+	private static final int MAX_NAME_LENGTH = 255;
+	private static final int MAX_IMAGE_URL_LENGTH = 255;
+
+	private record ParsedRow(long line, String name, String description, BigDecimal price, Long categoryId,
+			String imageUrl) {
+
+		Item toItem(User seller, Category category) {
+			Item item = new Item();
+			item.setSeller(seller);
+			item.setName(name);
+			item.setDescription(description);
+			item.setPrice(price);
+			item.setCategory(category);
+			item.setImageUrl(imageUrl);
+			return item;
+		}
+	}
+
+	private final CategoryService categoryService;
+	private final ItemRepository itemRepository;
+	private final EntityManager entityManager;
+	private final TransactionTemplate transactionTemplate;
+	private final ApplicationEventPublisher eventPublisher;
+	private final int batchSize;
+	private final int maxRows;
+
+	public ItemImportService(CategoryService categoryService, ItemRepository itemRepository,
+			EntityManager entityManager, TransactionTemplate transactionTemplate,
+			ApplicationEventPublisher eventPublisher,
+			@Value("${item.import.batch-size:500}") int batchSize,
+			@Value("${item.import.max-rows:10000}") int maxRows) {
+		this.categoryService = categoryService;
+		this.itemRepository = itemRepository;
+		this.entityManager = entityManager;
+		this.transactionTemplate = transactionTemplate;
+		this.eventPublisher = eventPublisher;
+		this.batchSize = batchSize;
+		this.maxRows = maxRows;
+	}
+
+	public ItemImportReport importCsv(Reader source, Long sellerId) {
+		ItemImportReport report = new ItemImportReport();
+		// 1回の取り込みの中では、同じカテゴリ名を何度も問い合わせない
+		Map<String, Optional<Long>> categoryIds = new HashMap<>();
+		List<ParsedRow> chunk = new ArrayList<>(batchSize);
+		int rowCount = 0;
+
+		try (CsvReader reader = new CsvReader(source)) {
+			List<String> record;
+			boolean first = true;
+			while ((record = reader.next()) != null) {
+				if (first) {
+					first = false;
+					if (isHeader(record)) {
+						continue;
+					}
+				}
+				if (++rowCount > maxRows) {
+					report.markTruncated();
+					break;
+				}
+				long line = reader.getRecordLine();
+				String error = validate(record, categoryIds);
+				if (error != null) {
+					report.add(ItemImportReport.Row.failure(line, field(record, 0), error));
+					continue;
+				}
+				chunk.add(new ParsedRow(line, field(record, 0), field(record, 1), parsePrice(field(record, 2)),
+						categoryIds.get(field(record, 3)).orElseThrow(), emptyToNull(field(record, 4))));
+				if (chunk.size() >= batchSize) {
+					writeChunk(chunk, sellerId, report);
+					chunk.clear();
+				}
+			}
+		} catch (IOException e) {
+			// 途中で読めなくなっても、それまでに読んだ行は登録して結果を返す
+			report.abort(e.getMessage());
+		}
+		if (!chunk.isEmpty()) {
+			writeChunk(chunk, sellerId, report);
+		}
+		report.sortByLine();
+		logger.info("CSV一括出品: 出品者ID={} 成功={} 失敗={}", sellerId, report.getSuccessCount(),
+				report.getFailureCount());
+		return report;
+	}
+
+	private static boolean isHeader(List<String> record) {
+		String first = field(record, 0);
+		return "name".equalsIgnoreCase(first) || "商品名".equals(first);
+	}
+
+	// 問題がなければ null、あれば画面に出す理由を返す
+	private String validate(List<String> record, Map<String, Optional<Long>> categoryIds) {
+		if (record.size() < 4 || record.size() > 5) {
+			return "列の数が正しくありません（商品名, 説明, 価格, カテゴリ名, 画像URL）。";
+		}
+		String name = field(record, 0);
+		if (name.isEmpty()) {
+			return "商品名が空です。";
+		}
+		if (name.length() > MAX_NAME_LENGTH) {
+			return "商品名が長すぎます（" + MAX_NAME_LENGTH + "文字まで）。";
+		}
+		BigDecimal price = parsePrice(field(record, 2));
+		if (price == null) {
+			return "価格は1以上の整数で入力してください。";
+		}
+		String categoryName = field(record, 3);
+		if (categoryIds.computeIfAbsent(categoryName,
+				n -> categoryService.getCategoryByName(n).map(Category::getId)).isEmpty()) {
+			return "カテゴリ「" + categoryName + "」が見つかりません。";
+		}
+		String imageUrl = field(record, 4);
+		if (!imageUrl.isEmpty()) {
+			if (!imageUrl.startsWith("https://") && !imageUrl.startsWith("http://")) {
+				return "画像URLは http:// または https:// で始まる必要があります。";
+			}
+			if (imageUrl.length() > MAX_IMAGE_URL_LENGTH) {
+				return "画像URLが長すぎます（" + MAX_IMAGE_URL_LENGTH + "文字まで）。";
+			}
+		}
+		return null;
+	}
+
+	private static String field(List<String> record, int index) {
+		return index < record.size() ? record.get(index).strip() : "";
+	}
+
+	private static String emptyToNull(String value) {
+		return value.isEmpty() ? null : value;
+	}
+
+	// 出品フォームと同じく1以上の整数のみ受け付ける（「1,000」のような区切りは許す）
+	private static BigDecimal parsePrice(String value) {
+		try {
+			BigDecimal price = new BigDecimal(value.replace(",", ""));
+			if (price.signum() <= 0 || price.stripTrailingZeros().scale() > 0) {
+				return null;
+			}
+			return price;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	// --- 書き込み ---
+
+	private void writeChunk(List<ParsedRow> chunk, Long sellerId, ItemImportReport report) {
+		try {
+			List<Item> saved = transactionTemplate.execute(status -> saveAll(chunk, sellerId));
+			for (int i = 0; i < chunk.size(); i++) {
+				report.add(ItemImportReport.Row.success(chunk.get(i).line(), saved.get(i).getId(), chunk.get(i).name()));
+			}
+		} catch (RuntimeException e) {
+			// まとめての登録に失敗した場合は、失敗した行を特定するため1行ずつ登録し直す
+			logger.warn("CSV一括出品のバッチ登録に失敗したため1行ずつ登録します: {}", e.getMessage());
+			for (ParsedRow row : chunk) {
+				try {
+					List<Item> saved = transactionTemplate.execute(status -> saveAll(List.of(row), sellerId));
+					report.add(ItemImportReport.Row.success(row.line(), saved.get(0).getId(), row.name()));
+				} catch (RuntimeException rowError) {
+					report.add(ItemImportReport.Row.failure(row.line(), row.name(), "登録に失敗しました。"));
+				}
+			}
+		}
+	}
+
+	private List<Item> saveAll(List<ParsedRow> rows, Long sellerId) {
+		User seller = entityManager.getReference(User.class, sellerId);
+		List<Item> items = new ArrayList<>(rows.size());
+		for (ParsedRow row : rows) {
+			items.add(row.toItem(seller, entityManager.getReference(Category.class, row.categoryId())));
+		}
+		itemRepository.saveAll(items);
+		entityManager.flush();
+		// 検索インデックスなどへの反映はコミット後に行われる（イベントは値をコピーして保持する）
+		items.forEach(item -> eventPublisher.publishEvent(ItemChangedEvent.of(item)));
+		// 永続化コンテキストに商品を溜め込まず、件数が増えてもメモリ使用量を一定に保つ
+		entityManager.clear();
+		return items;
+	}
+}
@@ -0,0 +1,89 @@
+package com.example.fleamarketsystem.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 購入手続き中の商品の予約（有効期限つき）をメモリ上に持つ表。
+ * 同じ商品への購入が集中したとき、2人目以降を DB に問い合わせずに断る。
+ * 表は ConcurrentHashMap で、商品ごとの予約の取得・解除はキーの属するビンのロックだけで行う（表全体をロックしない）。
+ * 正しさの根拠は DB 側（item.reservation_order_id と @Version）にあり、この表は DB の写し。
+ * 起動時に DB から読み込み、期限切れの予約は上書きできる。
+ */
+@Component
+public class ItemReservations implements ApplicationRunner {
+
+	/**
+	 * 商品1件の予約。orderId は注文を登録するまでの間 null。
+	 */
+	public record Hold(long itemId, Long orderId, LocalDateTime expiresAt) {
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemReservations.class);
+
+	private static final String LOAD = "select id, reservation_order_id, reserved_until from item"
+			+ " where reservation_order_id is not null";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final Duration ttl;
+	private final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+
+	public ItemReservations(JdbcTemplate jdbcTemplate, @Value("${reservation.ttl-minutes:30}") long ttlMinutes) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.ttl = Duration.ofMinutes(ttlMinutes);
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		jdbcTemplate.query(LOAD, rs -> {
+			long itemId = rs.getLong(1);
+			holds.put(itemId, new Hold(itemId, rs.getLong(2), rs.getObject(3, LocalDateTime.class)));
+		});
+		logger.info("商品の予約を読み込みました: {}件", holds.size());
+	}
+
+	// 購入手続きを始めてから決済を待つ時間
+	public Duration getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * 有効な予約がなければ予約して返す。他の人が予約中なら null。
+	 */
+	public Hold tryHold(long itemId, LocalDateTime now) {
+		Hold hold = new Hold(itemId, null, now.plus(ttl));
+		Hold current = holds.compute(itemId,
+				(id, existing) -> existing == null || !existing.expiresAt().isAfter(now) ? hold : existing);
+		return current == hold ? hold : null;
+	}
+
+	// 注文を登録した予約に注文 ID を結び付ける
+	public void attach(Hold hold, long orderId) {
+		holds.replace(hold.itemId(), hold, new Hold(hold.itemId(), orderId, hold.expiresAt()));
+	}
+
+	// 注文の登録に失敗した予約を取り消す
+	public void release(Hold hold) {
+		holds.remove(hold.itemId(), hold);
+	}
+
+	// 注文の予約を解く（決済完了・決済失敗・期限切れ）。別の注文の予約に置き換わっていれば何もしない
+	public void release(long itemId, long orderId) {
+		holds.computeIfPresent(itemId, (id, hold) -> Objects.equals(hold.orderId(), orderId) ? null : hold);
+	}
+
+	public int size() {
+		return holds.size();
+	}
+}
@@ -0,0 +1,705 @@
+package com.example.fleamarketsystem.service;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.fleamarketsystem.entity.ItemStatus;
+
+/**
+ * 出品中の商品を対象としたメモリ上の全文検索インデックス。
+ * 商品名・説明文を文字 bigram に分解した転置インデックスで、辞書なしで日本語を検索できる。
+ * ポスティングはスロット番号の int 配列で保持し、商品の変更は ItemChangedEvent で逐次反映する。
+ * 結果の並びは DB 検索（ItemRepository.RELEVANCE_ORDER）と揃え、商品名一致 → 商品名とキーワードの
+ * トライグラム類似度（pg_trgm の similarity と同じ計算）→ 新着順とする。
+ * 起動時に DB から再構築し、定期的に DB との整合性を確認する。
+ */
+@Component
+public class ItemSearchIndex implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemSearchIndex.class);
+
+	private static final String SELECT_LISTED = "select id, name, description, category_id, price, created_at"
+			+ " from item where status = " + ItemStatus.LISTED_CODE + " order by id";
+
+	static final long NO_CATEGORY = -1L;
+
+	private final JdbcTemplate jdbcTemplate;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// 以下は lock の書き込みロック下でのみ更新する
+	private Segment segment = new Segment(16);
+	private boolean rebuilding = false;
+	private final List<ItemChangedEvent> pendingDuringRebuild = new ArrayList<>();
+
+	private volatile boolean ready = false;
+
+	public ItemSearchIndex(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		rebuild();
+	}
+
+	// 起動直後の再構築が終わるまでは DB 検索にフォールバックさせる
+	public boolean isReady() {
+		return ready;
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return segment.live;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// --- 検索 ---
+
+	public SearchHits search(String keyword, Long categoryId, int offset, int limit) {
+		String[] terms = tokenize(keyword);
+		long[] keywordTrigrams = trigrams(normalize(keyword).trim());
+		lock.readLock().lock();
+		try {
+			return segment.search(terms, keywordTrigrams, categoryId, offset, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 検索結果: 表示するページ分の商品ID（表示順）、総ヒット件数、絞り込み候補の件数
+	 */
+	public record SearchHits(long[] itemIds, long total, SearchFacets facets) {
+
+		static final SearchHits EMPTY = new SearchHits(new long[0], 0, SearchFacets.EMPTY);
+	}
+
+	// --- 逐次更新 ---
+
+	// 検索結果キャッシュ（SearchResultCache）の無効化より先に反映する
+	@Order(0)
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onItemChanged(ItemChangedEvent event) {
+		lock.writeLock().lock();
+		try {
+			apply(segment, event);
+			if (rebuilding) {
+				pendingDuringRebuild.add(event);
+			}
+			if (segment.needsCompaction()) {
+				segment = segment.compacted();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private static void apply(Segment target, ItemChangedEvent event) {
+		if (event.itemId() == null) {
+			return;
+		}
+		target.remove(event.itemId());
+		if (event.isListed()) {
+			target.add(event.itemId(),
+					event.categoryId() != null ? event.categoryId() : NO_CATEGORY,
+					event.price() != null ? event.price().longValue() : 0L,
+					toEpochMicros(event.createdAt()),
+					event.name(), event.description());
+		}
+	}
+
+	// --- 再構築・整合性チェック ---
+
+	public void rebuild() {
+		lock.writeLock().lock();
+		try {
+			rebuilding = true;
+			pendingDuringRebuild.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		Segment fresh = new Segment(1024);
+		try {
+			jdbcTemplate.query(SELECT_LISTED, (RowCallbackHandler) (ResultSet rs) -> {
+				long categoryId = rs.getLong("category_id");
+				if (rs.wasNull()) {
+					categoryId = NO_CATEGORY;
+				}
+				Timestamp createdAt = rs.getTimestamp("created_at");
+				fresh.add(rs.getLong("id"), categoryId, rs.getBigDecimal("price").longValue(),
+						toEpochMicros(createdAt != null ? createdAt.toLocalDateTime() : null),
+						rs.getString("name"), rs.getString("description"));
+			});
+		} catch (RuntimeException e) {
+			lock.writeLock().lock();
+			try {
+				rebuilding = false;
+				pendingDuringRebuild.clear();
+			} finally {
+				lock.writeLock().unlock();
+			}
+			logger.error("検索インデックスの再構築に失敗しました: {}", e.getMessage());
+			throw e;
+		}
+
+		lock.writeLock().lock();
+		try {
+			// 読み込み中に届いた変更を反映してから差し替える（同じ変更の二重適用は冪等）
+			for (ItemChangedEvent event : pendingDuringRebuild) {
+				apply(fresh, event);
+			}
+			pendingDuringRebuild.clear();
+			rebuilding = false;
+			segment = fresh;
+			ready = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		logger.info("検索インデックスを再構築しました: {}件", fresh.live);
+	}
+
+	@Scheduled(fixedDelayString = "${search.index.verify-interval-ms:3600000}",
+			initialDelayString = "${search.index.verify-interval-ms:3600000}")
+	public void scheduledConsistencyCheck() {
+		verifyConsistency();
+	}
+
+	/**
+	 * 出品中の商品IDの集合を DB と突き合わせ、ずれていれば再構築する。
+	 *
+	 * @return 整合していれば true
+	 */
+	public boolean verifyConsistency() {
+		if (!ready) {
+			return false;
+		}
+		long[] expected = jdbcTemplate.queryForList("select id from item where status = " + ItemStatus.LISTED_CODE, Long.class)
+				.stream().mapToLong(Long::longValue).sorted().toArray();
+		long[] actual;
+		lock.readLock().lock();
+		try {
+			actual = segment.liveItemIds();
+		} finally {
+			lock.readLock().unlock();
+		}
+		Arrays.sort(actual);
+		if (Arrays.equals(expected, actual)) {
+			return true;
+		}
+		logger.warn("検索インデックスが DB と一致しません (DB: {}件, インデックス: {}件)。再構築します。",
+				expected.length, actual.length);
+		rebuild();
+		return false;
+	}
+
+	// --- テキスト処理 ---
+
+	// 全角英数・半角カナなどを NFKC で揃え、小文字化する
+	static String normalize(String value) {
+		if (value == null) {
+			return "";
+		}
+		return Normalizer.normalize(value, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+	}
+
+	static String[] tokenize(String keyword) {
+		String normalized = normalize(keyword).trim();
+		if (normalized.isEmpty()) {
+			return new String[0];
+		}
+		return normalized.split("\\s+");
+	}
+
+	// 空白をまたがない文字 bigram を (先頭文字 << 16 | 次の文字) の int にして、重複なしの昇順で返す
+	static int[] bigrams(String text) {
+		int n = text.length();
+		if (n < 2) {
+			return new int[0];
+		}
+		int[] grams = new int[n - 1];
+		int count = 0;
+		for (int i = 0; i + 1 < n; i++) {
+			char a = text.charAt(i);
+			char b = text.charAt(i + 1);
+			if (Character.isWhitespace(a) || Character.isWhitespace(b)) {
+				continue;
+			}
+			grams[count++] = (a << 16) | b;
+		}
+		Arrays.sort(grams, 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || grams[unique - 1] != grams[i]) {
+				grams[unique++] = grams[i];
+			}
+		}
+		return Arrays.copyOf(grams, unique);
+	}
+
+	// pg_trgm の show_trgm と同じ分割: 英数字（文字・数字）の並びを単語とし、各単語の前に空白2つ・後ろに1つを
+	// 付けて3文字ずつ切り出す。3文字を (c1 << 32 | c2 << 16 | c3) の long にして、重複なしの昇順で返す
+	static long[] trigrams(String normalized) {
+		long[] grams = new long[normalized.length() * 2 + 2];
+		int count = 0;
+		int i = 0;
+		int n = normalized.length();
+		while (i < n) {
+			if (!Character.isLetterOrDigit(normalized.charAt(i))) {
+				i++;
+				continue;
+			}
+			int end = i;
+			while (end < n && Character.isLetterOrDigit(normalized.charAt(end))) {
+				end++;
+			}
+			String padded = "  " + normalized.substring(i, end) + " ";
+			for (int j = 0; j + 3 <= padded.length(); j++) {
+				if (count == grams.length) {
+					grams = Arrays.copyOf(grams, count * 2);
+				}
+				grams[count++] = ((long) padded.charAt(j) << 32) | ((long) padded.charAt(j + 1) << 16)
+						| padded.charAt(j + 2);
+			}
+			i = end;
+		}
+		Arrays.sort(grams, 0, count);
+		int unique = 0;
+		for (int k = 0; k < count; k++) {
+			if (unique == 0 || grams[unique - 1] != grams[k]) {
+				grams[unique++] = grams[k];
+			}
+		}
+		return Arrays.copyOf(grams, unique);
+	}
+
+	// pg_trgm の similarity: 共通するトライグラムの数 / 和集合の数（どちらかが空なら 0）。
+	// 並びが DB 検索と同じになるよう、pg_trgm と同じく float で計算する
+	static float similarity(long[] a, long[] b) {
+		if (a.length == 0 || b.length == 0) {
+			return 0;
+		}
+		int common = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] == b[j]) {
+				common++;
+				i++;
+				j++;
+			} else if (a[i] < b[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return (float) common / (float) (a.length + b.length - common);
+	}
+
+	private static long toEpochMicros(LocalDateTime value) {
+		if (value == null) {
+			return 0L;
+		}
+		return value.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + value.getNano() / 1_000;
+	}
+
+	// --- 内部構造 ---
+
+	/**
+	 * スロット番号で管理する商品ドキュメントと、bigram ごとのポスティング。
+	 * スロットは追加順に採番するため、各ポスティングは常に昇順になる。
+	 * 削除はスロットを無効化するだけで、無効スロットが増えたら詰め直す。
+	 */
+	private static final class Segment {
+
+		// 検索結果のエントリ（long）: 上位から「説明文のみ一致」フラグ、類似度の補数、スロット番号。
+		// 小さい値ほど上位になるため、エントリの比較だけで商品名一致 → 類似度の高い順に並ぶ
+		private static final long DESCRIPTION_ONLY = 1L << 62;
+		private static final int SCORE_SHIFT = 31;
+		private static final long SCORE_SCALE = 1L << 30;
+		private static final long SLOT_MASK = (1L << SCORE_SHIFT) - 1;
+
+		long[] itemIds;
+		long[] categoryIds;
+		long[] prices;
+		long[] createdAt;
+		String[] texts;
+		int[] nameLengths;
+		long[][] nameTrigrams;
+		boolean[] alive;
+		int size;
+		int live;
+
+		final LongIntMap slotByItemId;
+		final Map<Integer, Postings> postings = new HashMap<>();
+
+		Segment(int capacity) {
+			itemIds = new long[capacity];
+			categoryIds = new long[capacity];
+			prices = new long[capacity];
+			createdAt = new long[capacity];
+			texts = new String[capacity];
+			nameLengths = new int[capacity];
+			nameTrigrams = new long[capacity][];
+			alive = new boolean[capacity];
+			slotByItemId = new LongIntMap(capacity);
+		}
+
+		void add(long itemId, long categoryId, long price, long createdAtMicros, String name, String description) {
+			String normalizedName = normalize(name);
+			String normalizedDescription = normalize(description);
+			String text = normalizedDescription.isEmpty() ? normalizedName
+					: normalizedName + "\n" + normalizedDescription;
+			addSlot(itemId, categoryId, price, createdAtMicros, text, normalizedName.length(),
+					trigrams(normalizedName));
+		}
+
+		private void addSlot(long itemId, long categoryId, long price, long createdAtMicros, String text,
+				int nameLength, long[] nameGrams) {
+			ensureCapacity(size + 1);
+			int slot = size++;
+			itemIds[slot] = itemId;
+			categoryIds[slot] = categoryId;
+			prices[slot] = price;
+			createdAt[slot] = createdAtMicros;
+			texts[slot] = text;
+			nameLengths[slot] = nameLength;
+			nameTrigrams[slot] = nameGrams;
+			alive[slot] = true;
+			live++;
+			slotByItemId.put(itemId, slot);
+			for (int gram : bigrams(text)) {
+				postings.computeIfAbsent(gram, key -> new Postings()).add(slot);
+			}
+		}
+
+		void remove(long itemId) {
+			int slot = slotByItemId.remove(itemId);
+			if (slot < 0) {
+				return;
+			}
+			alive[slot] = false;
+			texts[slot] = null;
+			nameTrigrams[slot] = null;
+			live--;
+		}
+
+		boolean needsCompaction() {
+			int dead = size - live;
+			return dead > 1024 && dead > live;
+		}
+
+		Segment compacted() {
+			Segment compacted = new Segment(Math.max(16, live * 2));
+			for (int slot = 0; slot < size; slot++) {
+				if (alive[slot]) {
+					compacted.addSlot(itemIds[slot], categoryIds[slot], prices[slot], createdAt[slot], texts[slot],
+							nameLengths[slot], nameTrigrams[slot]);
+				}
+			}
+			return compacted;
+		}
+
+		long[] liveItemIds() {
+			long[] ids = new long[live];
+			int count = 0;
+			for (int slot = 0; slot < size; slot++) {
+				if (alive[slot]) {
+					ids[count++] = itemIds[slot];
+				}
+			}
+			return ids;
+		}
+
+		SearchHits search(String[] terms, long[] keywordTrigrams, Long categoryId, int offset, int limit) {
+			int[] candidates;
+			int count;
+			int[] grams = queryBigrams(terms);
+			if (grams.length == 0) {
+				// 1文字だけのキーワード（またはキーワードなし）は全スロットを走査する
+				candidates = new int[size];
+				for (int slot = 0; slot < size; slot++) {
+					candidates[slot] = slot;
+				}
+				count = size;
+			} else {
+				Postings[] lists = new Postings[grams.length];
+				for (int i = 0; i < grams.length; i++) {
+					Postings list = postings.get(grams[i]);
+					if (list == null) {
+						return SearchHits.EMPTY;
+					}
+					lists[i] = list;
+				}
+				// 短いポスティングから順に積集合を取る
+				Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+				candidates = Arrays.copyOf(lists[0].slots, lists[0].size);
+				count = lists[0].size;
+				for (int i = 1; i < lists.length && count > 0; i++) {
+					count = intersect(candidates, count, lists[i]);
+				}
+			}
+
+			// bigram の一致は隣接を保証しないため、部分文字列として含むかを最後に確認する
+			// 同じ走査の中で、カテゴリ別（カテゴリ条件なし）と価格帯別（カテゴリ条件あり）の件数も数える
+			SearchFacets.Counter facets = new SearchFacets.Counter();
+			long[] entries = new long[count];
+			int matched = 0;
+			for (int i = 0; i < count; i++) {
+				int slot = candidates[i];
+				if (!alive[slot]) {
+					continue;
+				}
+				String text = texts[slot];
+				if (!containsAll(text, terms, text.length())) {
+					continue;
+				}
+				facets.countCategory(categoryIds[slot]);
+				if (categoryId != null && categoryIds[slot] != categoryId) {
+					continue;
+				}
+				facets.countPrice(prices[slot]);
+				boolean nameMatch = containsAll(text, terms, nameLengths[slot]);
+				long score = Math.round(similarity(nameTrigrams[slot], keywordTrigrams) * SCORE_SCALE);
+				entries[matched++] = (nameMatch ? 0 : DESCRIPTION_ONLY) | (SCORE_SCALE - score) << SCORE_SHIFT | slot;
+			}
+
+			sortEntries(entries, matched);
+
+			int from = Math.min(Math.max(offset, 0), matched);
+			int to = Math.min(from + Math.max(limit, 0), matched);
+			long[] page = new long[to - from];
+			for (int i = from; i < to; i++) {
+				page[i - from] = itemIds[(int) (entries[i] & SLOT_MASK)];
+			}
+			return new SearchHits(page, matched, facets.toFacets(NO_CATEGORY));
+		}
+
+		private static int[] queryBigrams(String[] terms) {
+			int[] all = new int[0];
+			for (String term : terms) {
+				int[] grams = bigrams(term);
+				int[] merged = Arrays.copyOf(all, all.length + grams.length);
+				System.arraycopy(grams, 0, merged, all.length, grams.length);
+				all = merged;
+			}
+			return Arrays.stream(all).distinct().toArray();
+		}
+
+		// candidates[0, count) と list の積集合を candidates に書き戻し、件数を返す
+		private static int intersect(int[] candidates, int count, Postings list) {
+			int i = 0;
+			int j = 0;
+			int out = 0;
+			while (i < count && j < list.size) {
+				int a = candidates[i];
+				int b = list.slots[j];
+				if (a == b) {
+					candidates[out++] = a;
+					i++;
+					j++;
+				} else if (a < b) {
+					i++;
+				} else {
+					j++;
+				}
+			}
+			return out;
+		}
+
+		// text の先頭 length 文字にすべての語が含まれるか
+		private static boolean containsAll(String text, String[] terms, int length) {
+			for (String term : terms) {
+				int index = text.indexOf(term);
+				if (index < 0 || index + term.length() > length) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// 商品名一致 → 類似度の高い順 → 新着順（created_at, id の降順）。ボックス化を避けるためボトムアップのマージソートで並べる
+		private void sortEntries(long[] entries, int n) {
+			long[] buffer = new long[n];
+			for (int width = 1; width < n; width *= 2) {
+				for (int lo = 0; lo < n - width; lo += 2 * width) {
+					merge(entries, buffer, lo, lo + width, Math.min(lo + 2 * width, n));
+				}
+			}
+		}
+
+		private void merge(long[] entries, long[] buffer, int lo, int mid, int hi) {
+			System.arraycopy(entries, lo, buffer, lo, hi - lo);
+			int i = lo;
+			int j = mid;
+			for (int k = lo; k < hi; k++) {
+				if (i >= mid) {
+					entries[k] = buffer[j++];
+				} else if (j >= hi) {
+					entries[k] = buffer[i++];
+				} else if (compare(buffer[j], buffer[i]) < 0) {
+					entries[k] = buffer[j++];
+				} else {
+					entries[k] = buffer[i++];
+				}
+			}
+		}
+
+		private int compare(long a, long b) {
+			int byRelevance = Long.compare(a >>> SCORE_SHIFT, b >>> SCORE_SHIFT);
+			if (byRelevance != 0) {
+				return byRelevance;
+			}
+			int slotA = (int) (a & SLOT_MASK);
+			int slotB = (int) (b & SLOT_MASK);
+			int byDate = Long.compare(createdAt[slotB], createdAt[slotA]);
+			if (byDate != 0) {
+				return byDate;
+			}
+			return Long.compare(itemIds[slotB], itemIds[slotA]);
+		}
+
+		private void ensureCapacity(int required) {
+			if (required <= itemIds.length) {
+				return;
+			}
+			int capacity = Math.max(required, itemIds.length * 2);
+			itemIds = Arrays.copyOf(itemIds, capacity);
+			categoryIds = Arrays.copyOf(categoryIds, capacity);
+			prices = Arrays.copyOf(prices, capacity);
+			createdAt = Arrays.copyOf(createdAt, capacity);
+			texts = Arrays.copyOf(texts, capacity);
+			nameLengths = Arrays.copyOf(nameLengths, capacity);
+			nameTrigrams = Arrays.copyOf(nameTrigrams, capacity);
+			alive = Arrays.copyOf(alive, capacity);
+		}
+	}
+
+	/**
+	 * 昇順のスロット番号リスト（可変長の int 配列）
+	 */
+	private static final class Postings {
+
+		int[] slots = new int[4];
+		int size;
+
+		void add(int slot) {
+			if (size == slots.length) {
+				slots = Arrays.copyOf(slots, size * 2);
+			}
+			slots[size++] = slot;
+		}
+	}
+
+	/**
+	 * 商品ID（正の long）→ スロット番号のオープンアドレス法ハッシュ表。キー 0 を空きとして使う。
+	 */
+	private static final class LongIntMap {
+
+		private long[] keys;
+		private int[] values;
+		private int mask;
+		private int size;
+
+		LongIntMap(int expected) {
+			int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+			keys = new long[capacity];
+			values = new int[capacity];
+			mask = capacity - 1;
+		}
+
+		void put(long key, int value) {
+			if ((size + 1) * 2 > keys.length) {
+				resize();
+			}
+			int index = hash(key) & mask;
+			while (keys[index] != 0) {
+				if (keys[index] == key) {
+					values[index] = value;
+					return;
+				}
+				index = (index + 1) & mask;
+			}
+			keys[index] = key;
+			values[index] = value;
+			size++;
+		}
+
+		int remove(long key) {
+			int gap = indexOf(key);
+			if (gap < 0) {
+				return -1;
+			}
+			int removed = values[gap];
+			// 後続のエントリを詰めて探索経路を保つ（tombstone を使わない削除）
+			int next = (gap + 1) & mask;
+			while (keys[next] != 0) {
+				int home = hash(keys[next]) & mask;
+				if (((next - home) & mask) >= ((next - gap) & mask)) {
+					keys[gap] = keys[next];
+					values[gap] = values[next];
+					gap = next;
+				}
+				next = (next + 1) & mask;
+			}
+			keys[gap] = 0;
+			size--;
+			return removed;
+		}
+
+		private int indexOf(long key) {
+			int index = hash(key) & mask;
+			while (keys[index] != 0) {
+				if (keys[index] == key) {
+					return index;
+				}
+				index = (index + 1) & mask;
+			}
+			return -1;
+		}
+
+		private void resize() {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			mask = keys.length - 1;
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					put(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.example.fleamarketsystem.service;
+
+import org.springframework.data.domain.Page;
+
+/**
+ * 検索結果のページと、同じ検索条件での絞り込み候補の件数。SearchResultCache で共有するため、どちらも変更できない値で持つ
+ */
+public class ItemSearchResult {
+
+	private final Page<ItemCard> page;
+	private final SearchFacets facets;
+
+	public ItemSearchResult(Page<ItemCard> page, SearchFacets facets) {
+		this.page = page;
+		this.facets = facets;
+	}
+
+	public Page<ItemCard> getPage() {
+		return page;
+	}
+
+	public SearchFacets getFacets() {
+		return facets;
+	}
+}
@@ -1,47 +1,181 @@
 package com.example.fleamarketsystem.service;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
 import com.example.fleamarketsystem.entity.User;
 import com.example.fleamarketsystem.repository.ItemRepository;
+import com.example.fleamarketsystem.repository.ItemSort;
+import com.example.fleamarketsystem.repository.ItemSpecifications;
+import com.example.fleamarketsystem.util.ItemCursor;
 
 @Service
 public class ItemService {
 
 	private final ItemRepository itemRepository;
 	private final CloudinaryService cloudinaryService;
+	private final ItemSearchIndex itemSearchIndex;
+	private final SearchResultCache searchResultCache;
+	private final ItemSuggestIndex itemSuggestIndex;
+	private final ApplicationEventPublisher eventPublisher;
 
-	public ItemService(ItemRepository itemRepository, CloudinaryService cloudinaryService) {
+	public ItemService(ItemRepository itemRepository, CloudinaryService cloudinaryService,
+			ItemSearchIndex itemSearchIndex, SearchResultCache searchResultCache, ItemSuggestIndex itemSuggestIndex,
+			ApplicationEventPublisher eventPublisher) {
 		this.itemRepository = itemRepository;
 		this.cloudinaryService = cloudinaryService;
+		this.itemSearchIndex = itemSearchIndex;
+		this.searchResultCache = searchResultCache;
+		this.itemSuggestIndex = itemSuggestIndex;
+		this.eventPublisher = eventPublisher;
 	}
 
 	public Page<Item> searchItems(String keyword, Long categoryId, int page, int size) {
 		Pageable pageable = PageRequest.of(page, size);
-		if (keyword != null && !keyword.isEmpty() && categoryId != null) {
-			return itemRepository.findByNameContainingIgnoreCaseAndCategoryIdAndStatus(keyword, categoryId, "出品中",
+		String normalized = keyword == null ? "" : keyword.trim().toLowerCase(Locale.ROOT);
+		if (!normalized.isEmpty() && itemSearchIndex.isReady()) {
+			// キーワード検索はメモリ上のインデックスで絞り込み、表示する1ページ分だけ主キーで読み込む
+			ItemSearchIndex.SearchHits hits = itemSearchIndex.search(keyword, categoryId, (int) pageable.getOffset(),
+					size);
+			return new PageImpl<>(findAllInOrder(hits.itemIds()), pageable, hits.total());
+		}
+		if (!normalized.isEmpty() && categoryId != null) {
+			return itemRepository.searchByKeywordAndCategory(normalized, toLikePattern(normalized), categoryId,
 					pageable);
-		} else if (keyword != null && !keyword.isEmpty()) {
-			return itemRepository.findByNameContainingIgnoreCaseAndStatus(keyword, "出品中", pageable);
+		} else if (!normalized.isEmpty()) {
+			return itemRepository.searchByKeyword(normalized, toLikePattern(normalized), pageable);
 		} else if (categoryId != null) {
-			return itemRepository.findByCategoryIdAndStatus(categoryId, "出品中", pageable);
+			return itemRepository.findListedByCategoryId(categoryId, pageable);
 		} else {
-			return itemRepository.findByStatus("出品中", pageable);
+			return itemRepository.findListed(pageable);
+		}
+	}
+
+	// キーワード検索の結果に、カテゴリ別・価格帯別の件数を添えて返す
+	// 件数はインデックスの1回の走査（フォールバック時は1回の集計クエリ）で求める
+	// 同じ条件・同じページの結果は SearchResultCache から返す（商品の変更時にカテゴリ単位で無効化）
+	// キャッシュには全利用者で共有できるよう、エンティティではなく ItemCard（変更できない表示項目）を入れる
+	public ItemSearchResult searchItemsWithFacets(String keyword, Long categoryId, int page, int size) {
+		String normalized = keyword == null ? "" : keyword.trim().toLowerCase(Locale.ROOT);
+		SearchResultCache.Key key = new SearchResultCache.Key(normalized, categoryId, "page:" + page, size);
+		return searchResultCache.get(key, () -> loadItemsWithFacets(keyword, normalized, categoryId, page, size));
+	}
+
+	private ItemSearchResult loadItemsWithFacets(String keyword, String normalized, Long categoryId, int page,
+			int size) {
+		if (normalized.isEmpty()) {
+			return new ItemSearchResult(searchItems(keyword, categoryId, page, size).map(ItemCard::of),
+					SearchFacets.EMPTY);
+		}
+		if (itemSearchIndex.isReady()) {
+			Pageable pageable = PageRequest.of(page, size);
+			ItemSearchIndex.SearchHits hits = itemSearchIndex.search(keyword, categoryId, (int) pageable.getOffset(),
+					size);
+			return new ItemSearchResult(
+					new PageImpl<>(findAllInOrder(hits.itemIds()), pageable, hits.total()).map(ItemCard::of),
+					hits.facets());
 		}
+		Page<ItemCard> items = searchItems(keyword, categoryId, page, size).map(ItemCard::of);
+		List<Object[]> rows = itemRepository.countFacetsByKeyword(toLikePattern(normalized),
+				categoryId != null ? categoryId : -1L);
+		return new ItemSearchResult(items, toFacets(rows));
+	}
+
+	// grouping sets の結果行（by_price, category_id, price_bucket, hits, hits_in_category）を詰め替える
+	private static SearchFacets toFacets(List<Object[]> rows) {
+		Map<Long, Long> categoryCounts = new HashMap<>();
+		long[] priceBucketCounts = new long[SearchFacets.bucketCount()];
+		for (Object[] row : rows) {
+			if (((Number) row[0]).intValue() == 1) {
+				priceBucketCounts[((Number) row[2]).intValue()] += ((Number) row[4]).longValue();
+			} else {
+				categoryCounts.put(row[1] != null ? ((Number) row[1]).longValue() : null, ((Number) row[3]).longValue());
+			}
+		}
+		return new SearchFacets(categoryCounts, priceBucketCounts);
+	}
+
+	// 検索窓の入力補完。DB には問い合わせず、メモリ上の前方一致インデックスだけで答える
+	public List<ItemSuggestIndex.Suggestion> suggest(String query, int limit) {
+		return itemSuggestIndex.suggest(query, limit);
+	}
+
+	// 価格帯・並び順を指定した一覧（キーワード・カテゴリとも任意）。並び順の既定は新着順
+	public Page<ItemCard> filterItems(String keyword, Long categoryId, BigDecimal minPrice, BigDecimal maxPrice,
+			ItemSort sort, int page, int size) {
+		String normalized = keyword == null ? "" : keyword.trim().toLowerCase(Locale.ROOT);
+		ItemSort order = sort != null ? sort : ItemSort.NEWEST;
+		String position = "filter:" + minPrice + "-" + maxPrice + ":" + order.getParam() + ":page:" + page;
+		SearchResultCache.Key key = new SearchResultCache.Key(normalized, categoryId, position, size);
+		return searchResultCache.get(key, () -> itemRepository.findAll(
+				ItemSpecifications.matching(ItemStatus.LISTED, categoryId,
+						normalized.isEmpty() ? null : toLikePattern(normalized), minPrice, maxPrice),
+				PageRequest.of(page, size, order.toSort())).map(ItemCard::of));
+	}
+
+	// 一覧表示用のカーソルページング（OFFSET と count を使わない）
+	public Slice<ItemCard> browseItems(Long categoryId, String cursor, int size) {
+		ItemCursor after = ItemCursor.decode(cursor);
+		String position = "cursor:" + after.getCreatedAt() + "_" + after.getId();
+		SearchResultCache.Key key = new SearchResultCache.Key("", categoryId, position, size);
+		return searchResultCache.get(key, () -> loadPageAfter(categoryId, after, size).map(ItemCard::of));
+	}
+
+	private Slice<Item> loadPageAfter(Long categoryId, ItemCursor after, int size) {
+		Pageable pageable = PageRequest.of(0, size);
+		if (categoryId != null) {
+			return itemRepository.findPageAfterInCategory(categoryId, after.getCreatedAt(), after.getId(), pageable);
+		}
+		return itemRepository.findPageAfter(after.getCreatedAt(), after.getId(), pageable);
+	}
+
+	// インデックスが返した順序のまま商品を取得する（直前に削除されたものは除く）
+	private List<Item> findAllInOrder(long[] ids) {
+		List<Long> idList = new ArrayList<>(ids.length);
+		for (long id : ids) {
+			idList.add(id);
+		}
+		Map<Long, Item> byId = itemRepository.findAllById(idList).stream()
+				.collect(Collectors.toMap(Item::getId, Function.identity()));
+		List<Item> ordered = new ArrayList<>(ids.length);
+		for (Long id : idList) {
+			Item item = byId.get(id);
+			if (item != null) {
+				ordered.add(item);
+			}
+		}
+		return ordered;
+	}
+
+	// LIKE のワイルドカード（% と _）を利用者の入力としてそのまま検索できるようにエスケープする
+	private static String toLikePattern(String keyword) {
+		String escaped = keyword.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+		return "%" + escaped + "%";
 	}
 
+	// 管理画面用（出品者・カテゴリ込み、新しい順）
 	public List<Item> getAllItems() {
-		return itemRepository.findAll();
+		return itemRepository.findAllByOrderByCreatedAtDesc();
 	}
 
 	public Optional<Item> getItemById(Long id) {
@@ -59,7 +193,11 @@ public class ItemService {
 			String imageUrl = cloudinaryService.uploadFile(imageFile);
 			item.setImageUrl(imageUrl);
 		}
-		return itemRepository.save(item);
+		// 編集でカテゴリが変わった場合に、変更前のカテゴリのキャッシュも無効化できるようにする
+		Long previousCategoryId = item.getId() != null ? itemRepository.findCategoryIdById(item.getId()) : null;
+		Item saved = itemRepository.save(item);
+		eventPublisher.publishEvent(ItemChangedEvent.of(saved, previousCategoryId));
+		return saved;
 	}
 
 	public void deleteItem(Long id) {
@@ -72,6 +210,7 @@ public class ItemService {
 				}
 			}
 			itemRepository.deleteById(id);
+			eventPublisher.publishEvent(ItemChangedEvent.deleted(item));
 		});
 	}
 	
@@ -81,23 +220,23 @@ public class ItemService {
 	
 	public void markItemAsSold(Long itemId) {
 		itemRepository.findById(itemId).ifPresent(item -> {
-			item.setStatus("売却済");
+			item.setStatus(ItemStatus.SOLD);
 			itemRepository.save(item);
+			eventPublisher.publishEvent(ItemChangedEvent.of(item));
 		});
 	}
 	
 	@Transactional
-	public void updateItemStatus(Long itemId, String status) {
+	public void updateItemStatus(Long itemId, ItemStatus status) {
 	    Item item = itemRepository.findById(itemId)
 	            .orElseThrow(() -> new IllegalArgumentException("Item not found"));
 	    item.setStatus(status);
 	    itemRepository.save(item);
+	    eventPublisher.publishEvent(ItemChangedEvent.of(item));
 	}
 	
+	// 管理画面ダッシュボード用の最新10件（出品者・カテゴリ込み）
 	public List<Item> getRecentItemsForAdmin() {
-	    // ページ指定なしで全件取得し、新しい順に並べる（あるいはRepositoryにTop5等のメソッドを作る）
-	    // 今回はシンプルに全件取得のリストから最新5件などのロジックをコントローラーで使うか、
-	    // Repositoryに専用メソッドを作るのが綺麗です。
-	    return itemRepository.findAll(); 
+	    return itemRepository.findTop10ByOrderByCreatedAtDesc();
 	}
 }
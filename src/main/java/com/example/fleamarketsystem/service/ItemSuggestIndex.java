@@ -0,0 +1,338 @@
+package com.example.fleamarketsystem.service;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.fleamarketsystem.entity.Category;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.repository.CategoryRepository;
+
+/**
+ * 検索窓の入力補完（タイプアヘッド）用の前方一致インデックス。
+ * 出品中の商品名を単語の先頭ごとに正規化し、先頭 MAX_PREFIX_LENGTH 文字までの各接頭辞について
+ * お気に入り数と新しさで重み付けした上位の商品名を前もって持っておく。入力1回あたりの処理は接頭辞1つの参照で済み、
+ * 商品数には比例しない。それより長い入力は、正規化したキーの ConcurrentSkipListMap で範囲を走査する（範囲は十分狭い）。
+ * 商品の変更は ItemChangedEvent で逐次反映し、上位から商品が抜けた接頭辞だけ範囲を走査して作り直す。
+ * 重み（新しさを含む）とお気に入り数は、定期的な再構築で更新する。
+ * カテゴリ候補は正規化済みの一覧を持ち、カテゴリの追加・削除時（CategoryService）と再構築時に読み直す。
+ */
+@Component
+public class ItemSuggestIndex implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemSuggestIndex.class);
+
+	private static final String SELECT_LISTED = "select i.id, i.name, i.created_at,"
+			+ " (select count(*) from favorite_item f where f.item_id = i.id) as favorites"
+			+ " from item i where i.status = " + ItemStatus.LISTED_CODE;
+
+	// カテゴリ候補は商品候補より前に、最大この件数まで出す
+	private static final int MAX_CATEGORY_SUGGESTIONS = 3;
+
+	// 1回に返す候補の上限（ItemController の limit の上限と揃える）。接頭辞ごとにこの件数まで上位を持つ
+	static final int MAX_SUGGESTIONS = 20;
+
+	// この文字数までの接頭辞は上位候補を前もって持つ
+	static final int MAX_PREFIX_LENGTH = 12;
+
+	// 出品から30日までは新しいほど加点する
+	private static final long RECENCY_DAYS = 30;
+
+	// 重みの高い順、同じなら商品名順
+	private static final Comparator<Candidate> RANK = Comparator.comparingLong(Candidate::weight).reversed()
+			.thenComparing(Candidate::name);
+
+	/**
+	 * 補完候補。type は "item"（商品名）または "category"。カテゴリの場合のみ id を持つ。
+	 */
+	public record Suggestion(String type, String text, Long id) {
+	}
+
+	// 重みは登録時（逐次更新・再構築時）に計算する
+	private record Entry(long itemId, String name, long favorites, long weight) {
+	}
+
+	private record Candidate(String name, long weight) {
+	}
+
+	private record CategoryEntry(Long id, String name, String normalized) {
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+	private final CategoryRepository categoryRepository;
+
+	private volatile State state = new State();
+	private volatile List<CategoryEntry> categories = List.of();
+
+	// 以下は this のロック下でのみ更新する
+	private boolean rebuilding = false;
+	private final List<ItemChangedEvent> pendingDuringRebuild = new ArrayList<>();
+
+	public ItemSuggestIndex(JdbcTemplate jdbcTemplate, CategoryRepository categoryRepository) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.categoryRepository = categoryRepository;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		rebuild();
+	}
+
+	// --- 補完 ---
+
+	public List<Suggestion> suggest(String query, int limit) {
+		String prefix = ItemSearchIndex.normalize(query).strip();
+		limit = Math.min(limit, MAX_SUGGESTIONS);
+		if (prefix.isEmpty() || limit <= 0) {
+			return List.of();
+		}
+		List<Suggestion> result = new ArrayList<>(limit);
+		for (CategoryEntry category : categories) {
+			if (result.size() >= Math.min(limit, MAX_CATEGORY_SUGGESTIONS)) {
+				break;
+			}
+			if (category.normalized().startsWith(prefix)) {
+				result.add(new Suggestion("category", category.name(), category.id()));
+			}
+		}
+
+		State current = state;
+		List<Candidate> top = prefix.length() <= MAX_PREFIX_LENGTH
+				? current.topByPrefix.getOrDefault(prefix, List.of())
+				: current.scan(prefix);
+		for (Candidate candidate : top) {
+			if (result.size() >= limit) {
+				break;
+			}
+			result.add(new Suggestion("item", candidate.name(), null));
+		}
+		return result;
+	}
+
+	// お気に入り数を優先し、同数なら新しいほど上にする。
+	// 新しさは出品から30日までの残り日数（0〜30点）で、お気に入り1件（31点）を超えない
+	static long weightOf(long favorites, LocalDateTime createdAt, LocalDateTime now) {
+		long recency = 0;
+		if (createdAt != null) {
+			long ageDays = Math.max(0, Duration.between(createdAt, now).toDays());
+			recency = Math.max(0, RECENCY_DAYS - ageDays);
+		}
+		return favorites * (RECENCY_DAYS + 1) + recency;
+	}
+
+	// --- 逐次更新 ---
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public synchronized void onItemChanged(ItemChangedEvent event) {
+		apply(state, event);
+		if (rebuilding) {
+			pendingDuringRebuild.add(event);
+		}
+	}
+
+	public void categoriesChanged() {
+		categories = loadCategories();
+	}
+
+	private static void apply(State target, ItemChangedEvent event) {
+		Entry old = target.remove(event.itemId());
+		if (event.isListed()) {
+			long favorites = old != null ? old.favorites() : 0;
+			target.put(new Entry(event.itemId(), event.name(), favorites,
+					weightOf(favorites, event.createdAt(), LocalDateTime.now())));
+		}
+	}
+
+	// 「apple iphone 15」なら「apple iphone 15」「iphone 15」「15」の3つを前方一致の対象にする
+	static List<String> wordStarts(String normalized) {
+		List<String> starts = new ArrayList<>();
+		String text = normalized.strip();
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isWhitespace(text.charAt(i)) && (i == 0 || Character.isWhitespace(text.charAt(i - 1)))) {
+				starts.add(text.substring(i));
+			}
+		}
+		return starts;
+	}
+
+	// 上位候補を持つ接頭辞。入力は前後の空白を除くため、空白で終わるものは含めない
+	static Set<String> prefixesOf(String normalized) {
+		Set<String> prefixes = new LinkedHashSet<>();
+		for (String start : wordStarts(normalized)) {
+			for (int length = 1; length <= Math.min(MAX_PREFIX_LENGTH, start.length()); length++) {
+				if (!Character.isWhitespace(start.charAt(length - 1))) {
+					prefixes.add(start.substring(0, length));
+				}
+			}
+		}
+		return prefixes;
+	}
+
+	/**
+	 * インデックス本体。再構築時は丸ごと作り直して差し替える。
+	 * 更新は ItemSuggestIndex のロック下（または差し替え前の1スレッド）でのみ行い、読み取りはロックなしで行う。
+	 */
+	private static final class State {
+
+		// キーは「正規化した商品名の各単語以降の部分文字列 + \0 + 商品ID」
+		private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+		private final Map<Long, Entry> byItem = new ConcurrentHashMap<>();
+		// 接頭辞ごとの上位候補（同じ商品名は1件にまとめる）。値は差し替えのみで、変更しない
+		private final Map<String, List<Candidate>> topByPrefix = new ConcurrentHashMap<>();
+
+		void put(Entry entry) {
+			String normalized = ItemSearchIndex.normalize(entry.name());
+			for (String start : wordStarts(normalized)) {
+				entries.put(start + '\0' + entry.itemId(), entry);
+			}
+			byItem.put(entry.itemId(), entry);
+			Candidate candidate = new Candidate(entry.name(), entry.weight());
+			for (String prefix : prefixesOf(normalized)) {
+				topByPrefix.compute(prefix, (key, top) -> offer(top, candidate));
+			}
+		}
+
+		Entry remove(long itemId) {
+			Entry old = byItem.remove(itemId);
+			if (old == null) {
+				return null;
+			}
+			String normalized = ItemSearchIndex.normalize(old.name());
+			for (String start : wordStarts(normalized)) {
+				entries.remove(start + '\0' + itemId);
+			}
+			// 上位に入っていた接頭辞だけ、残りの商品から作り直す
+			for (String prefix : prefixesOf(normalized)) {
+				List<Candidate> top = topByPrefix.get(prefix);
+				if (top != null && top.stream().anyMatch(c -> c.name().equals(old.name()))) {
+					List<Candidate> rescanned = scan(prefix);
+					if (rescanned.isEmpty()) {
+						topByPrefix.remove(prefix);
+					} else {
+						topByPrefix.put(prefix, rescanned);
+					}
+				}
+			}
+			return old;
+		}
+
+		// 前方一致する範囲を走査して上位を選ぶ。同じ商品名は最も高い重みを採る
+		List<Candidate> scan(String prefix) {
+			Map<String, Long> bestByName = new HashMap<>();
+			for (Entry entry : entries.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+				bestByName.merge(entry.name(), entry.weight(), Math::max);
+			}
+			// 件数上限付きのヒープ（先頭が最も順位の低い候補）
+			PriorityQueue<Candidate> top = new PriorityQueue<>(MAX_SUGGESTIONS + 1, RANK.reversed());
+			bestByName.forEach((name, weight) -> {
+				top.offer(new Candidate(name, weight));
+				if (top.size() > MAX_SUGGESTIONS) {
+					top.poll();
+				}
+			});
+			List<Candidate> sorted = new ArrayList<>(top);
+			sorted.sort(RANK);
+			return List.copyOf(sorted);
+		}
+
+		private static List<Candidate> offer(List<Candidate> top, Candidate candidate) {
+			if (top == null) {
+				return List.of(candidate);
+			}
+			List<Candidate> merged = new ArrayList<>(top.size() + 1);
+			for (Candidate current : top) {
+				if (current.name().equals(candidate.name())) {
+					if (current.weight() >= candidate.weight()) {
+						return top;
+					}
+				} else {
+					merged.add(current);
+				}
+			}
+			if (merged.size() >= MAX_SUGGESTIONS && RANK.compare(candidate, merged.get(merged.size() - 1)) > 0) {
+				return top;
+			}
+			merged.add(candidate);
+			merged.sort(RANK);
+			return List.copyOf(merged.subList(0, Math.min(merged.size(), MAX_SUGGESTIONS)));
+		}
+	}
+
+	// --- 再構築 ---
+
+	// お気に入り数は変更のたびには通知されないため、定期的に作り直して重みを更新する
+	@Scheduled(fixedDelayString = "${search.suggest.refresh-interval-ms:600000}",
+			initialDelayString = "${search.suggest.refresh-interval-ms:600000}")
+	public void scheduledRebuild() {
+		rebuild();
+	}
+
+	public void rebuild() {
+		synchronized (this) {
+			rebuilding = true;
+			pendingDuringRebuild.clear();
+		}
+
+		State fresh = new State();
+		LocalDateTime now = LocalDateTime.now();
+		List<CategoryEntry> freshCategories;
+		try {
+			jdbcTemplate.query(SELECT_LISTED, (RowCallbackHandler) (ResultSet rs) -> {
+				Timestamp createdAt = rs.getTimestamp("created_at");
+				long favorites = rs.getLong("favorites");
+				fresh.put(new Entry(rs.getLong("id"), rs.getString("name"), favorites,
+						weightOf(favorites, createdAt != null ? createdAt.toLocalDateTime() : null, now)));
+			});
+			freshCategories = loadCategories();
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				rebuilding = false;
+				pendingDuringRebuild.clear();
+			}
+			logger.error("入力補完インデックスの再構築に失敗しました: {}", e.getMessage());
+			throw e;
+		}
+
+		synchronized (this) {
+			// 読み込み中に届いた変更を反映してから差し替える
+			for (ItemChangedEvent event : pendingDuringRebuild) {
+				apply(fresh, event);
+			}
+			pendingDuringRebuild.clear();
+			rebuilding = false;
+			state = fresh;
+			categories = freshCategories;
+		}
+		logger.info("入力補完インデックスを再構築しました: {}件（接頭辞 {}件）", fresh.byItem.size(), fresh.topByPrefix.size());
+	}
+
+	private List<CategoryEntry> loadCategories() {
+		List<CategoryEntry> loaded = new ArrayList<>();
+		for (Category category : categoryRepository.findAll()) {
+			loaded.add(new CategoryEntry(category.getId(), category.getName(),
+					ItemSearchIndex.normalize(category.getName())));
+		}
+		return List.copyOf(loaded);
+	}
+}
@@ -13,6 +13,7 @@ import org.springframework.http.MediaType;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 @Service
 public class LineMessagingService {
@@ -59,6 +60,12 @@ public class LineMessagingService {
         }
     }
 
+    // 取引の通知はコミット後に送る（トランザクション外で呼ばれた場合はその場で送る）
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderNotification(OrderNotificationEvent event) {
+        sendMessage(event.message());
+    }
+
     private void sendPush(String messageText) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -0,0 +1,61 @@
+package com.example.fleamarketsystem.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * 商品一覧ページの条件付き GET 用の検証子（カテゴリごとの最終変更時刻）。
+ * 削除された商品は DB に行が残らず max(updated_at) では検知できないため、
+ * ItemChangedEvent を受けてメモリ上でカテゴリごとの値を進める。
+ * 起動時刻から始めるので、再起動前に配った ETag は一致しなくなる（安全側に倒れる）。
+ */
+@Component
+public class ListingHighWaterMarks {
+
+	private static final long NO_CATEGORY = -1L;
+
+	private final long startedAt = System.currentTimeMillis();
+
+	// カテゴリ指定なしの一覧（全カテゴリ・キーワード検索）用
+	private final AtomicLong all = new AtomicLong(startedAt);
+	private final Map<Long, AtomicLong> byCategory = new ConcurrentHashMap<>();
+
+	// カテゴリの追加・名前変更など、すべての一覧の表示に影響する変更用
+	private final AtomicLong catalog = new AtomicLong(startedAt);
+
+	/**
+	 * 一覧の最終変更時刻（エポックミリ秒）。categoryId が null なら全カテゴリ。
+	 */
+	public long lastModified(Long categoryId) {
+		long items = categoryId == null ? all.get() : markOf(categoryId).get();
+		return Math.max(items, catalog.get());
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onItemChanged(ItemChangedEvent event) {
+		long now = System.currentTimeMillis();
+		advance(markOf(event.categoryId()), now);
+		if (event.previousCategoryId() != null && !event.previousCategoryId().equals(event.categoryId())) {
+			advance(markOf(event.previousCategoryId()), now);
+		}
+		advance(all, now);
+	}
+
+	public void categoriesChanged() {
+		advance(catalog, System.currentTimeMillis());
+	}
+
+	private AtomicLong markOf(Long categoryId) {
+		return byCategory.computeIfAbsent(categoryId != null ? categoryId : NO_CATEGORY,
+				id -> new AtomicLong(startedAt));
+	}
+
+	// 同じミリ秒内の変更でも値が必ず進むようにする
+	private static void advance(AtomicLong mark, long now) {
+		mark.accumulateAndGet(now, (prev, t) -> Math.max(prev + 1, t));
+	}
+}
@@ -0,0 +1,8 @@
+package com.example.fleamarketsystem.service;
+
+/**
+ * 取引の状態変化を管理者の LINE へ知らせるイベント。
+ * 送信はコミット後に行う（トランザクションを LINE API の応答待ちで延ばさず、ロールバックした変更も通知しない）。
+ */
+public record OrderNotificationEvent(String message) {
+}
@@ -0,0 +1,33 @@
+package com.example.fleamarketsystem.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.example.fleamarketsystem.entity.OrderStatus;
+
+/**
+ * 管理画面ダッシュボード用のステータス別注文件数（1回の集計クエリの結果）。
+ */
+public class OrderStatusSummary {
+
+	private final Map<OrderStatus, Long> counts = new EnumMap<>(OrderStatus.class);
+
+	OrderStatusSummary(Map<OrderStatus, Long> counts) {
+		for (OrderStatus status : OrderStatus.values()) {
+			this.counts.put(status, counts.getOrDefault(status, 0L));
+		}
+	}
+
+	// 件数 0 のステータスも含め、OrderStatus の定義順に並ぶ
+	public Map<OrderStatus, Long> getCounts() {
+		return counts;
+	}
+
+	public long count(OrderStatus status) {
+		return counts.get(status);
+	}
+
+	public long getTotal() {
+		return counts.values().stream().mapToLong(Long::longValue).sum();
+	}
+}
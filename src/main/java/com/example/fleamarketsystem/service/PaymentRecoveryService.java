@@ -0,0 +1,49 @@
+package com.example.fleamarketsystem.service;
+
+import java.time.LocalDateTime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.fleamarketsystem.entity.OrderStatus;
+
+/**
+ * Stripe の呼び出し中にアプリが停止するなどして、中間状態のまま残った注文を定期的に処理する。
+ * 決済準備中（PaymentIntent の作成中）の注文は購入者に client_secret が渡っていないため、決済失敗にして商品の予約を解く。
+ * 返金処理中の注文は返金の待ち行列（RefundQueue）が再試行するため、待ち行列にないものだけを登録し直す。
+ * 処理中の注文を拾わないよう、最後の更新から stale-minutes 分たったものだけを対象にする。
+ */
+@Service
+public class PaymentRecoveryService {
+
+	private static final Logger logger = LoggerFactory.getLogger(PaymentRecoveryService.class);
+
+	private final AppOrderService appOrderService;
+	private final long staleMinutes;
+
+	public PaymentRecoveryService(AppOrderService appOrderService,
+			@Value("${payment.recovery.stale-minutes:10}") long staleMinutes) {
+		this.appOrderService = appOrderService;
+		this.staleMinutes = staleMinutes;
+	}
+
+	@Scheduled(fixedDelayString = "${payment.recovery.interval-ms:60000}")
+	public void recover() {
+		LocalDateTime before = LocalDateTime.now().minusMinutes(staleMinutes);
+
+		for (Long orderId : appOrderService.findStalledOrderIds(OrderStatus.PAYMENT_CREATING, before)) {
+			if (appOrderService.abandonPaymentCreation(orderId)) {
+				logger.warn("決済準備中のまま止まった注文を決済失敗にしました: orderId={}", orderId);
+			}
+		}
+
+		for (Long orderId : appOrderService.findStalledOrderIds(OrderStatus.REFUNDING, before)) {
+			if (appOrderService.resumeRefund(orderId)) {
+				logger.warn("返金の待ち行列にない返金処理中の注文を登録しました: orderId={}", orderId);
+			}
+		}
+	}
+}
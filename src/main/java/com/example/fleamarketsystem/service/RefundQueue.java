@@ -0,0 +1,108 @@
+package com.example.fleamarketsystem.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 返金の待ち行列（refund_request）。注文1件につき1行で、Stripe への冪等キーも注文から決める。
+ * 登録は注文を「返金処理中」にするのと同じトランザクションで行い、返金の呼び出しは RefundWorker がトランザクションの外で行う。
+ * 失敗した返金は間隔を広げながら再試行し、上限に達したものは失敗（dead letter）として管理画面に出す。
+ */
+@Component
+public class RefundQueue {
+
+	public static final short PENDING = 1;
+	public static final short DONE = 2;
+	public static final short DEAD = 3;
+
+	/**
+	 * 取り出した返金1件。attempts は今回を含む試行回数。
+	 */
+	public record Claim(Long orderId, String paymentIntentId, String idempotencyKey, String message, int attempts) {
+	}
+
+	/**
+	 * 再試行の上限に達した返金（管理画面に出す）。
+	 */
+	public record FailedRefund(Long orderId, String itemName, BigDecimal price, int attempts, String lastError,
+			LocalDateTime failedAt) {
+	}
+
+	// 同じ注文の登録が重なった場合は先の1件だけを残す
+	private static final String ENQUEUE = "insert into refund_request"
+			+ " (order_id, payment_intent_id, idempotency_key, status, attempts, next_attempt_at, message, created_at,"
+			+ " updated_at) values (?, ?, ?, 1, 0, now(), ?, now(), now()) on conflict (order_id) do nothing";
+
+	// 期限の来たものを古い順に取り出す。他のワーカーが取り出し中の行は飛ばす。
+	// 取り出した行は5分後まで再び取り出されない（ワーカーが途中で止まった場合はその後に再試行される）
+	private static final String CLAIM = "update refund_request r"
+			+ " set attempts = r.attempts + 1, next_attempt_at = now() + interval '5 minutes', updated_at = now()"
+			+ " where r.order_id in (select order_id from refund_request where status = 1 and next_attempt_at <= now()"
+			+ " order by next_attempt_at limit ? for update skip locked)"
+			+ " returning r.order_id, r.payment_intent_id, r.idempotency_key, r.message, r.attempts";
+
+	private static final String MARK_DONE = "update refund_request set status = 2, last_error = null, updated_at = now()"
+			+ " where order_id = ? and status <> 2";
+
+	private static final String MARK_FAILED = "update refund_request set last_error = ?, updated_at = now(),"
+			+ " next_attempt_at = now() + ? * interval '1 millisecond',"
+			+ " status = case when attempts >= ? then 3 else 1 end where order_id = ? and status = 1";
+
+	private static final String RETRY = "update refund_request set status = 1, attempts = 0, next_attempt_at = now(),"
+			+ " updated_at = now() where order_id = ? and status = 3";
+
+	private static final String FAILED = "select r.order_id, i.name, o.price, r.attempts, r.last_error, r.updated_at"
+			+ " from refund_request r join app_order o on o.id = r.order_id join item i on i.id = o.item_id"
+			+ " where r.status = 3 order by r.updated_at desc limit ?";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public RefundQueue(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	public static String idempotencyKey(Long orderId) {
+		return "refund-order-" + orderId;
+	}
+
+	/**
+	 * 返金を登録する。呼び出し元のトランザクションに参加する。
+	 *
+	 * @param message 返金が完了したときの LINE 通知
+	 * @return 登録した場合 true（登録済みなら false）
+	 */
+	public boolean enqueue(Long orderId, String paymentIntentId, String message) {
+		return jdbcTemplate.update(ENQUEUE, orderId, paymentIntentId, idempotencyKey(orderId), message) > 0;
+	}
+
+	public List<Claim> claim(int limit) {
+		return jdbcTemplate.query(CLAIM, (rs, rowNum) -> new Claim(rs.getLong(1), rs.getString(2), rs.getString(3),
+				rs.getString(4), rs.getInt(5)), limit);
+	}
+
+	public void markDone(Long orderId) {
+		jdbcTemplate.update(MARK_DONE, orderId);
+	}
+
+	/**
+	 * 失敗を記録し、backoff 後に再試行する。試行回数が maxAttempts に達していれば失敗（dead letter）にする。
+	 */
+	public void markFailed(Claim claim, String error, Duration backoff, int maxAttempts) {
+		jdbcTemplate.update(MARK_FAILED, error, backoff.toMillis(), maxAttempts, claim.orderId());
+	}
+
+	// 失敗した返金を最初からやり直す（管理画面の再試行ボタン）
+	public boolean retry(Long orderId) {
+		return jdbcTemplate.update(RETRY, orderId) > 0;
+	}
+
+	public List<FailedRefund> findFailed(int limit) {
+		return jdbcTemplate.query(FAILED, (rs, rowNum) -> new FailedRefund(rs.getLong(1), rs.getString(2),
+				rs.getBigDecimal(3), rs.getInt(4), rs.getString(5), rs.getObject(6, LocalDateTime.class)), limit);
+	}
+}
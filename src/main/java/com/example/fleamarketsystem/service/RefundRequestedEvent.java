@@ -0,0 +1,7 @@
+package com.example.fleamarketsystem.service;
+
+/**
+ * 返金の待ち行列に登録したことの通知。コミット後に RefundWorker が処理を始める。
+ */
+public record RefundRequestedEvent(Long orderId) {
+}
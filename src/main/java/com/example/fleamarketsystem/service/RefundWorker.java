@@ -0,0 +1,174 @@
+package com.example.fleamarketsystem.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * 返金の待ち行列（RefundQueue）を処理する。
+ * 登録のコミット後と一定間隔ごとに、期限の来た返金を batch-size 件ずつ取り出し、workers 本のスレッドで並行して Stripe に返金を依頼する。
+ * 成功した注文はキャンセルを確定し（AppOrderService#finishRefund）、失敗したものは間隔を倍にしながら max-attempts 回まで再試行する。
+ * Stripe には注文ごとの冪等キーを付けて送るため、途中で止まって同じ返金を送り直しても二重に返金されない。
+ */
+@Service
+public class RefundWorker {
+
+	private static final Logger logger = LoggerFactory.getLogger(RefundWorker.class);
+
+	private final RefundQueue refundQueue;
+	private final StripeService stripeService;
+	private final AppOrderService appOrderService;
+	private final int batchSize;
+	private final int maxAttempts;
+	private final Duration initialBackoff;
+	private final Duration maxBackoff;
+
+	// 取り出し役は1本だけにし、実行中に呼ばれた分は終わったあとにまとめて1回だけ回す
+	private final ExecutorService dispatcher;
+	private final ExecutorService workers;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	public RefundWorker(RefundQueue refundQueue, StripeService stripeService, AppOrderService appOrderService,
+			@Value("${refund.workers:4}") int workerCount,
+			@Value("${refund.batch-size:50}") int batchSize,
+			@Value("${refund.max-attempts:8}") int maxAttempts,
+			@Value("${refund.backoff-initial-seconds:30}") long initialBackoffSeconds,
+			@Value("${refund.backoff-max-seconds:3600}") long maxBackoffSeconds) {
+		this.refundQueue = refundQueue;
+		this.stripeService = stripeService;
+		this.appOrderService = appOrderService;
+		this.batchSize = batchSize;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = Duration.ofSeconds(initialBackoffSeconds);
+		this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+		this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "refund-dispatcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+			Thread thread = new Thread(runnable, "refund-worker-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		dispatcher.shutdown();
+		workers.shutdown();
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRefundRequested(RefundRequestedEvent event) {
+		wake();
+	}
+
+	// 再試行の期限が来たものを拾う
+	@Scheduled(fixedDelayString = "${refund.poll-interval-ms:10000}")
+	public void poll() {
+		wake();
+	}
+
+	/**
+	 * 再試行の上限に達した返金を待ち行列に戻して処理を始める。
+	 *
+	 * @return 戻した場合 true（上限に達した返金がなければ false）
+	 */
+	public boolean retry(Long orderId) {
+		if (!refundQueue.retry(orderId)) {
+			return false;
+		}
+		wake();
+		return true;
+	}
+
+	/**
+	 * 取り出し役に処理を依頼して、すぐに戻る。
+	 */
+	public void wake() {
+		if (scheduled.compareAndSet(false, true)) {
+			dispatcher.execute(() -> {
+				scheduled.set(false);
+				try {
+					drain();
+				} catch (RuntimeException e) {
+					logger.warn("返金の待ち行列を処理できませんでした", e);
+				}
+			});
+		}
+	}
+
+	/**
+	 * 期限の来た返金がなくなるまで batch-size 件ずつ取り出して処理する。
+	 *
+	 * @return 処理した件数（失敗して再試行に回したものを含む）
+	 */
+	public int drain() {
+		int processed = 0;
+		List<RefundQueue.Claim> batch;
+		do {
+			batch = refundQueue.claim(batchSize);
+			List<Future<?>> futures = new ArrayList<>(batch.size());
+			for (RefundQueue.Claim claim : batch) {
+				futures.add(workers.submit(() -> process(claim)));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return processed;
+				} catch (ExecutionException e) {
+					logger.warn("返金の処理中にエラーが発生しました", e.getCause());
+				}
+			}
+			processed += batch.size();
+		} while (batch.size() == batchSize);
+		return processed;
+	}
+
+	private void process(RefundQueue.Claim claim) {
+		try {
+			if (claim.paymentIntentId() != null && !claim.paymentIntentId().isBlank()) {
+				stripeService.refund(claim.paymentIntentId(), claim.idempotencyKey());
+			}
+			appOrderService.finishRefund(claim.orderId(), claim.message());
+			refundQueue.markDone(claim.orderId());
+		} catch (Exception e) {
+			refundQueue.markFailed(claim, e.toString(), backoff(claim.attempts()), maxAttempts);
+			if (claim.attempts() >= maxAttempts) {
+				logger.error("返金が {} 回失敗したため、再試行を止めました: orderId={}", claim.attempts(), claim.orderId(), e);
+			} else {
+				logger.warn("返金に失敗しました。後で再試行します: orderId={}, attempts={}", claim.orderId(),
+						claim.attempts(), e);
+			}
+		}
+	}
+
+	// initial × 2^(試行回数 - 1)、上限 max。同じ時刻に失敗したものが一斉に再試行しないよう ±20% ずらす
+	Duration backoff(int attempts) {
+		long millis = initialBackoff.toMillis() << Math.min(attempts - 1, 30);
+		if (millis < 0 || millis > maxBackoff.toMillis()) {
+			millis = maxBackoff.toMillis();
+		}
+		return Duration.ofMillis((long) (millis * ThreadLocalRandom.current().nextDouble(0.8, 1.2)));
+	}
+}
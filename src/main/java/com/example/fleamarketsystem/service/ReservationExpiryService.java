@@ -0,0 +1,53 @@
+package com.example.fleamarketsystem.service;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * 購入者が Stripe の支払い画面を離れるなどして、予約の期限（reservation.ttl-minutes）を過ぎても決済待ちのままの注文を定期的に閉じる。
+ * batch-size 件ずつ PaymentIntent を取り消して注文を期限切れにし、商品を出品中に戻す。
+ * 1回の実行で、期限切れの注文がなくなるか、次回に持ち越すものが出るまで繰り返す。
+ */
+@Service
+public class ReservationExpiryService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReservationExpiryService.class);
+
+	private final AppOrderService appOrderService;
+	private final int batchSize;
+
+	public ReservationExpiryService(AppOrderService appOrderService,
+			@Value("${reservation.sweep-batch-size:100}") int batchSize) {
+		this.appOrderService = appOrderService;
+		this.batchSize = batchSize;
+	}
+
+	@Scheduled(fixedDelayString = "${reservation.sweep-interval-ms:60000}")
+	public void sweep() {
+		int expired = 0;
+		List<Long> orderIds;
+		int resolved;
+		do {
+			orderIds = appOrderService.findExpiredReservationIds(batchSize);
+			resolved = 0;
+			for (Long orderId : orderIds) {
+				try {
+					if (appOrderService.expireReservation(orderId)) {
+						resolved++;
+					}
+				} catch (Exception e) {
+					logger.warn("期限切れの予約を閉じられませんでした。次回また試します: orderId={}", orderId, e);
+				}
+			}
+			expired += resolved;
+		} while (orderIds.size() == batchSize && resolved == orderIds.size());
+		if (expired > 0) {
+			logger.info("期限切れの予約を閉じました: {}件", expired);
+		}
+	}
+}
@@ -7,23 +7,33 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.example.fleamarketsystem.entity.AppOrder;
 import com.example.fleamarketsystem.entity.Review;
+import com.example.fleamarketsystem.entity.SellerReputation;
 import com.example.fleamarketsystem.entity.User;
 import com.example.fleamarketsystem.repository.AppOrderRepository;
 import com.example.fleamarketsystem.repository.ReviewRepository;
+import com.example.fleamarketsystem.repository.SellerReputationRepository;
 
 @Service
 public class ReviewService {
 
 	private final ReviewRepository reviewRepository;
 	private final AppOrderRepository appOrderRepository;
+	private final SellerReputationRepository sellerReputationRepository;
+	private final SellerReputationService sellerReputationService;
 
-	public ReviewService(ReviewRepository reviewRepository, AppOrderRepository appOrderRepository) {
+	public ReviewService(ReviewRepository reviewRepository, AppOrderRepository appOrderRepository,
+			SellerReputationRepository sellerReputationRepository, SellerReputationService sellerReputationService) {
 		this.reviewRepository = reviewRepository;
 		this.appOrderRepository = appOrderRepository;
+		this.sellerReputationRepository = sellerReputationRepository;
+		this.sellerReputationService = sellerReputationService;
 	}
 	
 	@Transactional
 	public Review submitReview(Long orderId, User reviewer, int rating, String comment) {
+		if (rating < 1 || rating > 5) {
+			throw new IllegalArgumentException("Rating must be between 1 and 5");
+		}
 		AppOrder order = appOrderRepository.findById(orderId).orElseThrow(() -> new IllegalArgumentException("Order not found"));
 		if (!order.getBuyer().getId().equals(reviewer.getId())) {
 			throw new IllegalStateException("Only the buyer can review this order");
@@ -39,7 +49,10 @@ public class ReviewService {
 		review.setRating(rating);
 		review.setComment(comment);
 		
-		return reviewRepository.save(review);
+		Review saved = reviewRepository.save(review);
+		// 評価集計はレビューと同じトランザクションで加算する
+		sellerReputationRepository.addReview(saved.getSeller().getId(), rating);
+		return saved;
 	}
 	
 	public List<Review> getReviewsBySeller(User seller) {
@@ -48,10 +61,12 @@ public class ReviewService {
 	}
 	
 	public OptionalDouble getAverageRatingForSeller(User seller) {
-		
-		return reviewRepository.findBySeller(seller).stream()
-				.mapToInt(Review::getRating)
-				.average();
+		Double average = sellerReputationService.getReputation(seller.getId()).getAverageRating();
+		return average != null ? OptionalDouble.of(average) : OptionalDouble.empty();
+	}
+
+	public SellerReputation getReputation(User seller) {
+		return sellerReputationService.getReputation(seller.getId());
 	}
 	
 	public List<Review> getReviewsByReviewer(User reviewer) {
@@ -0,0 +1,116 @@
+package com.example.fleamarketsystem.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.fleamarketsystem.entity.AppOrder;
+import com.example.fleamarketsystem.entity.OrderStatus;
+
+/**
+ * 日別売上集計（sales_daily_rollup）の更新と再集計。
+ * 注文の作成・ステータス変更のたびに AppOrderService が呼び出し、注文日・カテゴリ・ステータスごとの件数と金額を加減算する。
+ * 商品の削除やカテゴリ変更などで生じたずれは、集計表が空のとき（初回起動時）と毎晩、app_order から再集計して補正する。
+ */
+@Service
+public class SalesRollupService implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(SalesRollupService.class);
+
+	// 再集計中の加減算を待たせ、集計結果で加減算が上書きされないようにする
+	private static final String LOCK = "lock table sales_daily_rollup in share row exclusive mode";
+
+	// カテゴリは商品から引く（注文の更新で商品エンティティを読み込まずに済む）
+	private static final String ADD = "insert into sales_daily_rollup as r"
+			+ " (sales_date, category_id, status, order_count, amount, updated_at)"
+			+ " select ?, coalesce(i.category_id, 0), ?, ?, ?, now() from item i where i.id = ?"
+			+ " on conflict (sales_date, category_id, status) do update set"
+			+ " order_count = r.order_count + excluded.order_count, amount = r.amount + excluded.amount,"
+			+ " updated_at = now()";
+
+	private static final String UPSERT_FROM_ORDERS = "insert into sales_daily_rollup as r"
+			+ " (sales_date, category_id, status, order_count, amount, updated_at)"
+			+ " select cast(o.created_at as date), coalesce(i.category_id, 0), o.status, count(*), sum(o.price), now()"
+			+ " from app_order o join item i on i.id = o.item_id group by 1, 2, 3"
+			+ " on conflict (sales_date, category_id, status) do update set"
+			+ " order_count = excluded.order_count, amount = excluded.amount, updated_at = now()"
+			+ " where (r.order_count, r.amount) is distinct from (excluded.order_count, excluded.amount)";
+
+	// ステータスが移って 0 件になった行（ずれではないため補正件数に数えない）
+	private static final String DELETE_EMPTY = "delete from sales_daily_rollup where order_count = 0 and amount = 0";
+
+	private static final String DELETE_ORPHANS = "delete from sales_daily_rollup r where not exists ("
+			+ "select 1 from app_order o join item i on i.id = o.item_id"
+			+ " where o.created_at >= r.sales_date and o.created_at < r.sales_date + 1"
+			+ " and coalesce(i.category_id, 0) = r.category_id and o.status = r.status)";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+
+	public SalesRollupService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = transactionTemplate;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		Boolean empty = jdbcTemplate.queryForObject(
+				"select not exists (select 1 from sales_daily_rollup)", Boolean.class);
+		if (Boolean.TRUE.equals(empty)) {
+			reconcile();
+		}
+	}
+
+	/**
+	 * 注文のステータス変更を反映する。呼び出し元のトランザクションで実行すること。
+	 *
+	 * @param previous 変更前のステータス（新規作成の注文は null）
+	 */
+	public void recordStatusChange(AppOrder order, OrderStatus previous) {
+		if (previous == order.getStatus()) {
+			return;
+		}
+		LocalDate salesDate = order.getCreatedAt().toLocalDate();
+		Long itemId = order.getItem().getId();
+		if (previous != null) {
+			add(salesDate, itemId, previous, -1, order.getPrice().negate());
+		}
+		add(salesDate, itemId, order.getStatus(), 1, order.getPrice());
+	}
+
+	private void add(LocalDate salesDate, Long itemId, OrderStatus status, long count, BigDecimal amount) {
+		jdbcTemplate.update(ADD, salesDate, status.getCode(), count, amount, itemId);
+	}
+
+	@Scheduled(cron = "${sales-rollup.reconcile-cron:0 45 3 * * *}")
+	public void scheduledReconcile() {
+		reconcile();
+	}
+
+	/**
+	 * app_order から集計し直し、値がずれていた行だけを書き換える。
+	 * 起動時・夜間の処理からも呼ぶため、プロキシを通らなくても TransactionTemplate でトランザクションを張る
+	 * （LOCK TABLE はトランザクションの中でしか実行できない）。
+	 *
+	 * @return 補正（追加・更新・削除）した行数
+	 */
+	public int reconcile() {
+		int corrected = transactionTemplate.execute(status -> {
+			jdbcTemplate.execute(LOCK);
+			jdbcTemplate.update(DELETE_EMPTY);
+			return jdbcTemplate.update(UPSERT_FROM_ORDERS) + jdbcTemplate.update(DELETE_ORPHANS);
+		});
+		if (corrected > 0) {
+			logger.warn("日別売上集計を補正しました: {}件", corrected);
+		}
+		return corrected;
+	}
+}
@@ -0,0 +1,132 @@
+package com.example.fleamarketsystem.service;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.fleamarketsystem.entity.OrderStatus;
+import com.example.fleamarketsystem.repository.AppOrderRepository;
+
+/**
+ * 管理画面の統計（総売上・ステータス別件数・期間別の推移・カテゴリ別・売上上位の出品者）。
+ * 集計はすべて DB の GROUP BY で行い、注文を1件ずつ読み込まない。結果の行数は期間の区切り数・カテゴリ数・上位件数で決まる。
+ * 前日までの分は日別集計（sales_daily_rollup）から読むため、期間が長くても注文の件数に比例しない。
+ * 売上は取引完了（OrderStatus.COMPLETED）の注文の価格の合計。
+ */
+@Service
+@Transactional(readOnly = true)
+public class SalesStatisticsService {
+
+	public enum Granularity {
+		DAY("day", "日別"),
+		WEEK("week", "週別"),
+		MONTH("month", "月別");
+
+		private final String unit;
+		private final String label;
+
+		Granularity(String unit, String label) {
+			this.unit = unit;
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * 期間の1区間分。週別は月曜日、月別は1日が start になる（期間の開始日より前の日付になることがある）。
+	 */
+	public record PeriodSales(LocalDate start, long orders, BigDecimal sales) {
+	}
+
+	/**
+	 * カテゴリ1件分。カテゴリ未設定の商品の注文は categoryId が null の行にまとまる。
+	 */
+	public record CategorySales(Long categoryId, String categoryName, long orders, BigDecimal sales) {
+	}
+
+	public record SellerSales(Long sellerId, String sellerName, long orders, BigDecimal sales) {
+	}
+
+	private final AppOrderRepository appOrderRepository;
+
+	public SalesStatisticsService(AppOrderRepository appOrderRepository) {
+		this.appOrderRepository = appOrderRepository;
+	}
+
+	// 以下の期間はいずれも開始日・終了日を含む
+
+	public BigDecimal getTotalSales(LocalDate startDate, LocalDate endDate) {
+		return appOrderRepository.sumCompletedPriceBetween(startDate, endDate.plusDays(1), LocalDate.now());
+	}
+
+	// ステータス別件数。ステータスの定義順に、画面に出す名称をキーにして返す
+	public Map<String, Long> getOrderCountByStatus(LocalDate startDate, LocalDate endDate) {
+		Map<OrderStatus, Long> counts = new EnumMap<>(OrderStatus.class);
+		for (Object[] row : appOrderRepository.countByStatusBetween(startDate, endDate.plusDays(1),
+				LocalDate.now())) {
+			long count = ((Number) row[1]).longValue();
+			if (count > 0) {
+				counts.put(OrderStatus.fromCode(((Number) row[0]).shortValue()), count);
+			}
+		}
+		Map<String, Long> byLabel = new LinkedHashMap<>();
+		counts.forEach((status, count) -> byLabel.put(status.getLabel(), count));
+		return byLabel;
+	}
+
+	public List<PeriodSales> getSalesByPeriod(Granularity granularity, LocalDate startDate, LocalDate endDate) {
+		List<PeriodSales> series = new ArrayList<>();
+		for (Object[] row : appOrderRepository.summarizeByPeriod(granularity.unit, startDate, endDate.plusDays(1),
+				LocalDate.now())) {
+			series.add(new PeriodSales(toLocalDate(row[0]), ((Number) row[1]).longValue(), toBigDecimal(row[2])));
+		}
+		return series;
+	}
+
+	public List<CategorySales> getSalesByCategory(LocalDate startDate, LocalDate endDate) {
+		List<CategorySales> categories = new ArrayList<>();
+		for (Object[] row : appOrderRepository.summarizeByCategory(startDate, endDate.plusDays(1),
+				LocalDate.now())) {
+			long orders = ((Number) row[2]).longValue();
+			if (orders > 0) {
+				categories.add(new CategorySales(row[0] != null ? ((Number) row[0]).longValue() : null,
+						(String) row[1], orders, toBigDecimal(row[3])));
+			}
+		}
+		return categories;
+	}
+
+	public List<SellerSales> getTopSellers(LocalDate startDate, LocalDate endDate, int limit) {
+		List<SellerSales> sellers = new ArrayList<>();
+		for (Object[] row : appOrderRepository.findTopSellers(startDate.atStartOfDay(),
+				endDate.plusDays(1).atStartOfDay(), limit)) {
+			sellers.add(new SellerSales(((Number) row[0]).longValue(), (String) row[1],
+					((Number) row[2]).longValue(), toBigDecimal(row[3])));
+		}
+		return sellers;
+	}
+
+	// ネイティブクエリの timestamp 列は JDBC ドライバにより Timestamp / LocalDateTime のどちらでも返りうる
+	private static LocalDate toLocalDate(Object value) {
+		if (value instanceof Timestamp timestamp) {
+			return timestamp.toLocalDateTime().toLocalDate();
+		}
+		return ((LocalDateTime) value).toLocalDate();
+	}
+
+	private static BigDecimal toBigDecimal(Object value) {
+		return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+	}
+}
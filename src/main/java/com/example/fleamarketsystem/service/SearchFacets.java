@@ -0,0 +1,138 @@
+package com.example.fleamarketsystem.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 検索結果の絞り込み候補（カテゴリ別件数・価格帯別件数）。
+ * カテゴリ別件数はカテゴリ条件を外したヒット件数、価格帯別件数はカテゴリ条件込みのヒット件数。
+ */
+public class SearchFacets {
+
+	// 価格帯の境界（円）。[0, 1000), [1000, 3000), ... [10000, ∞) の5区分
+	private static final long[] PRICE_BOUNDS = { 1000, 3000, 5000, 10000 };
+
+	public static final SearchFacets EMPTY = new SearchFacets(Collections.emptyMap(),
+			new long[PRICE_BOUNDS.length + 1]);
+
+	private final Map<Long, Long> categoryCounts;
+	private final long[] priceBucketCounts;
+
+	// SearchResultCache で共有するため、受け取った値は複製して持つ（未分類は null キーのため Map.copyOf は使えない）
+	public SearchFacets(Map<Long, Long> categoryCounts, long[] priceBucketCounts) {
+		this.categoryCounts = Collections.unmodifiableMap(new HashMap<>(categoryCounts));
+		this.priceBucketCounts = priceBucketCounts.clone();
+	}
+
+	public static int bucketCount() {
+		return PRICE_BOUNDS.length + 1;
+	}
+
+	public static int bucketOf(long price) {
+		for (int i = 0; i < PRICE_BOUNDS.length; i++) {
+			if (price < PRICE_BOUNDS[i]) {
+				return i;
+			}
+		}
+		return PRICE_BOUNDS.length;
+	}
+
+	// 未分類の商品は categoryId = null で数える
+	public long getCategoryCount(Long categoryId) {
+		return categoryCounts.getOrDefault(categoryId, 0L);
+	}
+
+	public boolean isEmpty() {
+		return categoryCounts.isEmpty();
+	}
+
+	public List<PriceBucket> getPriceBuckets() {
+		List<PriceBucket> buckets = new ArrayList<>(priceBucketCounts.length);
+		for (int i = 0; i < priceBucketCounts.length; i++) {
+			Long min = i == 0 ? null : PRICE_BOUNDS[i - 1];
+			Long max = i == PRICE_BOUNDS.length ? null : PRICE_BOUNDS[i] - 1;
+			buckets.add(new PriceBucket(min, max, priceBucketCounts[i]));
+		}
+		return buckets;
+	}
+
+	/**
+	 * 価格帯1区分分の件数。min / max は両端を含む（null は上限・下限なし）。
+	 */
+	public static class PriceBucket {
+
+		private final Long min;
+		private final Long max;
+		private final long count;
+
+		PriceBucket(Long min, Long max, long count) {
+			this.min = min;
+			this.max = max;
+			this.count = count;
+		}
+
+		public Long getMin() {
+			return min;
+		}
+
+		public Long getMax() {
+			return max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public String getLabel() {
+			if (min == null) {
+				return "¥" + String.format("%,d", max + 1) + "未満";
+			}
+			if (max == null) {
+				return "¥" + String.format("%,d", min) + "以上";
+			}
+			return "¥" + String.format("%,d", min) + "〜¥" + String.format("%,d", max + 1) + "未満";
+		}
+	}
+
+	/**
+	 * 集計途中のカテゴリ別件数。カテゴリ数は少ないため配列の線形探索で数える。
+	 */
+	static class Counter {
+
+		private long[] keys = new long[16];
+		private long[] counts = new long[16];
+		private int size;
+		private final long[] priceBucketCounts = new long[bucketCount()];
+
+		void countCategory(long categoryId) {
+			for (int i = 0; i < size; i++) {
+				if (keys[i] == categoryId) {
+					counts[i]++;
+					return;
+				}
+			}
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			keys[size] = categoryId;
+			counts[size++] = 1;
+		}
+
+		void countPrice(long price) {
+			priceBucketCounts[bucketOf(price)]++;
+		}
+
+		SearchFacets toFacets(long noCategory) {
+			Map<Long, Long> categoryCounts = new HashMap<>();
+			for (int i = 0; i < size; i++) {
+				categoryCounts.put(keys[i] == noCategory ? null : keys[i], counts[i]);
+			}
+			return new SearchFacets(categoryCounts, priceBucketCounts);
+		}
+	}
+}
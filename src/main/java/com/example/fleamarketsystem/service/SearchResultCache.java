@@ -0,0 +1,92 @@
+package com.example.fleamarketsystem.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * 商品一覧・検索結果ページのキャッシュ。
+ * 件数上限と TTL で古いエントリを追い出す。商品が変更されたときは、そのカテゴリの世代番号と
+ * カテゴリ指定なし（全カテゴリ）の世代番号を進める。キャッシュキーには読み込み時点の世代番号が入るため、
+ * 以後の検索は新しいキーで読み直し、古いエントリは参照されないまま期限で消える。
+ * 変更のコミット時点で読み込み中だった結果も古い世代のキーに入るため、変更後に返されることはない。
+ */
+@Component
+public class SearchResultCache {
+
+	/**
+	 * キャッシュキー。keyword は正規化済み（なしは空文字）、position はページ番号またはカーソル。
+	 */
+	public record Key(String keyword, Long categoryId, String position, int size) {
+	}
+
+	// キーと、そのキーが依存する範囲（カテゴリまたは全カテゴリ）の世代番号
+	private record VersionedKey(Key key, long generation) {
+	}
+
+	private final Cache<VersionedKey, Object> cache;
+	private final Map<Long, AtomicLong> categoryGenerations = new ConcurrentHashMap<>();
+	private final AtomicLong allGeneration = new AtomicLong();
+
+	public SearchResultCache(@Value("${search.cache.max-size:1000}") long maxSize,
+			@Value("${search.cache.ttl-seconds:60}") long ttlSeconds) {
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+				.recordStats()
+				.build();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T get(Key key, Supplier<T> loader) {
+		return (T) cache.get(new VersionedKey(key, generationOf(key.categoryId()).get()), k -> loader.get());
+	}
+
+	private AtomicLong generationOf(Long categoryId) {
+		return categoryId == null ? allGeneration
+				: categoryGenerations.computeIfAbsent(categoryId, id -> new AtomicLong());
+	}
+
+	// 検索インデックスの更新（既定の順序）より後に世代を進め、新しい世代のキーが古い結果で埋まらないようにする
+	// キャッシュの中身は走査しないため、CSV 一括出品のように1行ごとに届いても軽い
+	@Order(10)
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onItemChanged(ItemChangedEvent event) {
+		invalidateCategory(event.categoryId());
+		if (!Objects.equals(event.categoryId(), event.previousCategoryId())) {
+			invalidateCategory(event.previousCategoryId());
+		}
+	}
+
+	// カテゴリ指定なしのエントリはどの商品の変更でも影響を受けるため、あわせて世代を進める
+	public void invalidateCategory(Long categoryId) {
+		if (categoryId != null) {
+			generationOf(categoryId).incrementAndGet();
+		}
+		allGeneration.incrementAndGet();
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public long size() {
+		return cache.estimatedSize();
+	}
+
+	public CacheStats stats() {
+		return cache.stats();
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.fleamarketsystem.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.fleamarketsystem.entity.SellerReputation;
+import com.example.fleamarketsystem.repository.SellerReputationRepository;
+
+/**
+ * 出品者の評価集計（件数・合計・星ごとの件数）の読み取りと再集計。
+ * 通常はレビュー登録時に ReviewService が加算し、ここでは主キーで1行読むだけで評価平均を返す。
+ * 集計表が空のとき（初回起動時）と毎晩、review テーブルから再集計してずれを補正する。
+ */
+@Service
+public class SellerReputationService implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(SellerReputationService.class);
+
+	// 再集計中のレビュー登録（加算）を待たせ、集計結果で加算が上書きされないようにする
+	private static final String LOCK = "lock table seller_reputation in share row exclusive mode";
+
+	private static final String UPSERT_FROM_REVIEWS = "insert into seller_reputation"
+			+ " (seller_id, review_count, rating_sum, star1, star2, star3, star4, star5, updated_at)"
+			+ " select seller_id, count(*), sum(rating),"
+			+ " count(*) filter (where rating = 1), count(*) filter (where rating = 2),"
+			+ " count(*) filter (where rating = 3), count(*) filter (where rating = 4),"
+			+ " count(*) filter (where rating = 5), now()"
+			+ " from review group by seller_id"
+			+ " on conflict (seller_id) do update set"
+			+ " review_count = excluded.review_count, rating_sum = excluded.rating_sum,"
+			+ " star1 = excluded.star1, star2 = excluded.star2, star3 = excluded.star3,"
+			+ " star4 = excluded.star4, star5 = excluded.star5, updated_at = now()"
+			+ " where (seller_reputation.review_count, seller_reputation.rating_sum, seller_reputation.star1,"
+			+ " seller_reputation.star2, seller_reputation.star3, seller_reputation.star4, seller_reputation.star5)"
+			+ " is distinct from (excluded.review_count, excluded.rating_sum, excluded.star1,"
+			+ " excluded.star2, excluded.star3, excluded.star4, excluded.star5)";
+
+	private static final String DELETE_ORPHANS = "delete from seller_reputation sr"
+			+ " where not exists (select 1 from review r where r.seller_id = sr.seller_id)";
+
+	private final SellerReputationRepository sellerReputationRepository;
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+
+	public SellerReputationService(SellerReputationRepository sellerReputationRepository,
+			JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+		this.sellerReputationRepository = sellerReputationRepository;
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = transactionTemplate;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (sellerReputationRepository.count() == 0) {
+			reconcile();
+		}
+	}
+
+	// 評価がまだない出品者は件数0の集計を返す
+	public SellerReputation getReputation(Long sellerId) {
+		return sellerReputationRepository.findById(sellerId).orElseGet(() -> new SellerReputation(sellerId));
+	}
+
+	@Scheduled(cron = "${reputation.reconcile-cron:0 30 3 * * *}")
+	public void scheduledReconcile() {
+		reconcile();
+	}
+
+	/**
+	 * review テーブルから集計し直し、値がずれていた行だけを書き換える。
+	 * 起動時・夜間の処理からも呼ぶため、プロキシを通らなくても TransactionTemplate でトランザクションを張る
+	 * （LOCK TABLE はトランザクションの中でしか実行できない）。
+	 *
+	 * @return 補正（追加・更新・削除）した行数
+	 */
+	public int reconcile() {
+		int corrected = transactionTemplate.execute(status -> {
+			jdbcTemplate.execute(LOCK);
+			return jdbcTemplate.update(UPSERT_FROM_REVIEWS) + jdbcTemplate.update(DELETE_ORPHANS);
+		});
+		if (corrected > 0) {
+			logger.warn("出品者の評価集計を補正しました: {}件", corrected);
+		}
+		return corrected;
+	}
+}
@@ -1,49 +1,199 @@
 package com.example.fleamarketsystem.service;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import com.stripe.Stripe;
+import com.example.fleamarketsystem.util.CircuitBreaker;
+import com.example.fleamarketsystem.util.LatencyHistogram;
+import com.stripe.StripeClient;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
 import com.stripe.exception.StripeException;
 import com.stripe.model.PaymentIntent;
-import com.stripe.model.Refund;
+import com.stripe.net.RequestOptions;
+import com.stripe.param.PaymentIntentCancelParams;
 import com.stripe.param.PaymentIntentCreateParams;
 import com.stripe.param.RefundCreateParams;
 
+/**
+ * Stripe API の呼び出し口。SDK の StripeClient を1つ持ち、すべての呼び出しを次のように包む。
+ * <ul>
+ * <li>接続・応答待ちのタイムアウト（stripe.timeout.*）を設け、応答のない Stripe を待ち続けない。
+ * 1回の呼び出しにかかる時間は (connect-ms + read-ms) × (max-network-retries + 1) までになる</li>
+ * <li>作成・取り消し・返金には、注文・商品・PaymentIntent から決まる冪等キーを付ける。
+ * SDK の再送や呼び出し元のやり直しで同じ操作が二重に実行されない</li>
+ * <li>接続できない・5xx・レート制限が続いたらサーキットブレーカーを開き、しばらく呼び出さずに断る（IllegalStateException）。
+ * 入力の誤りなど Stripe が正常に応答した失敗は障害として数えない</li>
+ * <li>操作ごとの応答時間の度数分布を記録する（管理画面に出す）</li>
+ * </ul>
+ * stripe.api.base を設定すると、その URL に送る（テスト用の偽の Stripe サーバーなど）。
+ */
 @Service
 public class StripeService {
 
-	public StripeService(@Value("${stripe.api.key}") String secretKey) {
-		Stripe.apiKey = secretKey;
+	static final String CREATE_PAYMENT_INTENT = "payment_intent.create";
+	static final String RETRIEVE_PAYMENT_INTENT = "payment_intent.retrieve";
+	static final String CANCEL_PAYMENT_INTENT = "payment_intent.cancel";
+	static final String CREATE_REFUND = "refund.create";
+
+	@FunctionalInterface
+	private interface StripeCall<T> {
+		T call() throws StripeException;
+	}
+
+	/**
+	 * 操作ごとの統計。rejected はサーキットブレーカーが断った件数（latency には含まない）。
+	 */
+	public record OperationStats(String operation, LatencyHistogram.Snapshot latency, long rejected) {
 	}
 
-	public PaymentIntent createPaymentIntent(BigDecimal amount, String currency, String description)
-			throws StripeException {
+	private record Operation(LatencyHistogram latency, LongAdder rejected) {
+	}
+
+	private final StripeClient client;
+	private final CircuitBreaker circuitBreaker;
+	private final Map<String, Operation> operations = new LinkedHashMap<>();
+
+	public StripeService(@Value("${stripe.api.key}") String secretKey,
+			@Value("${stripe.api.base:}") String apiBase,
+			@Value("${stripe.timeout.connect-ms:2000}") int connectTimeoutMillis,
+			@Value("${stripe.timeout.read-ms:5000}") int readTimeoutMillis,
+			@Value("${stripe.max-network-retries:1}") int maxNetworkRetries,
+			@Value("${stripe.circuit.failure-threshold:5}") int failureThreshold,
+			@Value("${stripe.circuit.open-seconds:30}") long openSeconds) {
+		if (secretKey == null || secretKey.isBlank()) {
+			// キーのない環境（テストなど）でも起動はさせ、呼び出した時点で断る
+			this.client = null;
+		} else {
+			StripeClient.StripeClientBuilder builder = StripeClient.builder()
+					.setApiKey(secretKey)
+					.setConnectTimeout(connectTimeoutMillis)
+					.setReadTimeout(readTimeoutMillis)
+					.setMaxNetworkRetries(maxNetworkRetries);
+			if (!apiBase.isBlank()) {
+				builder.setApiBase(apiBase);
+			}
+			this.client = builder.build();
+		}
+		this.circuitBreaker = new CircuitBreaker(failureThreshold, Duration.ofSeconds(openSeconds));
+		for (String operation : List.of(CREATE_PAYMENT_INTENT, RETRIEVE_PAYMENT_INTENT, CANCEL_PAYMENT_INTENT,
+				CREATE_REFUND)) {
+			operations.put(operation, new Operation(new LatencyHistogram(), new LongAdder()));
+		}
+	}
+
+	// 注文・商品の ID はメタデータとして PaymentIntent に残す（Stripe 側から注文を辿れるようにする）
+	public PaymentIntent createPaymentIntent(BigDecimal amount, String currency, String description, Long orderId,
+			Long itemId) throws StripeException {
 		long value = "jpy".equalsIgnoreCase(currency) ? amount.longValue()
 				: amount.multiply(new BigDecimal(100)).longValue();
 		PaymentIntentCreateParams params = PaymentIntentCreateParams.builder()
 				.setAmount(value)
 				.setCurrency(currency)
 				.setDescription(description)
+				.putMetadata("order_id", String.valueOf(orderId))
+				.putMetadata("item_id", String.valueOf(itemId))
 				.setAutomaticPaymentMethods(
 						PaymentIntentCreateParams.AutomaticPaymentMethods.builder()
 								.setEnabled(true)
 								.build())
 				.build();
+		RequestOptions options = idempotent("payment-intent-order-" + orderId + "-item-" + itemId);
 
-		return PaymentIntent.create(params);
+		return execute(CREATE_PAYMENT_INTENT, () -> client.paymentIntents().create(params, options));
 	}
 
 	public PaymentIntent retrievePaymentIntent(String paymentIntentId) throws StripeException {
-		return PaymentIntent.retrieve(paymentIntentId);
+		return execute(RETRIEVE_PAYMENT_INTENT, () -> client.paymentIntents().retrieve(paymentIntentId));
 	}
 
-	public void refund(String paymentIntentId) throws StripeException {
+	// 予約の期限が切れた PaymentIntent を取り消す。支払い済み・取り消し済み・処理中のものはそのまま返す
+	public PaymentIntent cancelPaymentIntent(String paymentIntentId) throws StripeException {
+		PaymentIntent paymentIntent = retrievePaymentIntent(paymentIntentId);
+		String status = paymentIntent.getStatus();
+		if ("succeeded".equals(status) || "canceled".equals(status) || "processing".equals(status)) {
+			return paymentIntent;
+		}
+		RequestOptions options = idempotent("payment-intent-cancel-" + paymentIntentId);
+		return execute(CANCEL_PAYMENT_INTENT, () -> client.paymentIntents().cancel(paymentIntentId,
+				PaymentIntentCancelParams.builder().build(), options));
+	}
+
+	// 同じ冪等キーで送り直した返金は、Stripe が最初の結果を返す（二重に返金されない）。
+	// 冪等キーの有効期限（24時間）を過ぎてからの再実行で返金済みと返された場合も成功として扱う
+	public void refund(String paymentIntentId, String idempotencyKey) throws StripeException {
 		RefundCreateParams params = RefundCreateParams.builder()
 				.setPaymentIntent(paymentIntentId)
 				.build();
-		Refund.create(params);
+		RequestOptions options = idempotent(idempotencyKey);
+		try {
+			execute(CREATE_REFUND, () -> client.refunds().create(params, options));
+		} catch (InvalidRequestException e) {
+			if (!"charge_already_refunded".equals(e.getCode())) {
+				throw e;
+			}
+		}
+	}
+
+	public CircuitBreaker.State getCircuitState() {
+		return circuitBreaker.getState();
+	}
+
+	public List<OperationStats> getOperationStats() {
+		List<OperationStats> stats = new ArrayList<>(operations.size());
+		operations.forEach((name, operation) -> stats.add(
+				new OperationStats(name, operation.latency().snapshot(), operation.rejected().sum())));
+		return stats;
+	}
+
+	private static RequestOptions idempotent(String idempotencyKey) {
+		return RequestOptions.builder()
+				.setIdempotencyKey(idempotencyKey)
+				.build();
+	}
+
+	private <T> T execute(String name, StripeCall<T> call) throws StripeException {
+		if (client == null) {
+			throw new IllegalStateException("stripe.api.key が設定されていません。");
+		}
+		Operation operation = operations.get(name);
+		if (!circuitBreaker.tryAcquire()) {
+			operation.rejected().increment();
+			throw new IllegalStateException("決済サービスに接続できない状態が続いているため、しばらくしてからお試しください。");
+		}
+		long start = System.nanoTime();
+		boolean failed = true;
+		boolean outage = true;
+		try {
+			T result = call.call();
+			failed = false;
+			outage = false;
+			return result;
+		} catch (StripeException e) {
+			outage = isOutage(e);
+			throw e;
+		} finally {
+			operation.latency().record(System.nanoTime() - start, !failed);
+			if (outage) {
+				circuitBreaker.recordFailure();
+			} else {
+				circuitBreaker.recordSuccess();
+			}
+		}
+	}
+
+	// Stripe に届かない・Stripe 側の障害・混雑。カードの拒否や入力の誤りは Stripe が正常に応答したものとして扱う
+	private static boolean isOutage(StripeException e) {
+		return e instanceof ApiConnectionException || e instanceof RateLimitException
+				|| (e.getStatusCode() != null && e.getStatusCode() >= 500);
 	}
-}
\ No newline at end of file
+}
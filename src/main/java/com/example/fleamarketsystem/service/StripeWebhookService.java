@@ -0,0 +1,188 @@
+package com.example.fleamarketsystem.service;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.Webhook;
+
+/**
+ * Stripe の Webhook（/orders/stripe-webhook）の受け付けと処理。
+ * 署名を確かめたイベントを stripe_webhook_event にイベント ID をキーとして保存し、すぐに応答を返す。
+ * 処理（決済完了・返金完了の反映）はワーカースレッドで AppOrderService を呼んで行う。
+ * Stripe は同じイベントを複数回送ることがあるため、保存済みのイベント ID は処理しない。
+ * 失敗したイベントやワーカーが受け取れなかったイベントは、定期的な再試行で max-attempts 回まで処理し直す。
+ */
+@Service
+public class StripeWebhookService {
+
+	public enum Result {
+		ACCEPTED, DUPLICATE, IGNORED
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(StripeWebhookService.class);
+
+	static final String PAYMENT_SUCCEEDED = "payment_intent.succeeded";
+	static final String CHARGE_REFUNDED = "charge.refunded";
+	static final String REFUND_UPDATED = "refund.updated";
+
+	private static final Set<String> HANDLED_TYPES = Set.of(PAYMENT_SUCCEEDED, CHARGE_REFUNDED, REFUND_UPDATED);
+
+	private static final String INSERT = "insert into stripe_webhook_event (event_id, type, payload, received_at)"
+			+ " values (?, ?, ?, now()) on conflict (event_id) do nothing";
+
+	// 処理済みでなく、他のワーカーが処理中でもなければ取得する（処理中のまま止まったものは5分後に取り直す）
+	private static final String CLAIM = "update stripe_webhook_event set claimed_at = now(), attempts = attempts + 1"
+			+ " where event_id = ? and processed_at is null"
+			+ " and (claimed_at is null or claimed_at < now() - interval '5 minutes')"
+			+ " returning type, payload";
+
+	private static final String DONE = "update stripe_webhook_event set processed_at = now(), last_error = null"
+			+ " where event_id = ?";
+
+	private static final String FAILED = "update stripe_webhook_event set claimed_at = null, last_error = ?"
+			+ " where event_id = ?";
+
+	// 受信直後のものはワーカーが処理中のため、1分たったものだけを再試行する
+	private static final String PENDING = "select event_id from stripe_webhook_event"
+			+ " where processed_at is null and attempts < ? and received_at < now() - interval '1 minute'"
+			+ " order by received_at limit 100";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final AppOrderService appOrderService;
+	private final String webhookSecret;
+	private final int maxAttempts;
+	private final ThreadPoolExecutor workers;
+
+	public StripeWebhookService(JdbcTemplate jdbcTemplate, AppOrderService appOrderService,
+			@Value("${stripe.webhook.secret:}") String webhookSecret,
+			@Value("${stripe.webhook.workers:2}") int workerCount,
+			@Value("${stripe.webhook.queue-capacity:1000}") int queueCapacity,
+			@Value("${stripe.webhook.max-attempts:10}") int maxAttempts) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.appOrderService = appOrderService;
+		this.webhookSecret = webhookSecret;
+		this.maxAttempts = maxAttempts;
+		AtomicInteger threadNumber = new AtomicInteger();
+		// キューが溢れた分は捨てる。イベントは保存済みのため再試行で処理される
+		this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+					Thread thread = new Thread(runnable, "stripe-webhook-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		workers.shutdown();
+	}
+
+	/**
+	 * 署名を確かめてイベントを保存し、ワーカーに処理を渡す。処理の完了は待たない。
+	 *
+	 * @throws SignatureVerificationException 署名が正しくない、または古すぎる場合
+	 */
+	public Result receive(String payload, String signatureHeader) throws SignatureVerificationException {
+		if (webhookSecret.isBlank()) {
+			throw new IllegalStateException("stripe.webhook.secret が設定されていません。");
+		}
+		Event event = Webhook.constructEvent(payload, signatureHeader, webhookSecret);
+		if (!HANDLED_TYPES.contains(event.getType())) {
+			return Result.IGNORED;
+		}
+		if (jdbcTemplate.update(INSERT, event.getId(), event.getType(), payload) == 0) {
+			return Result.DUPLICATE;
+		}
+		workers.execute(() -> process(event.getId()));
+		return Result.ACCEPTED;
+	}
+
+	/**
+	 * 決済完了画面から戻った購入者の PaymentIntent を、ワーカーで Stripe に問い合わせて反映する。
+	 * Webhook が先に届いていれば何もしない（AppOrderService#markPaid は2回目以降を無視する）。
+	 */
+	public void requestPaymentCheck(String paymentIntentId) {
+		workers.execute(() -> {
+			try {
+				appOrderService.completePurchase(paymentIntentId);
+			} catch (Exception e) {
+				logger.info("決済の確認ができませんでした。Webhook で反映します: paymentIntentId={} ({})",
+						paymentIntentId, e.getMessage());
+			}
+		});
+	}
+
+	@Scheduled(fixedDelayString = "${stripe.webhook.retry-interval-ms:60000}")
+	public void retryPending() {
+		for (String eventId : jdbcTemplate.queryForList(PENDING, String.class, maxAttempts)) {
+			process(eventId);
+		}
+	}
+
+	void process(String eventId) {
+		List<String[]> claimed = jdbcTemplate.query(CLAIM,
+				(rs, rowNum) -> new String[] { rs.getString(1), rs.getString(2) }, eventId);
+		if (claimed.isEmpty()) {
+			return;
+		}
+		try {
+			handle(claimed.get(0)[0], claimed.get(0)[1]);
+			jdbcTemplate.update(DONE, eventId);
+		} catch (Exception e) {
+			logger.warn("Stripe のイベントを処理できませんでした。後で再試行します: eventId={}", eventId, e);
+			jdbcTemplate.update(FAILED, e.toString(), eventId);
+		}
+	}
+
+	// イベントの data.object から PaymentIntent の ID を取り出して注文に反映する
+	private void handle(String type, String payload) {
+		JsonObject object = JsonParser.parseString(payload).getAsJsonObject()
+				.getAsJsonObject("data").getAsJsonObject("object");
+		switch (type) {
+		case PAYMENT_SUCCEEDED -> appOrderService.markPaid(string(object, "id"));
+		// 全額返金済みの Charge、または成功した Refund
+		case CHARGE_REFUNDED -> {
+			if (object.has("refunded") && object.get("refunded").getAsBoolean()) {
+				confirmRefund(string(object, "payment_intent"));
+			}
+		}
+		case REFUND_UPDATED -> {
+			if ("succeeded".equals(string(object, "status"))) {
+				confirmRefund(string(object, "payment_intent"));
+			}
+		}
+		default -> {
+		}
+		}
+	}
+
+	private void confirmRefund(String paymentIntentId) {
+		if (paymentIntentId != null && !appOrderService.confirmRefund(paymentIntentId)) {
+			// 管理画面からの返金は返金処理中の注文にだけ届く。それ以外（Stripe のダッシュボードでの返金など）は記録だけ残す
+			logger.info("返金処理中の注文がないため、返金の通知を反映しませんでした: paymentIntentId={}", paymentIntentId);
+		}
+	}
+
+	private static String string(JsonObject object, String name) {
+		JsonElement value = object.get(name);
+		return value == null || value.isJsonNull() ? null : value.getAsString();
+	}
+}
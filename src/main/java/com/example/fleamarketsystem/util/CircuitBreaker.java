@@ -0,0 +1,84 @@
+package com.example.fleamarketsystem.util;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * 外部 API の呼び出しを、障害が続いている間だけ止めるサーキットブレーカー。
+ * 連続して failureThreshold 回失敗すると開き（OPEN）、openDuration の間は呼び出しを断る。
+ * 時間が過ぎると半開き（HALF_OPEN）になり、1件だけ試しに通す。成功すれば閉じ（CLOSED）、失敗すればまた開く。
+ * 試しの1件が戻るまで、他の呼び出しは断る。
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openNanos;
+	private final LongSupplier nanoClock;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean probing;
+
+	public CircuitBreaker(int failureThreshold, Duration openDuration) {
+		this(failureThreshold, openDuration, System::nanoTime);
+	}
+
+	// nanoClock はテストで時刻を進めるためのもの
+	public CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier nanoClock) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException("failureThreshold は 1 以上にしてください: " + failureThreshold);
+		}
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+		this.nanoClock = nanoClock;
+	}
+
+	/**
+	 * 呼び出してよければ true。true を返した場合は、結果を recordSuccess / recordFailure のどちらかで必ず知らせる。
+	 */
+	public synchronized boolean tryAcquire() {
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (nanoClock.getAsLong() - openedAt < openNanos) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probing = true;
+			return true;
+		default:
+			if (probing) {
+				return false;
+			}
+			probing = true;
+			return true;
+		}
+	}
+
+	public synchronized void recordSuccess() {
+		consecutiveFailures = 0;
+		if (state == State.HALF_OPEN) {
+			state = State.CLOSED;
+			probing = false;
+		}
+	}
+
+	public synchronized void recordFailure() {
+		if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+			state = State.OPEN;
+			openedAt = nanoClock.getAsLong();
+			consecutiveFailures = 0;
+			probing = false;
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
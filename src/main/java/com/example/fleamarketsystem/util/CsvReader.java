@@ -0,0 +1,127 @@
+package com.example.fleamarketsystem.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV（RFC 4180）を1レコードずつ読み出すリーダー。
+ * ファイル全体を読み込まずに、ダブルクォートで囲んだ項目（カンマ・改行・"" を含む）も扱う。
+ * 先頭の BOM は読み飛ばす。
+ */
+public class CsvReader implements AutoCloseable {
+
+	// 1項目の最大文字数（閉じられていないクォートで全体を読み込んでしまわないようにする）
+	private static final int MAX_FIELD_LENGTH = 100_000;
+
+	private final BufferedReader reader;
+	private boolean firstChar = true;
+	private boolean eof = false;
+	private long line = 1;
+	private long recordLine = 1;
+
+	public CsvReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+	}
+
+	/**
+	 * 次のレコードを返す。ファイルの終わりでは null。空行は読み飛ばす。
+	 */
+	public List<String> next() throws IOException {
+		while (!eof) {
+			List<String> record = readRecord();
+			if (record != null && !(record.size() == 1 && record.get(0).isEmpty())) {
+				return record;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 直前に返したレコードが始まる行番号（1始まり）。
+	 */
+	public long getRecordLine() {
+		return recordLine;
+	}
+
+	private List<String> readRecord() throws IOException {
+		recordLine = line;
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean started = false;
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				eof = true;
+				if (quoted) {
+					throw new IOException(recordLine + "行目: ダブルクォートが閉じられていません。");
+				}
+				if (!started && fields.isEmpty()) {
+					return null;
+				}
+				fields.add(field.toString());
+				return fields;
+			}
+			started = true;
+			if (quoted) {
+				if (c == '"') {
+					reader.mark(1);
+					if (reader.read() == '"') {
+						field.append('"');
+					} else {
+						reader.reset();
+						quoted = false;
+					}
+				} else {
+					if (c == '\n') {
+						line++;
+					}
+					append(field, c);
+				}
+			} else if (c == '"' && field.isEmpty()) {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\r' || c == '\n') {
+				if (c == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n') {
+						reader.reset();
+					}
+				}
+				line++;
+				fields.add(field.toString());
+				return fields;
+			} else {
+				append(field, c);
+			}
+		}
+	}
+
+	private int read() throws IOException {
+		int c = reader.read();
+		if (firstChar) {
+			firstChar = false;
+			if (c == '\uFEFF') {
+				c = reader.read();
+			}
+		}
+		return c;
+	}
+
+	private void append(StringBuilder field, int c) throws IOException {
+		if (field.length() >= MAX_FIELD_LENGTH) {
+			throw new IOException(recordLine + "行目: 項目が長すぎます。");
+		}
+		field.append((char) c);
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,123 @@
+package com.example.fleamarketsystem.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * CSV（RFC 4180）を1行ずつ書き出すライター。
+ * 行の組み立てには1つの StringBuilder を使い回し、行ごとに文字列を作らずに出力先へ書き込む。
+ * Excel で開いたときに数式として解釈されないよう、= + - @ で始まる文字列項目の先頭には ' を付ける。
+ */
+public class CsvWriter {
+
+	private final Writer writer;
+	private final StringBuilder row = new StringBuilder(256);
+	// Writer.append(CharSequence) は toString() で文字列を作るため、char 配列へ写してから書き込む
+	private char[] buffer = new char[256];
+	private boolean firstField = true;
+
+	public CsvWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Excel が UTF-8 と判定できるよう、先頭に BOM を書き込む。
+	 */
+	public CsvWriter bom() throws IOException {
+		writer.write('\uFEFF');
+		return this;
+	}
+
+	public CsvWriter field(String value) {
+		separator();
+		if (value == null || value.isEmpty()) {
+			return this;
+		}
+		boolean formula = "=+-@".indexOf(value.charAt(0)) >= 0;
+		if (formula || needsQuote(value)) {
+			row.append('"');
+			if (formula) {
+				row.append('\'');
+			}
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '"') {
+					row.append('"');
+				}
+				row.append(c);
+			}
+			row.append('"');
+		} else {
+			row.append(value);
+		}
+		return this;
+	}
+
+	// 数値・日時など、そのまま書き出せる値（null は空欄）
+	public CsvWriter field(Object value) {
+		if (value instanceof String text) {
+			return field(text);
+		}
+		separator();
+		if (value != null) {
+			row.append(value);
+		}
+		return this;
+	}
+
+	public CsvWriter field(long value) {
+		separator();
+		row.append(value);
+		return this;
+	}
+
+	public CsvWriter field(boolean value) {
+		separator();
+		row.append(value);
+		return this;
+	}
+
+	/**
+	 * 組み立てた行を改行（CRLF）付きで書き込み、次の行の組み立てに移る。
+	 */
+	public void endRow() throws IOException {
+		row.append("\r\n");
+		int length = row.length();
+		if (buffer.length < length) {
+			buffer = new char[Math.max(length, buffer.length * 2)];
+		}
+		row.getChars(0, length, buffer, 0);
+		writer.write(buffer, 0, length);
+		row.setLength(0);
+		firstField = true;
+	}
+
+	public void row(String... values) throws IOException {
+		for (String value : values) {
+			field(value);
+		}
+		endRow();
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	private void separator() {
+		if (firstField) {
+			firstField = false;
+		} else {
+			row.append(',');
+		}
+	}
+
+	private static boolean needsQuote(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
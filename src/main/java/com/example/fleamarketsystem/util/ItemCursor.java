@@ -0,0 +1,66 @@
+package com.example.fleamarketsystem.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.springframework.data.domain.Slice;
+
+/**
+ * 商品一覧のキーセット（カーソル）ページング用の位置情報。
+ * (created_at, id) の降順で並べた一覧の「最後に表示した商品」を表し、
+ * 画面には Base64URL でエンコードした不透明なトークンとして渡す。
+ */
+public class ItemCursor {
+
+	// 先頭ページ用: どの商品よりも新しい位置
+	public static final ItemCursor FIRST = new ItemCursor(LocalDateTime.of(9999, 12, 31, 23, 59), Long.MAX_VALUE);
+
+	private final LocalDateTime createdAt;
+	private final long id;
+
+	private ItemCursor(LocalDateTime createdAt, long id) {
+		this.createdAt = createdAt;
+		this.id = id;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public static String encode(LocalDateTime createdAt, long id) {
+		String raw = createdAt + "_" + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// 不正・改ざんされたトークンは先頭ページとして扱う
+	public static ItemCursor decode(String token) {
+		if (token == null || token.isBlank()) {
+			return FIRST;
+		}
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			int sep = raw.lastIndexOf('_');
+			return new ItemCursor(LocalDateTime.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+		} catch (RuntimeException e) {
+			return FIRST;
+		}
+	}
+
+	// 次のページがあれば、表示中の最後の商品を指すトークンを返す（エンティティ・ItemCard のどちらのページにも使う）
+	public static <T> String next(Slice<T> slice, Function<T, LocalDateTime> createdAt, ToLongFunction<T> id) {
+		List<T> content = slice.getContent();
+		if (!slice.hasNext() || content.isEmpty()) {
+			return null;
+		}
+		T last = content.get(content.size() - 1);
+		return encode(createdAt.apply(last), id.applyAsLong(last));
+	}
+}
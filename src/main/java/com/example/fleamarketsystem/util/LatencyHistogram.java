@@ -0,0 +1,72 @@
+package com.example.fleamarketsystem.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 応答時間の度数分布。ミリ秒の区切り（BOUNDS_MILLIS）ごとに件数を数え、そこから p50 / p95 / p99 を求める。
+ * 記録は LongAdder への加算だけで、複数のスレッドから同時に呼んでもロックを取らない。
+ * 百分位は区切りの上限で返すため、実際の値より最大で1区切り分大きくなる。
+ */
+public class LatencyHistogram {
+
+	// 最後の区切りを超えたものは最大値で数える
+	static final long[] BOUNDS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1_000, 2_000, 5_000, 10_000, 30_000 };
+
+	/**
+	 * ある時点の集計。errors は失敗した呼び出しの件数（count に含む）。
+	 */
+	public record Snapshot(long count, long errors, long p50Millis, long p95Millis, long p99Millis, long maxMillis) {
+	}
+
+	private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length + 1];
+	private final LongAdder errors = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	public void record(long nanos, boolean success) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		int index = 0;
+		while (index < BOUNDS_MILLIS.length && millis >= BOUNDS_MILLIS[index]) {
+			index++;
+		}
+		buckets[index].increment();
+		maxNanos.accumulate(nanos);
+		if (!success) {
+			errors.increment();
+		}
+	}
+
+	public Snapshot snapshot() {
+		long[] counts = new long[buckets.length];
+		long count = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			counts[i] = buckets[i].sum();
+			count += counts[i];
+		}
+		long max = TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+		return new Snapshot(count, errors.sum(), percentile(counts, count, 0.50, max),
+				percentile(counts, count, 0.95, max), percentile(counts, count, 0.99, max), max);
+	}
+
+	private static long percentile(long[] counts, long count, double quantile, long max) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(count * quantile);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return i < BOUNDS_MILLIS.length ? Math.min(BOUNDS_MILLIS[i], max) : max;
+			}
+		}
+		return max;
+	}
+}
@@ -35,7 +35,7 @@ create table if not exists item (
 	price numeric not null,
 	-- カテゴリ (Category) への外部キー (NULL 許容)
 	category_id bigint references category(id),
-	status varchar(255), -- status (デフォルト値は Java 側で設定)
+	status smallint, -- ItemStatus のコード (デフォルト値は Java 側で設定)
 	image_url varchar(255),
 	-- 作成日時
 	created_at timestamp without time zone not null
@@ -48,7 +48,7 @@ create table if not exists app_order (
 	-- 買い手 (User) への外部キー
 	buyer_id bigint not null references users(id),
 	price numeric not null,
-	status varchar(255) not null,
+	status smallint not null, -- OrderStatus のコード
 	-- paymentIntentId: unique = true
 	payment_intent_id varchar(255) unique,
 	created_at timestamp without time zone not null
@@ -90,3 +90,138 @@ create table if not exists review (
 	comment text,
 	created_at timestamp without time zone not null
 );
+
+create extension if not exists pg_trgm;
+
+-- 出品者ごとの評価集計（レビュー登録と同じトランザクションで加算し、review テーブルから定期的に再集計する）
+create table if not exists seller_reputation (
+	seller_id bigint primary key references users(id),
+	review_count bigint not null default 0,
+	rating_sum bigint not null default 0,
+	-- 星1〜5の件数
+	star1 bigint not null default 0,
+	star2 bigint not null default 0,
+	star3 bigint not null default 0,
+	star4 bigint not null default 0,
+	star5 bigint not null default 0,
+	updated_at timestamp without time zone not null default now()
+);
+
+-- 条件付き GET（ETag / Last-Modified）用: 商品の最終更新日時
+alter table item add column if not exists updated_at timestamp without time zone;
+update item set updated_at = created_at where updated_at is null;
+
+-- ID は Hibernate が各テーブルのシーケンスから50件ずつまとめて払い出す（allocationSize = 50 と合わせる）
+-- 1回の nextval で50件分を予約するため、SQL で直接 insert した行（既定値の nextval）と重複しない
+alter sequence users_id_seq increment by 50;
+alter sequence contact_id_seq increment by 50;
+alter sequence category_id_seq increment by 50;
+alter sequence item_id_seq increment by 50;
+alter sequence app_order_id_seq increment by 50;
+alter sequence chat_id_seq increment by 50;
+alter sequence favorite_item_id_seq increment by 50;
+alter sequence review_id_seq increment by 50;
+
+-- ステータスを文字列から smallint のコード（ItemStatus / OrderStatus）へ移行する。移行済みなら何もしない
+-- スクリプトの分割が $$ を解釈しないため、DO の本体は単一引用符で囲む（本体内の引用符は2つ重ねる）
+do '
+begin
+	if (select data_type from information_schema.columns
+			where table_schema = current_schema() and table_name = ''item'' and column_name = ''status'') = ''character varying'' then
+		drop index if exists idx_item_status_category_created;
+		drop index if exists idx_item_status_created;
+		drop index if exists idx_item_status_category_price;
+		drop index if exists idx_item_status_price;
+		drop index if exists idx_item_name_trgm;
+		drop index if exists idx_item_description_trgm;
+		alter table item alter column status type smallint using (case status
+			when ''出品中'' then 1 when ''取引中'' then 2 when ''売却済'' then 3 end);
+	end if;
+	if (select data_type from information_schema.columns
+			where table_schema = current_schema() and table_name = ''app_order'' and column_name = ''status'') = ''character varying'' then
+		alter table app_order alter column status type smallint using (case status
+			when ''決済待ち'' then 1 when ''取引中'' then 2 when ''発送済'' then 3 when ''売却済'' then 4
+			when ''キャンセル要請中'' then 5 when ''キャンセル同意済'' then 6 when ''キャンセル済'' then 7 end);
+	end if;
+end';
+
+-- 出品中（status = 1）の商品だけを対象にした部分インデックス。売却済みの履歴が増えても大きくならない
+-- 検索・一覧のクエリはステータスをリテラルで書くこと（バインド変数だと汎用プランで使われない）
+-- キーワード検索用: lower(name) / lower(description) の部分一致を pg_trgm の GIN インデックスで処理する
+create index if not exists idx_item_listed_name_trgm on item using gin (lower(name) gin_trgm_ops) where status = 1;
+create index if not exists idx_item_listed_description_trgm on item using gin (lower(description) gin_trgm_ops) where status = 1;
+
+-- 商品一覧のキーセットページング用: (created_at, id) の降順をインデックスでそのまま辿る
+create index if not exists idx_item_listed_category_created on item (category_id, created_at desc, id desc) where status = 1;
+create index if not exists idx_item_listed_created on item (created_at desc, id desc) where status = 1;
+
+-- 価格帯の絞り込み・価格順の並び替え用: 昇順は前方、降順は後方へ辿る
+create index if not exists idx_item_listed_category_price on item (category_id, price, id) where status = 1;
+create index if not exists idx_item_listed_price on item (price, id) where status = 1;
+
+-- 管理画面ダッシュボード用: ステータス別の注文一覧を新しい順に1ページずつ辿る
+-- キャンセル系（ステータス1つ）は先頭列のステータスで範囲を絞り、件数の集計もこのインデックスだけで済ませる
+create index if not exists idx_app_order_status_created on app_order (status, created_at desc, id desc);
+-- 取引中の一覧（ステータス複数）は新しい順に辿りながらステータスで絞り込む
+create index if not exists idx_app_order_created on app_order (created_at desc, id desc);
+
+-- 統計画面用: 期間（created_at の範囲）で絞ってステータス別・区間別に集計する。price を含めて表を読まずに売上を合計する
+create index if not exists idx_app_order_created_status on app_order (created_at, status) include (price);
+
+-- 注文日（app_order.created_at の日付）・カテゴリ・ステータスごとの注文件数と金額の日別集計
+-- 注文の作成とステータス変更のたびに同じトランザクションで加減算し、毎晩 app_order から再集計してずれを補正する
+-- category_id 0 はカテゴリ未設定の商品（主キーに null を含められないため）
+create table if not exists sales_daily_rollup (
+	sales_date date not null,
+	category_id bigint not null,
+	status smallint not null,
+	order_count bigint not null default 0,
+	amount numeric not null default 0,
+	updated_at timestamp without time zone not null default now(),
+	primary key (sales_date, category_id, status)
+);
+
+-- 注文のステータスが最後に変わった日時。決済・返金の途中（決済準備中・返金処理中）で止まった注文の検出に使う
+alter table app_order add column if not exists updated_at timestamp without time zone;
+update app_order set updated_at = created_at where updated_at is null;
+create index if not exists idx_app_order_in_flight on app_order (status, updated_at) where status in (8, 10);
+
+-- Stripe から受け取った Webhook イベント。イベント ID で重複を除き、処理済み（processed_at）になるまで再試行する
+create table if not exists stripe_webhook_event (
+	event_id varchar(255) primary key,
+	type varchar(100) not null,
+	payload text not null,
+	received_at timestamp without time zone not null default now(),
+	claimed_at timestamp without time zone,
+	processed_at timestamp without time zone,
+	attempts integer not null default 0,
+	last_error text
+);
+create index if not exists idx_stripe_webhook_event_pending on stripe_webhook_event (received_at)
+	where processed_at is null;
+
+-- 楽観ロックのバージョン（Item / AppOrder の @Version）
+alter table item add column if not exists version bigint not null default 0;
+alter table app_order add column if not exists version bigint not null default 0;
+
+-- 購入手続き中の予約（Item.reservationOrderId / reservedUntil）。起動時に ItemReservations が読み込む
+alter table item add column if not exists reservation_order_id bigint;
+alter table item add column if not exists reserved_until timestamp without time zone;
+create index if not exists idx_item_reserved on item (reservation_order_id) where reservation_order_id is not null;
+
+-- 返金の待ち行列（RefundQueue）。注文1件につき1行。status: 1 処理待ち, 2 完了, 3 再試行の上限に達した
+-- idempotency_key は Stripe に送る冪等キー、message は返金完了時の LINE 通知
+create table if not exists refund_request (
+	order_id bigint primary key,
+	payment_intent_id varchar(255),
+	idempotency_key varchar(255) not null,
+	status smallint not null,
+	attempts integer not null default 0,
+	next_attempt_at timestamp without time zone not null,
+	message text not null,
+	last_error text,
+	created_at timestamp without time zone not null default now(),
+	updated_at timestamp without time zone not null default now()
+);
+create index if not exists idx_refund_request_due on refund_request (next_attempt_at) where status = 1;
+create index if not exists idx_refund_request_failed on refund_request (updated_at) where status = 3;
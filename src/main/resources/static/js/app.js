@@ -10,6 +10,7 @@ document.addEventListener('DOMContentLoaded', () => {
   initConfirmDialogs();
   initTextareaAutoResize();
   initScrollToChat();
+  initKeywordSuggest();
 });
 
 /* --- フェードインアニメーション --- */
@@ -123,6 +124,67 @@ function initScrollToChat() {
   }
 }
 
+/* --- 検索キーワードの入力補完 --- */
+function initKeywordSuggest() {
+  const input = document.querySelector('input[data-suggest-url]');
+  const list = document.getElementById('keyword-suggestions');
+  if (!input || !list) return;
+
+  let timer = null;
+  let controller = null;
+
+  const hide = () => {
+    list.hidden = true;
+    list.innerHTML = '';
+  };
+
+  const render = (suggestions) => {
+    list.innerHTML = '';
+    suggestions.forEach(s => {
+      const li = document.createElement('li');
+      li.className = 'suggest-item';
+      if (s.type === 'category') {
+        li.innerHTML = '<i class="fas fa-tags"></i> ';
+        li.append(`カテゴリ: ${s.text}`);
+        li.addEventListener('mousedown', () => {
+          window.location.href = `/items?categoryId=${s.id}`;
+        });
+      } else {
+        li.textContent = s.text;
+        li.addEventListener('mousedown', () => {
+          input.value = s.text;
+          input.form.submit();
+        });
+      }
+      list.appendChild(li);
+    });
+    list.hidden = suggestions.length === 0;
+  };
+
+  input.addEventListener('input', () => {
+    clearTimeout(timer);
+    const q = input.value.trim();
+    if (!q) {
+      hide();
+      return;
+    }
+    // 入力が続いている間は問い合わせない（150ms 待ってから1回だけ送る）
+    timer = setTimeout(() => {
+      if (controller) controller.abort();
+      controller = new AbortController();
+      fetch(`${input.dataset.suggestUrl}?q=${encodeURIComponent(q)}`, { signal: controller.signal })
+        .then(res => res.ok ? res.json() : [])
+        .then(render)
+        .catch(() => {});
+    }, 150);
+  });
+
+  input.addEventListener('blur', hide);
+  input.addEventListener('keydown', (e) => {
+    if (e.key === 'Escape') hide();
+  });
+}
+
 /* --- トースト通知 --- */
 function showToast(message, type = 'info') {
   const toast = document.createElement('div');
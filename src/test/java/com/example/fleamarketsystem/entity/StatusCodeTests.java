@@ -0,0 +1,32 @@
+package com.example.fleamarketsystem.entity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ステータスのコードは保存済みのデータと部分インデックスの条件に使われるため、重複や変更がないことを確認する。
+ */
+class StatusCodeTests {
+
+	@Test
+	void itemStatusCodesAreStableAndRoundTrip() {
+		assertThat(ItemStatus.LISTED.getCode()).isEqualTo((short) ItemStatus.LISTED_CODE).isEqualTo((short) 1);
+		assertThat(Arrays.stream(ItemStatus.values()).map(ItemStatus::getCode)).doesNotHaveDuplicates();
+		ItemStatusConverter converter = new ItemStatusConverter();
+		for (ItemStatus status : ItemStatus.values()) {
+			assertThat(converter.convertToEntityAttribute(converter.convertToDatabaseColumn(status))).isEqualTo(status);
+		}
+	}
+
+	@Test
+	void orderStatusCodesAreUniqueAndRoundTrip() {
+		assertThat(Arrays.stream(OrderStatus.values()).map(OrderStatus::getCode)).doesNotHaveDuplicates();
+		OrderStatusConverter converter = new OrderStatusConverter();
+		for (OrderStatus status : OrderStatus.values()) {
+			assertThat(converter.convertToEntityAttribute(converter.convertToDatabaseColumn(status))).isEqualTo(status);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.example.fleamarketsystem.repository;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+import jakarta.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.fleamarketsystem.entity.AppOrder;
+import com.example.fleamarketsystem.entity.Chat;
+import com.example.fleamarketsystem.entity.FavoriteItem;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.OrderStatus;
+import com.example.fleamarketsystem.entity.User;
+
+/**
+ * チャット・お気に入り・注文の一括 insert のスループットを、JDBC バッチなし（1件ずつ送信）とありで比べる。
+ * 通常のテストでは実行しない: mvn test -Dgroups=benchmark -Dtest.excludedGroups=
+ * どちらもシーケンスからの ID 払い出し（50件ずつ）は同じで、差はバッチ送信の有無だけ。
+ * データは計測後にロールバックする。
+ */
+@Tag("benchmark")
+@SpringBootTest
+class BulkInsertBenchmarkTests {
+
+	private static final int ROWS = 5000;
+	private static final int ROUNDS = 3;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Test
+	void chatInserts() {
+		compare("chat", (item, buyer) -> {
+			Chat chat = new Chat();
+			chat.setItem(item);
+			chat.setSender(buyer);
+			chat.setMessage("benchmark");
+			entityManager.persist(chat);
+		});
+	}
+
+	@Test
+	void favoriteInserts() {
+		compare("favorite_item", (item, buyer) -> {
+			FavoriteItem favorite = new FavoriteItem();
+			favorite.setItem(item);
+			favorite.setUser(buyer);
+			entityManager.persist(favorite);
+		});
+	}
+
+	@Test
+	void orderInserts() {
+		compare("app_order", (item, buyer) -> {
+			AppOrder order = new AppOrder();
+			order.setItem(item);
+			order.setBuyer(buyer);
+			order.setPrice(item.getPrice());
+			order.setStatus(OrderStatus.COMPLETED);
+			order.setPaymentIntentId("pi_benchmark_" + UUID.randomUUID());
+			entityManager.persist(order);
+		});
+	}
+
+	private void compare(String table, BiConsumer<Item, User> insert) {
+		// 1回目は JIT やコネクションの準備を含むため捨てる
+		run(50, insert);
+		long unbatched = Long.MAX_VALUE;
+		long batched = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			unbatched = Math.min(unbatched, run(1, insert));
+			batched = Math.min(batched, run(50, insert));
+		}
+		System.out.printf("%-14s %d rows: batch_size=1 %6d ms (%8.0f rows/s), batch_size=50 %6d ms (%8.0f rows/s), x%.1f%n",
+				table, ROWS, unbatched, rowsPerSecond(unbatched), batched, rowsPerSecond(batched),
+				(double) unbatched / Math.max(1, batched));
+	}
+
+	private static double rowsPerSecond(long millis) {
+		return ROWS * 1000.0 / Math.max(1, millis);
+	}
+
+	// 指定したバッチサイズで ROWS 件を insert し、flush までの時間（ミリ秒）を返す
+	private long run(int batchSize, BiConsumer<Item, User> insert) {
+		Long elapsed = transactionTemplate.execute(status -> {
+			status.setRollbackOnly();
+			User seller = newUser("seller");
+			User buyer = newUser("buyer");
+			Item item = new Item();
+			item.setSeller(seller);
+			item.setName("ベンチマーク商品");
+			item.setPrice(BigDecimal.valueOf(1000));
+			item.setStatus(ItemStatus.LISTED);
+			entityManager.persist(item);
+			entityManager.flush();
+
+			entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+			long start = System.nanoTime();
+			for (int i = 0; i < ROWS; i++) {
+				insert.accept(item, buyer);
+				if ((i + 1) % 500 == 0) {
+					entityManager.flush();
+					entityManager.clear();
+					item = entityManager.getReference(Item.class, item.getId());
+					buyer = entityManager.getReference(User.class, buyer.getId());
+				}
+			}
+			entityManager.flush();
+			return (System.nanoTime() - start) / 1_000_000;
+		});
+		return elapsed;
+	}
+
+	private User newUser(String name) {
+		User user = new User();
+		user.setName(name);
+		user.setEmail(name + "-" + UUID.randomUUID() + "@example.com");
+		user.setPassword("password");
+		user.setRole("USER");
+		entityManager.persist(user);
+		return user;
+	}
+}
@@ -0,0 +1,156 @@
+package com.example.fleamarketsystem.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.fleamarketsystem.entity.Category;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.util.ItemCursor;
+
+/**
+ * 商品一覧のキーセットページングで、カーソルをたどると全件を1回ずつ、(created_at, id) の降順で返すことを確認する。
+ * created_at が同じ商品がページの境目をまたぐ場合と、最後のページの扱いを見る。
+ */
+@SpringBootTest
+@Transactional
+class ItemKeysetPagingTests {
+
+	private static final LocalDateTime T1 = LocalDateTime.of(2024, 1, 1, 12, 0);
+	private static final LocalDateTime T2 = T1.plusHours(1);
+	private static final LocalDateTime T3 = T1.plusHours(2);
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private CategoryRepository categoryRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	private User seller;
+	private Category category;
+
+	@BeforeEach
+	void setUp() {
+		seller = new User();
+		seller.setName("seller");
+		seller.setEmail("seller-" + UUID.randomUUID() + "@example.com");
+		seller.setPassword("password");
+		seller.setRole("USER");
+		seller = userRepository.save(seller);
+		category = new Category();
+		category.setName("category-" + UUID.randomUUID());
+		category = categoryRepository.save(category);
+	}
+
+	private Item newItem(Category category, LocalDateTime createdAt, ItemStatus status) {
+		Item item = new Item();
+		item.setSeller(seller);
+		item.setName("ページングテスト");
+		item.setPrice(BigDecimal.valueOf(1000));
+		item.setCategory(category);
+		item.setStatus(status);
+		item.setCreatedAt(createdAt);
+		return itemRepository.saveAndFlush(item);
+	}
+
+	// ItemService#browseItems と同じく、トークンに変換しながら最後のページまでたどる
+	private List<Long> walk(int size, List<Slice<Item>> pages) {
+		List<Long> seen = new ArrayList<>();
+		String token = null;
+		do {
+			ItemCursor after = ItemCursor.decode(token);
+			Slice<Item> page = itemRepository.findPageAfterInCategory(category.getId(), after.getCreatedAt(),
+					after.getId(), PageRequest.of(0, size));
+			pages.add(page);
+			page.forEach(item -> seen.add(item.getId()));
+			token = ItemCursor.next(page, Item::getCreatedAt, Item::getId);
+		} while (token != null);
+		return seen;
+	}
+
+	private static List<Long> newestFirst(List<Item> items) {
+		return items.stream()
+				.sorted(Comparator.comparing(Item::getCreatedAt).thenComparing(Item::getId).reversed())
+				.map(Item::getId)
+				.toList();
+	}
+
+	@Test
+	void tiesOnCreatedAtAcrossPageBoundariesAreNeitherSkippedNorRepeated() {
+		List<Item> items = new ArrayList<>();
+		items.add(newItem(category, T3, ItemStatus.LISTED));
+		for (int i = 0; i < 3; i++) {
+			items.add(newItem(category, T2, ItemStatus.LISTED));
+			items.add(newItem(category, T1, ItemStatus.LISTED));
+		}
+		// 出品中でない商品は含まない
+		newItem(category, T2, ItemStatus.SOLD);
+
+		// 3件ずつ: [T3, T2, T2] [T2, T1, T1] [T1]。同じ時刻の商品が2回ともページの境目をまたぐ
+		List<Slice<Item>> pages = new ArrayList<>();
+		assertThat(walk(3, pages)).containsExactlyElementsOf(newestFirst(items));
+		assertThat(pages).hasSize(3);
+		assertThat(pages.get(2).getContent()).hasSize(1);
+		assertThat(pages.get(2).hasNext()).isFalse();
+	}
+
+	@Test
+	void fullLastPageEndsWithoutAnEmptyPage() {
+		List<Item> items = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			items.add(newItem(category, T1, ItemStatus.LISTED));
+		}
+
+		List<Slice<Item>> pages = new ArrayList<>();
+		assertThat(walk(2, pages)).containsExactlyElementsOf(newestFirst(items));
+		assertThat(pages).hasSize(2);
+		assertThat(pages.get(1).getContent()).hasSize(2);
+		assertThat(pages.get(1).hasNext()).isFalse();
+		assertThat(ItemCursor.next(pages.get(1), Item::getCreatedAt, Item::getId)).isNull();
+	}
+
+	@Test
+	void emptyCategoryReturnsSingleEmptyPage() {
+		List<Slice<Item>> pages = new ArrayList<>();
+		assertThat(walk(20, pages)).isEmpty();
+		assertThat(pages).singleElement().satisfies(page -> assertThat(page.hasNext()).isFalse());
+	}
+
+	@Test
+	void allCategoriesCursorContinuesWithinTies() {
+		// 既存のどの商品よりも新しい時刻に揃え、先頭ページに来るようにする
+		LocalDateTime future = LocalDateTime.of(9000, 1, 1, 0, 0);
+		List<Item> items = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			items.add(newItem(null, future, ItemStatus.LISTED));
+		}
+		List<Long> expected = newestFirst(items);
+
+		Slice<Item> first = itemRepository.findPageAfter(ItemCursor.FIRST.getCreatedAt(), ItemCursor.FIRST.getId(),
+				PageRequest.of(0, 2));
+		assertThat(first.getContent()).extracting(Item::getId).containsExactlyElementsOf(expected.subList(0, 2));
+		assertThat(first.hasNext()).isTrue();
+
+		ItemCursor after = ItemCursor.decode(ItemCursor.next(first, Item::getCreatedAt, Item::getId));
+		Slice<Item> second = itemRepository.findPageAfter(after.getCreatedAt(), after.getId(), PageRequest.of(0, 2));
+		assertThat(second.getContent()).extracting(Item::getId).startsWith(expected.get(2));
+	}
+}
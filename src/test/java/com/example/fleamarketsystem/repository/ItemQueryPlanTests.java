@@ -0,0 +1,178 @@
+package com.example.fleamarketsystem.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.fleamarketsystem.entity.ItemStatus;
+
+/**
+ * 絞り込み条件の組み合わせごとに、Hibernate が実際に発行する SQL の実行計画を確認する。
+ * 条件を追加してインデックスが使われなくなった場合に検知するための回帰テスト。
+ * バインド値に依存しない汎用プランを EXPLAIN (GENERIC_PLAN) で取得する（PostgreSQL 16 以降。それより古い場合はスキップ）。
+ * プランナーの設定は変えず、商品を投入して ANALYZE した統計のもとで選ばれるプランを見る。
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+		+ "com.example.fleamarketsystem.repository.ItemQueryPlanTests$CapturingInspector")
+@Transactional
+class ItemQueryPlanTests {
+
+	private static final BigDecimal MIN = BigDecimal.valueOf(1000);
+	private static final BigDecimal MAX = BigDecimal.valueOf(5000);
+	private static final int ROWS = 50_000;
+	private static final int CATEGORIES = 20;
+	private static final LocalDateTime CURSOR = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void setUp() {
+		assumeTrue(jdbcTemplate.queryForObject("select current_setting('server_version_num')::int", Integer.class) >= 160000,
+				"EXPLAIN (GENERIC_PLAN) は PostgreSQL 16 以降");
+
+		// 本番に近い件数と分布の商品を入れて統計を取り直し、プランナーの判断そのものを確かめる（データはロールバックする）
+		String prefix = "plan-" + UUID.randomUUID();
+		Long sellerId = jdbcTemplate.queryForObject(
+				"insert into users (name, email, password, role) values ('plan', ?, 'password', 'USER') returning id",
+				Long.class, prefix + "@example.com");
+		jdbcTemplate.update("insert into category (name) select ? || '-' || g from generate_series(1, ?) g",
+				prefix, CATEGORIES);
+		jdbcTemplate.update("""
+				insert into item (user_id, name, description, price, category_id, status, created_at)
+				select ?, '商品' || g, '説明文' || g, 100 + (g * 37) % 20000, c.ids[1 + g % ?],
+				       case when g % 10 < 8 then 1 else 3 end, timestamp '2024-01-01' - g * interval '1 minute'
+				from generate_series(1, ?) g
+				cross join (select array_agg(id) as ids from category where name like ? || '-%') c
+				""", sellerId, CATEGORIES, ROWS, prefix);
+		jdbcTemplate.execute("analyze item");
+	}
+
+	// ANALYZE が書き換えた pg_class の件数はロールバックされないため、投入分が消えた状態で取り直す
+	@AfterTransaction
+	void reanalyze() {
+		jdbcTemplate.execute("analyze item");
+	}
+
+	@Test
+	void newestUsesCreatedAtIndex() {
+		assertThat(planOf(null, null, null, null, ItemSort.NEWEST)).contains("idx_item_listed_created")
+				.doesNotContain("Seq Scan");
+	}
+
+	@Test
+	void newestInCategoryUsesCategoryCreatedAtIndex() {
+		assertThat(planOf(1L, null, null, null, ItemSort.NEWEST)).contains("idx_item_listed_category_created")
+				.doesNotContain("Seq Scan");
+	}
+
+	@Test
+	void priceRangeSortedByPriceUsesPriceIndex() {
+		assertThat(planOf(null, null, MIN, MAX, ItemSort.PRICE_ASC)).contains("idx_item_listed_price")
+				.doesNotContain("Seq Scan");
+		assertThat(planOf(null, null, MIN, MAX, ItemSort.PRICE_DESC)).contains("idx_item_listed_price")
+				.doesNotContain("Seq Scan");
+	}
+
+	@Test
+	void priceRangeInCategoryUsesCategoryPriceIndex() {
+		assertThat(planOf(1L, null, MIN, MAX, ItemSort.PRICE_ASC)).contains("idx_item_listed_category_price")
+				.doesNotContain("Seq Scan");
+		assertThat(planOf(1L, null, null, MAX, ItemSort.PRICE_DESC)).contains("idx_item_listed_category_price")
+				.doesNotContain("Seq Scan");
+	}
+
+	@Test
+	void minPriceSortedByNewestStaysOnIndex() {
+		assertThat(planOf(null, null, MIN, null, ItemSort.NEWEST))
+				.containsAnyOf("idx_item_listed_created", "idx_item_listed_price")
+				.doesNotContain("Seq Scan");
+	}
+
+	@Test
+	void keywordWithPriceStaysOnIndex() {
+		assertThat(planOf(null, "%本%", MIN, MAX, ItemSort.PRICE_ASC))
+				.containsAnyOf("idx_item_listed_name_trgm", "idx_item_listed_price")
+				.doesNotContain("Seq Scan");
+	}
+
+	@Test
+	void cursorPageSeeksCreatedAtIndexWithRowComparison() {
+		assertThat(planOf(() -> itemRepository.findPageAfter(CURSOR, 1L, PageRequest.of(0, 20))))
+				.contains("idx_item_listed_created")
+				.contains("ROW(created_at, id) < ROW(")
+				.doesNotContain("Filter")
+				.doesNotContain("Seq Scan");
+	}
+
+	@Test
+	void cursorPageInCategorySeeksCategoryCreatedAtIndexWithRowComparison() {
+		assertThat(planOf(() -> itemRepository.findPageAfterInCategory(1L, CURSOR, 1L, PageRequest.of(0, 20))))
+				.contains("idx_item_listed_category_created")
+				.contains("ROW(created_at, id) < ROW(")
+				.doesNotContain("Filter")
+				.doesNotContain("Seq Scan");
+	}
+
+	private String planOf(Long categoryId, String keywordPattern, BigDecimal minPrice, BigDecimal maxPrice,
+			ItemSort sort) {
+		return planOf(() -> itemRepository.findAll(
+				ItemSpecifications.matching(ItemStatus.LISTED, categoryId, keywordPattern, minPrice, maxPrice),
+				PageRequest.of(0, 20, sort.toSort())));
+	}
+
+	// 検索を実行して Hibernate が発行した SQL を取り出し、その汎用プランを返す
+	private String planOf(Runnable query) {
+		CapturingInspector.STATEMENTS.clear();
+		query.run();
+		String sql = CapturingInspector.STATEMENTS.stream()
+				.filter(s -> s.contains(" order by "))
+				.findFirst()
+				.orElseThrow();
+		List<String> plan = jdbcTemplate.queryForList("explain (generic_plan) " + toPositional(sql), String.class);
+		return String.join("\n", plan);
+	}
+
+	// JDBC の ? を PostgreSQL の $1, $2, ... に置き換える
+	private static String toPositional(String sql) {
+		StringBuilder sb = new StringBuilder();
+		int n = 0;
+		for (char c : sql.toCharArray()) {
+			if (c == '?') {
+				sb.append('$').append(++n);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	public static class CapturingInspector implements StatementInspector {
+
+		static final List<String> STATEMENTS = new ArrayList<>();
+
+		@Override
+		public String inspect(String sql) {
+			STATEMENTS.add(sql);
+			return sql;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * CSV エクスポートのヒープ使用量が件数に比例しないことを、1,000件と大量件数（既定 1,000,000 件）で比べて確認する。
+ * 通常のテストでは実行しない: mvn test -Dgroups=benchmark -Dtest.excludedGroups=
+ * 件数は -Dbenchmark.export.rows=10000000 のように変えられる。
+ * 出力は文字数を数えるだけの Writer に捨て、一定量を書き出すごとに GC 後のヒープ使用量を記録して最大値を比べる。
+ * データは計測後にロールバックする。
+ */
+@Tag("benchmark")
+@SpringBootTest
+class CsvExportBenchmarkTests {
+
+	private static final int SMALL = 1_000;
+	private static final int LARGE = Integer.getInteger("benchmark.export.rows", 1_000_000);
+
+	// 計測の揺れを見込んだ許容幅。行を溜め込めば 100万件で数百 MB になる
+	private static final long TOLERANCE_BYTES = 32L * 1024 * 1024;
+
+	@Autowired
+	private CsvExportService csvExportService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	private record Result(long rows, long chars, long millis, long peakLiveBytes) {
+	}
+
+	@Test
+	void heapStaysFlatRegardlessOfRowCount() {
+		// 1回目は JIT やコネクションの準備を含むため捨てる
+		run(SMALL);
+		Result small = run(SMALL);
+		Result large = run(LARGE);
+
+		print(small);
+		print(large);
+		assertThat(large.rows()).isGreaterThanOrEqualTo(LARGE);
+		assertThat(large.peakLiveBytes()).isLessThan(small.peakLiveBytes() + TOLERANCE_BYTES);
+	}
+
+	private void print(Result result) {
+		System.out.printf("contacts %,10d rows: %6d ms (%,10.0f rows/s), %,d M chars, peak live heap +%,d MB%n",
+				result.rows(), result.millis(), result.rows() * 1000.0 / Math.max(1, result.millis()),
+				result.chars() / 1_000_000, result.peakLiveBytes() / (1024 * 1024));
+	}
+
+	// お問い合わせを count 件登録してエクスポートし、登録はロールバックする
+	private Result run(int count) {
+		return transactionTemplate.execute(status -> {
+			status.setRollbackOnly();
+			Long userId = jdbcTemplate.queryForObject("insert into users (name, email, password, role)"
+					+ " values ('benchmark', ?, 'password', 'USER') returning id", Long.class,
+					"benchmark-" + UUID.randomUUID() + "@example.com");
+			jdbcTemplate.update("insert into contact (user_id, subject, message, created_at, read)"
+					+ " select ?, '件名 ' || g, repeat('お問い合わせ本文, \"引用\" ', 10), now(), false"
+					+ " from generate_series(1, ?) g", userId, count);
+
+			System.gc();
+			long baseline = memory.getHeapMemoryUsage().getUsed();
+			CountingWriter out = new CountingWriter();
+			long start = System.nanoTime();
+			long rows;
+			try {
+				rows = csvExportService.exportContacts(out);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			long millis = (System.nanoTime() - start) / 1_000_000;
+			out.sample();
+			return new Result(rows, out.chars, millis, Math.max(0, out.peakLive - baseline));
+		});
+	}
+
+	// 書き出された文字数を数え、一定量ごとに GC 後のヒープ使用量（生存しているオブジェクトの量）を記録する
+	private class CountingWriter extends Writer {
+
+		private static final long SAMPLE_EVERY_CHARS = 16L * 1024 * 1024;
+
+		private long chars;
+		private long nextSample;
+		private long peakLive;
+
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+			chars += length;
+			if (chars >= nextSample) {
+				sample();
+				nextSample = chars + SAMPLE_EVERY_CHARS;
+			}
+		}
+
+		@Override
+		public void write(int c) {
+			chars++;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		void sample() {
+			System.gc();
+			peakLive = Math.max(peakLive, memory.getHeapMemoryUsage().getUsed());
+		}
+	}
+}
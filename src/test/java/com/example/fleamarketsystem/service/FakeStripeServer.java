@@ -0,0 +1,147 @@
+package com.example.fleamarketsystem.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * オフラインで StripeService を試すための偽の Stripe API サーバー（JDK の HttpServer）。
+ * PaymentIntent の作成・取得・取り消しと返金だけに応答する。
+ * 応答の遅延（latencyMillis）と 500 を返す割合（failureRate）は途中で変えられ、Stripe の遅延や障害を再現できる。
+ * 冪等キー（Idempotency-Key ヘッダー）が同じ POST には、本物の Stripe と同じく最初の応答をそのまま返す。
+ */
+class FakeStripeServer implements AutoCloseable {
+
+	private static final String FAILURE = "{\"error\": {\"type\": \"api_error\", \"message\": \"fake failure\"}}";
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, String> idempotentResponses = new ConcurrentHashMap<>();
+	private final AtomicInteger sequence = new AtomicInteger();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder replays = new LongAdder();
+	private volatile long latencyMillis;
+	private volatile double failureRate;
+
+	FakeStripeServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "fake-stripe");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext("/v1/", this::handle);
+		server.start();
+	}
+
+	String baseUrl() {
+		return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getAddress().getPort();
+	}
+
+	void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	void setFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+	}
+
+	// 受け取ったリクエストの件数（タイムアウトしたものを含む）
+	long requests() {
+		return requests.sum();
+	}
+
+	// 冪等キーが一致して、前の応答を返した件数
+	long replays() {
+		return replays.sum();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.increment();
+		try {
+			exchange.getRequestBody().readAllBytes();
+			if (latencyMillis > 0) {
+				Thread.sleep(latencyMillis);
+			}
+			if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+				respond(exchange, 500, FAILURE);
+				return;
+			}
+			String body = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath());
+			String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+			if (body != null && key != null && "POST".equals(exchange.getRequestMethod())) {
+				String previous = idempotentResponses.putIfAbsent(key, body);
+				if (previous != null) {
+					replays.increment();
+					body = previous;
+				}
+			}
+			if (body == null) {
+				respond(exchange, 404, "{\"error\": {\"type\": \"invalid_request_error\", \"message\": \"not found\"}}");
+			} else {
+				respond(exchange, 200, body);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			// 応答を待たずにタイムアウトしたクライアント
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private String route(String method, String path) {
+		String[] parts = path.split("/");
+		// /v1/payment_intents, /v1/payment_intents/{id}, /v1/payment_intents/{id}/cancel, /v1/refunds
+		if (parts.length >= 3 && "payment_intents".equals(parts[2])) {
+			if (parts.length == 3 && "POST".equals(method)) {
+				String id = "pi_fake_" + sequence.incrementAndGet();
+				return paymentIntent(id, "requires_payment_method");
+			}
+			if (parts.length == 4 && "GET".equals(method)) {
+				return paymentIntent(parts[3], "succeeded");
+			}
+			if (parts.length == 5 && "cancel".equals(parts[4]) && "POST".equals(method)) {
+				return paymentIntent(parts[3], "canceled");
+			}
+		}
+		if (parts.length == 3 && "refunds".equals(parts[2]) && "POST".equals(method)) {
+			return "{\"id\": \"re_fake_" + sequence.incrementAndGet() + "\", \"object\": \"refund\","
+					+ " \"status\": \"succeeded\"}";
+		}
+		return null;
+	}
+
+	private static String paymentIntent(String id, String status) {
+		return "{\"id\": \"" + id + "\", \"object\": \"payment_intent\", \"status\": \"" + status + "\","
+				+ " \"client_secret\": \"" + id + "_secret_fake\"}";
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+}
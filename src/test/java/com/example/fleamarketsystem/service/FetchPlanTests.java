@@ -0,0 +1,175 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Slice;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.fleamarketsystem.entity.AppOrder;
+import com.example.fleamarketsystem.entity.Category;
+import com.example.fleamarketsystem.entity.FavoriteItem;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.OrderStatus;
+import com.example.fleamarketsystem.entity.Review;
+import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.repository.AdminOrderRow;
+
+/**
+ * 画面ごとの一覧取得で N+1 問題が起きていないことを、発行された SQL の件数で確認する。
+ * 件数を変えても SQL が1回で済むよう、関連は各画面のテンプレートが参照するものだけを読む。
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class FetchPlanTests {
+
+	private static final int ROWS = 5;
+
+	@Autowired
+	private AppOrderService appOrderService;
+
+	@Autowired
+	private ItemService itemService;
+
+	@Autowired
+	private ReviewService reviewService;
+
+	@Autowired
+	private FavoriteService favoriteService;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private User buyer;
+
+	private User newUser(String name) {
+		User user = new User();
+		user.setName(name);
+		user.setEmail(name + "-" + UUID.randomUUID() + "@example.com");
+		user.setPassword("password");
+		user.setRole("USER");
+		entityManager.persist(user);
+		return user;
+	}
+
+	@BeforeEach
+	void setUp() {
+		buyer = newUser("buyer");
+		for (int i = 0; i < ROWS; i++) {
+			// 出品者・カテゴリを行ごとに変え、関連の読み込みが行数に比例すれば検知できるようにする
+			User seller = newUser("seller" + i);
+			Category category = new Category();
+			category.setName("category-" + UUID.randomUUID());
+			entityManager.persist(category);
+
+			Item item = new Item();
+			item.setSeller(seller);
+			item.setCategory(category);
+			item.setName("商品" + i);
+			item.setPrice(BigDecimal.valueOf(1000 + i));
+			item.setStatus(ItemStatus.SOLD);
+			entityManager.persist(item);
+
+			AppOrder order = new AppOrder();
+			order.setItem(item);
+			order.setBuyer(buyer);
+			order.setPrice(item.getPrice());
+			order.setStatus(OrderStatus.COMPLETED);
+			entityManager.persist(order);
+
+			Review review = new Review();
+			review.setOrder(order);
+			review.setReviewer(buyer);
+			review.setSeller(seller);
+			review.setItem(item);
+			review.setRating(5);
+			entityManager.persist(review);
+
+			FavoriteItem favorite = new FavoriteItem();
+			favorite.setUser(buyer);
+			favorite.setItem(item);
+			entityManager.persist(favorite);
+		}
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	// 取得とテンプレートでの関連の参照をまとめて行い、その間に発行された SQL の件数を返す
+	private <T> long statementsFor(Supplier<List<T>> load, Consumer<T> render) {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		List<T> rows = load.get();
+		assertThat(rows).isNotEmpty();
+		rows.forEach(render);
+		return statistics.getPrepareStatementCount();
+	}
+
+	@Test
+	void orderHistoryLoadsItemSellerAndBuyerInOneStatement() {
+		User reloaded = entityManager.find(User.class, buyer.getId());
+		assertThat(statementsFor(() -> appOrderService.getOrdersByBuyer(reloaded),
+				o -> assertThat(o.getItem().getName() + o.getItem().getSeller().getName() + o.getBuyer().getName())
+						.isNotEmpty()))
+				.isEqualTo(1);
+	}
+
+	@Test
+	void adminDashboardLoadsOrdersAndRecentItemsWithoutNPlusOne() {
+		assertThat(statementsFor(() -> appOrderService.getActiveOrders(0, 20).getContent(),
+				o -> assertThat(o.itemName() + o.itemStatus() + o.buyerName()).isNotEmpty()))
+				.isEqualTo(1);
+		assertThat(statementsFor(itemService::getRecentItemsForAdmin,
+				i -> assertThat(i.getSeller().getName() + i.getCategory().getName()).isNotEmpty()))
+				.isEqualTo(1);
+	}
+
+	@Test
+	void adminDashboardPagesOrdersAndCountsStatusesInOneStatement() {
+		// 件数を数えずに、1件多く読んで次のページの有無だけを判定する
+		Slice<AdminOrderRow> first = appOrderService.getActiveOrders(0, ROWS - 1);
+		assertThat(first.getContent()).hasSize(ROWS - 1);
+		assertThat(first.hasNext()).isTrue();
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		OrderStatusSummary summary = appOrderService.getDashboardSummary();
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(summary.count(OrderStatus.COMPLETED)).isGreaterThanOrEqualTo(ROWS);
+		assertThat(summary.getCounts()).hasSize(OrderStatus.values().length);
+	}
+
+	@Test
+	void reviewListLoadsReviewerAndItemInOneStatement() {
+		User reloaded = entityManager.find(User.class, buyer.getId());
+		assertThat(statementsFor(() -> reviewService.getReviewsByReviewer(reloaded),
+				r -> assertThat(r.getItem().getName() + r.getSeller().getName() + r.getReviewer().getName())
+						.isNotEmpty()))
+				.isEqualTo(1);
+	}
+
+	@Test
+	void favoriteCardsLoadItemsInOneStatement() {
+		User reloaded = entityManager.find(User.class, buyer.getId());
+		assertThat(statementsFor(() -> favoriteService.getFavoriteItemsByUser(reloaded),
+				i -> assertThat(i.getName() + i.getPrice()).isNotEmpty()))
+				.isEqualTo(1);
+	}
+}
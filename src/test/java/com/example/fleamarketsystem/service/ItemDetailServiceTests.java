@@ -0,0 +1,97 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.fleamarketsystem.entity.Category;
+import com.example.fleamarketsystem.entity.Chat;
+import com.example.fleamarketsystem.entity.FavoriteItem;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.User;
+
+/**
+ * 商品詳細ページの表示に必要な SQL の発行回数を確認する。
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class ItemDetailServiceTests {
+
+	@Autowired
+	private ItemDetailService itemDetailService;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private User newUser(String name) {
+		User user = new User();
+		user.setName(name);
+		user.setEmail(name + "-" + UUID.randomUUID() + "@example.com");
+		user.setPassword("password");
+		user.setRole("USER");
+		entityManager.persist(user);
+		return user;
+	}
+
+	@Test
+	void loadsDetailPageInTwoStatements() {
+		User seller = newUser("seller");
+		User viewer = newUser("viewer");
+		Category category = new Category();
+		category.setName("category-" + UUID.randomUUID());
+		entityManager.persist(category);
+
+		Item item = new Item();
+		item.setSeller(seller);
+		item.setName("テスト商品");
+		item.setPrice(BigDecimal.valueOf(1200));
+		item.setCategory(category);
+		entityManager.persist(item);
+
+		for (int i = 0; i < 3; i++) {
+			Chat chat = new Chat();
+			chat.setItem(item);
+			chat.setSender(i % 2 == 0 ? viewer : seller);
+			chat.setMessage("メッセージ" + i);
+			chat.setCreatedAt(LocalDateTime.now().minusMinutes(10 - i));
+			entityManager.persist(chat);
+		}
+		FavoriteItem favorite = new FavoriteItem();
+		favorite.setUser(viewer);
+		favorite.setItem(item);
+		entityManager.persist(favorite);
+		entityManager.flush();
+		entityManager.clear();
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		ItemDetail detail = itemDetailService.getItemDetail(item.getId(), viewer.getEmail()).orElseThrow();
+
+		// 画面で参照する関連（出品者・カテゴリ・チャットの送信者）も読み込み済みであること
+		assertThat(detail.getItem().getSeller().getName()).isEqualTo("seller");
+		assertThat(detail.getItem().getCategory().getName()).isEqualTo(category.getName());
+		assertThat(detail.getChats()).extracting(Chat::getMessage)
+				.containsExactly("メッセージ0", "メッセージ1", "メッセージ2");
+		assertThat(detail.getChats()).extracting(c -> c.getSender().getName())
+				.containsExactly("viewer", "seller", "viewer");
+		assertThat(detail.isFavorited()).isTrue();
+		assertThat(detail.getSellerAverageRating()).isNull();
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+	}
+}
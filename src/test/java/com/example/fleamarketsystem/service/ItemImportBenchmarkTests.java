@@ -0,0 +1,146 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * CSV 一括出品が上限件数（item.import.max-rows、既定 10,000 件）を数秒で取り込み、
+ * ヒープ使用量が件数に比例しないことを、1,000件と比べて確認する。
+ * 通常のテストでは実行しない: mvn test -Dgroups=benchmark -Dtest.excludedGroups=
+ * CSV は読まれるたびに1行ずつ生成し、一定行数ごとに GC 後のヒープ使用量を記録して最大値を比べる。
+ * 取り込みはバッチごとにコミットされるため、登録した商品は計測のたびに削除する。
+ */
+@Tag("benchmark")
+@SpringBootTest
+class ItemImportBenchmarkTests {
+
+	private static final int SMALL = 1_000;
+	private static final int LARGE = 10_000;
+
+	// 「数秒」の目安。CI の揺れを見込んで余裕を持たせる
+	private static final long MAX_MILLIS = 10_000;
+
+	// 計測の揺れを見込んだ許容幅。商品を永続化コンテキストに溜め込めば 1万件で数十 MB になる
+	private static final long TOLERANCE_BYTES = 16L * 1024 * 1024;
+
+	@Autowired
+	private ItemImportService itemImportService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	private Long sellerId;
+	private Long categoryId;
+	private String categoryName;
+
+	private record Result(long rows, long millis, long peakLiveBytes) {
+	}
+
+	@BeforeEach
+	void setUp() {
+		sellerId = jdbcTemplate.queryForObject("insert into users (name, email, password, role)"
+				+ " values ('benchmark', ?, 'password', 'USER') returning id", Long.class,
+				"benchmark-" + UUID.randomUUID() + "@example.com");
+		categoryName = "benchmark-" + UUID.randomUUID();
+		categoryId = jdbcTemplate.queryForObject("insert into category (name) values (?) returning id", Long.class,
+				categoryName);
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("delete from item where user_id = ?", sellerId);
+		jdbcTemplate.update("delete from category where id = ?", categoryId);
+		jdbcTemplate.update("delete from users where id = ?", sellerId);
+	}
+
+	@Test
+	void importsMaxRowsInSecondsWithFlatHeap() {
+		// 1回目は JIT やコネクションの準備を含むため捨てる
+		run(SMALL);
+		Result small = run(SMALL);
+		Result large = run(LARGE);
+
+		print(small);
+		print(large);
+		assertThat(large.rows()).isEqualTo(LARGE);
+		assertThat(large.millis()).isLessThan(MAX_MILLIS);
+		assertThat(large.peakLiveBytes()).isLessThan(small.peakLiveBytes() + TOLERANCE_BYTES);
+	}
+
+	private void print(Result result) {
+		System.out.printf("import %,7d rows: %6d ms (%,8.0f rows/s), peak live heap +%,d MB%n",
+				result.rows(), result.millis(), result.rows() * 1000.0 / Math.max(1, result.millis()),
+				result.peakLiveBytes() / (1024 * 1024));
+	}
+
+	private Result run(int count) {
+		System.gc();
+		long baseline = memory.getHeapMemoryUsage().getUsed();
+		GeneratedCsv csv = new GeneratedCsv(count);
+		long start = System.nanoTime();
+		ItemImportReport report = itemImportService.importCsv(csv, sellerId);
+		long millis = (System.nanoTime() - start) / 1_000_000;
+		csv.sample();
+		jdbcTemplate.update("delete from item where user_id = ?", sellerId);
+		return new Result(report.getSuccessCount(), millis, Math.max(0, csv.peakLive - baseline));
+	}
+
+	// 読まれるたびに行を生成する CSV。一定行数ごとに GC 後のヒープ使用量（生存しているオブジェクトの量）を記録する
+	private class GeneratedCsv extends Reader {
+
+		private static final int SAMPLE_EVERY_ROWS = 2_000;
+
+		private final int rows;
+		private int written;
+		private String line = "";
+		private int position;
+		private long peakLive;
+
+		GeneratedCsv(int rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if (position == line.length()) {
+				if (written == rows) {
+					return -1;
+				}
+				written++;
+				if (written % SAMPLE_EVERY_ROWS == 0) {
+					sample();
+				}
+				line = "商品 " + written + ",\"説明文, \"\"引用\"\" " + written + "\"," + (100 + written % 10_000)
+						+ "," + categoryName + ",https://example.com/" + written + ".jpg\n";
+				position = 0;
+			}
+			int n = Math.min(length, line.length() - position);
+			line.getChars(position, position + n, buffer, offset);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		void sample() {
+			System.gc();
+			peakLive = Math.max(peakLive, memory.getHeapMemoryUsage().getUsed());
+		}
+	}
+}
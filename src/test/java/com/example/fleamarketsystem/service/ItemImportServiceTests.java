@@ -0,0 +1,138 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.StringReader;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.fleamarketsystem.entity.Category;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.repository.CategoryRepository;
+import com.example.fleamarketsystem.repository.ItemRepository;
+import com.example.fleamarketsystem.repository.UserRepository;
+
+/**
+ * CSV 一括出品の行ごとの結果と、バッチをまたいだ登録を確認する（バッチサイズを小さくして境界を跨がせる）。
+ * 取り込みはバッチごとに自分でコミットするため、テスト用のトランザクションでは囲まず、登録した行は後で削除する。
+ */
+@SpringBootTest(properties = "item.import.batch-size=2")
+class ItemImportServiceTests {
+
+	@Autowired
+	private ItemImportService itemImportService;
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private CategoryRepository categoryRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private User seller;
+	private Category category;
+
+	@BeforeEach
+	void setUp() {
+		seller = new User();
+		seller.setName("seller");
+		seller.setEmail("seller-" + UUID.randomUUID() + "@example.com");
+		seller.setPassword("password");
+		seller.setRole("USER");
+		seller = userRepository.save(seller);
+
+		category = new Category();
+		category.setName("category-" + UUID.randomUUID());
+		category = categoryRepository.save(category);
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("delete from item where user_id = ?", seller.getId());
+		categoryRepository.deleteById(category.getId());
+		userRepository.deleteById(seller.getId());
+	}
+
+	private int itemCount() {
+		return jdbcTemplate.queryForObject("select count(*) from item where user_id = ?", Integer.class,
+				seller.getId());
+	}
+
+	@Test
+	void importsValidRowsAndReportsInvalidOnesByLine() {
+		String c = category.getName();
+		String csv = "商品名,説明,価格,カテゴリ名,画像URL\n"
+				+ "カメラ,中古です,\"12,000\"," + c + ",https://example.com/a.jpg\n"
+				+ ",説明のみ,100," + c + ",\n"
+				+ "時計,,0," + c + ",\n"
+				+ "本,,500,存在しないカテゴリ,\n"
+				+ "靴,,800," + c + ",ftp://example.com/b.jpg\n"
+				+ "鞄,,3000," + c + "\n"
+				+ "帽子,,1500," + c + ",\n";
+
+		ItemImportReport report = itemImportService.importCsv(new StringReader(csv), seller.getId());
+
+		assertThat(report.getSuccessCount()).isEqualTo(3);
+		assertThat(report.getFailureCount()).isEqualTo(4);
+		assertThat(report.getRows()).extracting(ItemImportReport.Row::line).containsExactly(2L, 3L, 4L, 5L, 6L, 7L, 8L);
+		assertThat(report.getFailures()).extracting(ItemImportReport.Row::line).containsExactly(3L, 4L, 5L, 6L);
+
+		assertThat(itemCount()).isEqualTo(3);
+		Item camera = itemRepository.findById(report.getRows().get(0).itemId()).orElseThrow();
+		assertThat(camera.getName()).isEqualTo("カメラ");
+		assertThat(camera.getPrice()).isEqualByComparingTo("12000");
+		assertThat(camera.getStatus()).isEqualTo(ItemStatus.LISTED);
+		assertThat(camera.getSeller().getId()).isEqualTo(seller.getId());
+		assertThat(camera.getCategory().getId()).isEqualTo(category.getId());
+		assertThat(camera.getImageUrl()).isEqualTo("https://example.com/a.jpg");
+	}
+
+	@Test
+	void keepsRowsReadBeforeMalformedInput() {
+		String csv = "鞄,,3000," + category.getName() + "\n"
+				+ "\"帽子,,1500," + category.getName() + "\n";
+
+		ItemImportReport report = itemImportService.importCsv(new StringReader(csv), seller.getId());
+
+		assertThat(report.getSuccessCount()).isEqualTo(1);
+		assertThat(report.getAbortMessage()).isNotNull();
+		assertThat(itemCount()).isEqualTo(1);
+	}
+
+	@Test
+	void rowFailingAtInsertIsRetriedAloneWithoutLosingItsChunk() {
+		// 検証は通るが登録時に失敗する行（PostgreSQL の text は NUL 文字を保存できない）
+		String c = category.getName();
+		String csv = "カメラ,,1000," + c + ",\n"
+				+ "時計,壊れた\u0000説明,2000," + c + ",\n"
+				+ "本,,500," + c + ",\n"
+				+ "靴,,800," + c + ",\n";
+
+		ItemImportReport report = itemImportService.importCsv(new StringReader(csv), seller.getId());
+
+		// 1つ目のバッチ（1〜2行目）はまとめての登録に失敗し、1行ずつ登録し直す
+		assertThat(report.getSuccessCount()).isEqualTo(3);
+		assertThat(report.getFailures()).singleElement().satisfies(row -> {
+			assertThat(row.line()).isEqualTo(2L);
+			assertThat(row.name()).isEqualTo("時計");
+		});
+		assertThat(report.getRows()).extracting(ItemImportReport.Row::line).containsExactly(1L, 2L, 3L, 4L);
+		// 失敗したバッチの行が二重に登録されていない
+		assertThat(itemCount()).isEqualTo(3);
+		assertThat(itemRepository.findById(report.getRows().get(0).itemId()).orElseThrow().getName())
+				.isEqualTo("カメラ");
+	}
+}
@@ -0,0 +1,52 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.fleamarketsystem.service.ItemReservations.Hold;
+
+/**
+ * メモリ上の予約表の取得・解除と有効期限を確認する（DB からの読み込みは使わない）。
+ */
+class ItemReservationsTests {
+
+	private final ItemReservations reservations = new ItemReservations(null, 30);
+	private final LocalDateTime now = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@Test
+	void secondHoldOnSameItemFailsUntilExpiry() {
+		Hold hold = reservations.tryHold(1L, now);
+
+		assertThat(hold).isNotNull();
+		assertThat(hold.expiresAt()).isEqualTo(now.plusMinutes(30));
+		assertThat(reservations.tryHold(1L, now.plusMinutes(29))).isNull();
+		assertThat(reservations.tryHold(2L, now)).isNotNull();
+		// 期限が切れた予約は上書きできる
+		assertThat(reservations.tryHold(1L, now.plusMinutes(30))).isNotNull();
+	}
+
+	@Test
+	void releaseOnlyRemovesTheOrdersOwnHold() {
+		Hold hold = reservations.tryHold(1L, now);
+		reservations.attach(hold, 100L);
+
+		reservations.release(1L, 200L);
+		assertThat(reservations.tryHold(1L, now)).isNull();
+
+		reservations.release(1L, 100L);
+		assertThat(reservations.size()).isZero();
+		assertThat(reservations.tryHold(1L, now)).isNotNull();
+	}
+
+	@Test
+	void failedRegistrationReleasesPendingHold() {
+		Hold hold = reservations.tryHold(1L, now);
+
+		reservations.release(hold);
+
+		assertThat(reservations.tryHold(1L, now)).isNotNull();
+	}
+}
@@ -0,0 +1,126 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.fleamarketsystem.entity.ItemStatus;
+
+class ItemSearchIndexTests {
+
+	private ItemSearchIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new ItemSearchIndex(null);
+	}
+
+	private void put(long id, Long categoryId, ItemStatus status, String name, String description, int minutesAgo) {
+		index.onItemChanged(new ItemChangedEvent(id, categoryId, categoryId, status, name, description,
+				BigDecimal.valueOf(1000), LocalDateTime.now().minusMinutes(minutesAgo), false));
+	}
+
+	@Test
+	void findsJapaneseTextByBigrams() {
+		put(1, 1L, ItemStatus.LISTED, "ノートパソコン", "ほぼ新品です", 10);
+		put(2, 1L, ItemStatus.LISTED, "デスクトップパソコン", null, 5);
+		put(3, 2L, ItemStatus.LISTED, "文庫本セット", "パソコン関連の本", 1);
+
+		ItemSearchIndex.SearchHits hits = index.search("パソコン", null, 0, 10);
+
+		// 商品名一致を類似度の高い順（短い商品名が上）に並べ、説明文のみの一致はその後ろ
+		assertThat(hits.total()).isEqualTo(3);
+		assertThat(hits.itemIds()).containsExactly(1L, 2L, 3L);
+		assertThat(index.search("パソコン", 2L, 0, 10).itemIds()).containsExactly(3L);
+		assertThat(index.search("ｐａｓｏ", null, 0, 10).total()).isZero();
+	}
+
+	@Test
+	void countsFacetsInTheSamePass() {
+		index.onItemChanged(new ItemChangedEvent(1L, 1L, 1L, ItemStatus.LISTED, "カメラ", null, BigDecimal.valueOf(500),
+				LocalDateTime.now(), false));
+		index.onItemChanged(new ItemChangedEvent(2L, 1L, 1L, ItemStatus.LISTED, "カメラバッグ", null, BigDecimal.valueOf(4000),
+				LocalDateTime.now(), false));
+		index.onItemChanged(new ItemChangedEvent(3L, 2L, 2L, ItemStatus.LISTED, "カメラの本", null, BigDecimal.valueOf(1200),
+				LocalDateTime.now(), false));
+		index.onItemChanged(new ItemChangedEvent(4L, null, null, ItemStatus.LISTED, "カメラ部品", null, BigDecimal.valueOf(20000),
+				LocalDateTime.now(), false));
+
+		SearchFacets facets = index.search("カメラ", 1L, 0, 10).facets();
+
+		// カテゴリ別はカテゴリ条件を外した件数、価格帯別はカテゴリ条件込みの件数
+		assertThat(facets.getCategoryCount(1L)).isEqualTo(2);
+		assertThat(facets.getCategoryCount(2L)).isEqualTo(1);
+		assertThat(facets.getCategoryCount(null)).isEqualTo(1);
+		assertThat(facets.getPriceBuckets()).extracting(SearchFacets.PriceBucket::getCount)
+				.containsExactly(1L, 0L, 1L, 0L, 0L);
+	}
+
+	@Test
+	void normalizesWidthAndCaseAndRequiresAdjacentCharacters() {
+		put(1, null, ItemStatus.LISTED, "iPhone ケース", null, 1);
+		put(2, null, ItemStatus.LISTED, "スマホ", "ケーブル付き", 2);
+
+		assertThat(index.search("ＩＰＨＯＮＥ", null, 0, 10).itemIds()).containsExactly(1L);
+		assertThat(index.search("iphone ケース", null, 0, 10).itemIds()).containsExactly(1L);
+		// 「ケ」「ー」の bigram は両方に含まれるが、「ケース」を含むのは 1 件だけ
+		assertThat(index.search("ケース", null, 0, 10).itemIds()).containsExactly(1L);
+		assertThat(index.search("ケ", null, 0, 10).total()).isEqualTo(2);
+	}
+
+	@Test
+	void dropsItemsThatLeaveTheListedState() {
+		put(1, 1L, ItemStatus.LISTED, "腕時計", null, 1);
+		assertThat(index.search("時計", null, 0, 10).total()).isEqualTo(1);
+
+		put(1, 1L, ItemStatus.TRADING, "腕時計", null, 1);
+		assertThat(index.search("時計", null, 0, 10).total()).isZero();
+
+		put(1, 1L, ItemStatus.LISTED, "懐中時計", null, 1);
+		assertThat(index.search("懐中", null, 0, 10).itemIds()).containsExactly(1L);
+
+		index.onItemChanged(new ItemChangedEvent(1L, 1L, 1L, ItemStatus.LISTED, "懐中時計", null, BigDecimal.ONE,
+				LocalDateTime.now(), true));
+		assertThat(index.search("時計", null, 0, 10).total()).isZero();
+		assertThat(index.size()).isZero();
+	}
+
+	@Test
+	void ranksByTrigramSimilarityThenNewest() {
+		put(1, null, ItemStatus.LISTED, "ワイヤレスイヤホン 充電ケース付き 美品", null, 1);
+		put(2, null, ItemStatus.LISTED, "ワイヤレスイヤホン", null, 30);
+		put(3, null, ItemStatus.LISTED, "イヤホン", null, 20);
+		put(4, null, ItemStatus.LISTED, "イヤホン", null, 10);
+
+		// 類似度が同じ（同名）の商品は新しい順
+		assertThat(index.search("イヤホン", null, 0, 10).itemIds()).containsExactly(4L, 3L, 2L, 1L);
+	}
+
+	@Test
+	void computesSimilarityLikePgTrgm() {
+		// SELECT similarity('word', 'two words') = 0.36363637（show_trgm: "  w"," wo","wor","ord","rd " ほか）
+		assertThat(ItemSearchIndex.similarity(ItemSearchIndex.trigrams("word"), ItemSearchIndex.trigrams("two words")))
+				.isEqualTo(4f / 11f);
+		assertThat(ItemSearchIndex.trigrams("cat")).hasSize(4);
+		assertThat(ItemSearchIndex.trigrams("a-b")).hasSize(4);
+		assertThat(ItemSearchIndex.similarity(ItemSearchIndex.trigrams(""), ItemSearchIndex.trigrams("cat"))).isZero();
+	}
+
+	@Test
+	void pagesThroughResultsAndSurvivesCompaction() {
+		for (long id = 1; id <= 3000; id++) {
+			put(id, 1L, ItemStatus.LISTED, "ぬいぐるみ " + id, null, (int) (3000 - id));
+		}
+		for (long id = 1; id <= 2500; id++) {
+			put(id, 1L, ItemStatus.SOLD, "ぬいぐるみ " + id, null, 0);
+		}
+
+		ItemSearchIndex.SearchHits page = index.search("ぬいぐるみ", 1L, 10, 5);
+		assertThat(page.total()).isEqualTo(500);
+		assertThat(page.itemIds()).containsExactly(2990L, 2989L, 2988L, 2987L, 2986L);
+	}
+}
@@ -0,0 +1,123 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.fleamarketsystem.entity.Category;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.repository.CategoryRepository;
+
+class ItemSuggestIndexTests {
+
+	private final CategoryRepository categoryRepository = mock(CategoryRepository.class);
+	private ItemSuggestIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new ItemSuggestIndex(null, categoryRepository);
+	}
+
+	private void put(long id, ItemStatus status, String name, int daysAgo) {
+		index.onItemChanged(new ItemChangedEvent(id, 1L, 1L, status, name, null, BigDecimal.valueOf(1000),
+				LocalDateTime.now().minusDays(daysAgo), false));
+	}
+
+	@Test
+	void completesFromStartOfAnyWordNewestFirst() {
+		put(1, ItemStatus.LISTED, "Apple iPhone 13", 20);
+		put(2, ItemStatus.LISTED, "iPhone ケース", 1);
+		put(3, ItemStatus.LISTED, "iPad mini", 5);
+
+		assertThat(index.suggest("ｉｐｈ", 10)).extracting(ItemSuggestIndex.Suggestion::text)
+				.containsExactly("iPhone ケース", "Apple iPhone 13");
+		assertThat(index.suggest("ip", 10)).extracting(ItemSuggestIndex.Suggestion::text)
+				.containsExactly("iPhone ケース", "iPad mini", "Apple iPhone 13");
+	}
+
+	@Test
+	void dropsItemsThatLeaveListingAndDeduplicatesNames() {
+		put(1, ItemStatus.LISTED, "文庫本セット", 1);
+		put(2, ItemStatus.LISTED, "文庫本セット", 2);
+		put(3, ItemStatus.LISTED, "文具", 3);
+		put(3, ItemStatus.SOLD, "文具", 3);
+
+		assertThat(index.suggest("文", 10)).extracting(ItemSuggestIndex.Suggestion::text)
+				.containsExactly("文庫本セット");
+	}
+
+	@Test
+	void listsMatchingCategoriesBeforeItems() {
+		Category category = new Category();
+		category.setId(7L);
+		category.setName("本・雑誌");
+		when(categoryRepository.findAll()).thenReturn(List.of(category));
+		index.categoriesChanged();
+		put(1, ItemStatus.LISTED, "本棚", 1);
+
+		assertThat(index.suggest("本", 10)).containsExactly(
+				new ItemSuggestIndex.Suggestion("category", "本・雑誌", 7L),
+				new ItemSuggestIndex.Suggestion("item", "本棚", null));
+		// 入力のたびにはカテゴリを問い合わせない
+		index.suggest("本", 10);
+		verify(categoryRepository, times(1)).findAll();
+	}
+
+	@Test
+	void weightsFavoritesAboveRecency() {
+		LocalDateTime now = LocalDateTime.now();
+		assertThat(ItemSuggestIndex.weightOf(3, now.minusDays(60), now))
+				.isGreaterThan(ItemSuggestIndex.weightOf(0, now, now));
+	}
+
+	@Test
+	void ranksAcrossTheWholePrefixRangeNotKeyOrder() {
+		// キー順で後ろにある商品が最も重くても上位に入る
+		for (int i = 0; i < 3000; i++) {
+			put(i, ItemStatus.LISTED, String.format("a%05d", i), 60);
+		}
+		put(9999, ItemStatus.LISTED, "azzz", 0);
+
+		assertThat(index.suggest("a", 3)).extracting(ItemSuggestIndex.Suggestion::text)
+				.containsExactly("azzz", "a00000", "a00001");
+	}
+
+	@Test
+	void refillsPrefixWhenTopItemLeavesListing() {
+		for (int i = 0; i < ItemSuggestIndex.MAX_SUGGESTIONS + 5; i++) {
+			put(i, ItemStatus.LISTED, String.format("b%03d", i), i);
+		}
+		assertThat(index.suggest("b", 1)).extracting(ItemSuggestIndex.Suggestion::text).containsExactly("b000");
+
+		// 上位から抜けた分は、上位に入っていなかった商品で埋まる
+		put(0, ItemStatus.SOLD, "b000", 0);
+		put(1, ItemStatus.LISTED, "c001", 1);
+		assertThat(index.suggest("b", ItemSuggestIndex.MAX_SUGGESTIONS)).extracting(ItemSuggestIndex.Suggestion::text)
+				.hasSize(ItemSuggestIndex.MAX_SUGGESTIONS)
+				.startsWith("b002", "b003")
+				.doesNotContain("b000", "b001");
+		assertThat(index.suggest("c", 10)).extracting(ItemSuggestIndex.Suggestion::text).containsExactly("c001");
+	}
+
+	@Test
+	void completesPrefixesLongerThanThePrecomputedLength() {
+		put(1, ItemStatus.LISTED, "ワイヤレスイヤホン ノイズキャンセリング", 1);
+		put(2, ItemStatus.LISTED, "ワイヤレスイヤホン 片耳", 2);
+
+		String longPrefix = "ワイヤレスイヤホン ノイズ";
+		assertThat(longPrefix.length()).isGreaterThan(ItemSuggestIndex.MAX_PREFIX_LENGTH);
+		assertThat(index.suggest(longPrefix, 10)).extracting(ItemSuggestIndex.Suggestion::text)
+				.containsExactly("ワイヤレスイヤホン ノイズキャンセリング");
+		assertThat(index.suggest("ノイズ", 10)).extracting(ItemSuggestIndex.Suggestion::text)
+				.containsExactly("ワイヤレスイヤホン ノイズキャンセリング");
+	}
+}
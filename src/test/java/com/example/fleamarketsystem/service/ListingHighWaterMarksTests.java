@@ -0,0 +1,52 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.fleamarketsystem.entity.ItemStatus;
+
+class ListingHighWaterMarksTests {
+
+	private final ListingHighWaterMarks marks = new ListingHighWaterMarks();
+
+	private static ItemChangedEvent moved(Long categoryId, Long previousCategoryId) {
+		return new ItemChangedEvent(1L, categoryId, previousCategoryId, ItemStatus.LISTED, "本", null,
+				BigDecimal.valueOf(500), LocalDateTime.now(), false);
+	}
+
+	@Test
+	void advancesOnlyAffectedCategoriesAndTheUnfilteredListing() {
+		long category1 = marks.lastModified(1L);
+		long category2 = marks.lastModified(2L);
+		long category3 = marks.lastModified(3L);
+		long unfiltered = marks.lastModified(null);
+
+		marks.onItemChanged(moved(1L, 2L));
+
+		assertThat(marks.lastModified(1L)).isGreaterThan(category1);
+		assertThat(marks.lastModified(2L)).isGreaterThan(category2);
+		assertThat(marks.lastModified(3L)).isEqualTo(category3);
+		assertThat(marks.lastModified(null)).isGreaterThan(unfiltered);
+	}
+
+	@Test
+	void advancesOnEveryChangeEvenWithinTheSameMillisecond() {
+		marks.onItemChanged(moved(1L, 1L));
+		long first = marks.lastModified(1L);
+		marks.onItemChanged(moved(1L, 1L));
+
+		assertThat(marks.lastModified(1L)).isGreaterThan(first);
+	}
+
+	@Test
+	void categoryChangesAffectEveryListing() {
+		long category3 = marks.lastModified(3L);
+		marks.categoriesChanged();
+
+		assertThat(marks.lastModified(3L)).isGreaterThan(category3);
+	}
+}
@@ -0,0 +1,428 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.OrderStatus;
+import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.repository.AppOrderRepository;
+import com.example.fleamarketsystem.repository.ItemRepository;
+import com.example.fleamarketsystem.repository.UserRepository;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.model.PaymentIntent;
+
+/**
+ * 購入・返金で Stripe をトランザクションの外から呼び、前後の状態が DB に残ることを確認する。
+ * 同時に購入した場合に1人だけが商品を予約できること、予約の期限切れで商品が出品中に戻ることも確認する。
+ * 返金は待ち行列に登録してすぐに戻り、RefundWorker が返金すること、失敗した返金が再試行の上限で止まることも確認する。
+ * Stripe の呼び出し中に別のトランザクションから見える状態を確かめるため、テスト全体をトランザクションにはしない。
+ */
+@SpringBootTest(properties = { "refund.max-attempts=2", "refund.backoff-initial-seconds=0" })
+class PaymentFlowTests {
+
+	@MockitoBean
+	private StripeService stripeService;
+
+	@Autowired
+	private AppOrderService appOrderService;
+
+	@Autowired
+	private PaymentRecoveryService paymentRecoveryService;
+
+	@Autowired
+	private RefundQueue refundQueue;
+
+	@Autowired
+	private ChatService chatService;
+
+	@Autowired
+	private RefundWorker refundWorker;
+
+	@Autowired
+	private SalesRollupService salesRollupService;
+
+	@Autowired
+	private AppOrderRepository appOrderRepository;
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private ItemReservations itemReservations;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private User seller;
+	private User buyer;
+	private Item item;
+
+	private User newUser(String name) {
+		User user = new User();
+		user.setName(name);
+		user.setEmail(name + "-" + UUID.randomUUID() + "@example.com");
+		user.setPassword("password");
+		user.setRole("USER");
+		return userRepository.save(user);
+	}
+
+	@BeforeEach
+	void setUp() {
+		seller = newUser("seller");
+		buyer = newUser("buyer");
+		item = new Item();
+		item.setSeller(seller);
+		item.setName("決済テスト");
+		item.setPrice(BigDecimal.valueOf(1200));
+		item.setStatus(ItemStatus.LISTED);
+		item = itemRepository.save(item);
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("delete from refund_request where order_id in (select id from app_order where item_id = ?)",
+				item.getId());
+		jdbcTemplate.update("delete from app_order where item_id = ?", item.getId());
+		jdbcTemplate.update("delete from chat where item_id = ?", item.getId());
+		itemRepository.deleteById(item.getId());
+		userRepository.deleteById(buyer.getId());
+		userRepository.deleteById(seller.getId());
+		salesRollupService.reconcile();
+	}
+
+	private static PaymentIntent paymentIntent(String id, String status) {
+		PaymentIntent paymentIntent = new PaymentIntent();
+		paymentIntent.setId(id);
+		paymentIntent.setStatus(status);
+		return paymentIntent;
+	}
+
+	private OrderStatus orderStatus() {
+		Short code = jdbcTemplate.queryForObject("select status from app_order where item_id = ?", Short.class,
+				item.getId());
+		return OrderStatus.fromCode(code);
+	}
+
+	private Long orderId() {
+		return jdbcTemplate.queryForObject("select id from app_order where item_id = ?", Long.class, item.getId());
+	}
+
+	private ItemStatus itemStatus() {
+		return itemRepository.findById(item.getId()).orElseThrow().getStatus();
+	}
+
+	private Short refundStatus(Long orderId) {
+		List<Short> status = jdbcTemplate.queryForList("select status from refund_request where order_id = ?",
+				Short.class, orderId);
+		return status.isEmpty() ? null : status.get(0);
+	}
+
+	// 返金の待ち行列を処理させながら、注文の返金が status になるまで待つ
+	private void awaitRefund(Long orderId, short status) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!Short.valueOf(status).equals(refundStatus(orderId)) && System.nanoTime() < deadline) {
+			refundWorker.drain();
+			Thread.sleep(50);
+		}
+		assertThat(refundStatus(orderId)).isEqualTo(status);
+	}
+
+	// 購入して決済完了まで進め、取引中の注文にする
+	private Long purchase(String paymentIntentId) throws Exception {
+		when(stripeService.createPaymentIntent(any(), eq("jpy"), anyString(), anyLong(), anyLong()))
+				.thenReturn(paymentIntent(paymentIntentId, "requires_payment_method"));
+		when(stripeService.retrievePaymentIntent(paymentIntentId))
+				.thenReturn(paymentIntent(paymentIntentId, "succeeded"));
+		appOrderService.initiatePurchase(item.getId(), buyer);
+		appOrderService.completePurchase(paymentIntentId);
+		return orderId();
+	}
+
+	@Test
+	void paymentIntentIsCreatedOutsideTransactionAfterOrderIsRecorded() throws Exception {
+		when(stripeService.createPaymentIntent(any(), eq("jpy"), anyString(), anyLong(), anyLong())).thenAnswer(invocation -> {
+			assertThat(TransactionSynchronizationManager.isActualTransactionActive()).isFalse();
+			// 呼び出しの前に「決済準備中」の注文と商品の予約がコミットされている
+			assertThat(orderStatus()).isEqualTo(OrderStatus.PAYMENT_CREATING);
+			assertThat(itemStatus()).isEqualTo(ItemStatus.LISTED);
+			assertThat(itemRepository.findById(item.getId()).orElseThrow().isReserved()).isTrue();
+			assertThat(invocation.getArgument(3, Long.class)).isEqualTo(orderId());
+			return paymentIntent("pi_flow_create", "requires_payment_method");
+		});
+
+		appOrderService.initiatePurchase(item.getId(), buyer);
+
+		assertThat(orderStatus()).isEqualTo(OrderStatus.PAYMENT_PENDING);
+		assertThat(appOrderRepository.findById(orderId()).orElseThrow().getPaymentIntentId())
+				.isEqualTo("pi_flow_create");
+		Item reserved = itemRepository.findById(item.getId()).orElseThrow();
+		assertThat(reserved.getStatus()).isEqualTo(ItemStatus.LISTED);
+		assertThat(reserved.getReservationOrderId()).isEqualTo(orderId());
+		assertThat(reserved.getReservedUntil()).isAfter(LocalDateTime.now());
+		// 予約中も一覧から消えず、「購入手続き中」として表示される
+		assertThat(itemRepository.findListed(PageRequest.of(0, Integer.MAX_VALUE)).getContent())
+				.filteredOn(listed -> listed.getId().equals(item.getId()))
+				.singleElement()
+				.satisfies(listed -> assertThat(listed.isReserved()).isTrue());
+		// 予約中の商品は重ねて購入できない。メモリ上の予約表を持たない別のサーバーで受け付けた場合も DB の予約で断る
+		itemReservations.release(item.getId(), orderId());
+		assertThatThrownBy(() -> appOrderService.initiatePurchase(item.getId(), buyer))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void failedPaymentIntentCreationMarksOrderFailed() throws Exception {
+		when(stripeService.createPaymentIntent(any(), anyString(), anyString(), anyLong(), anyLong()))
+				.thenThrow(new ApiConnectionException("timeout"));
+
+		assertThatThrownBy(() -> appOrderService.initiatePurchase(item.getId(), buyer))
+				.isInstanceOf(ApiConnectionException.class);
+
+		assertThat(orderStatus()).isEqualTo(OrderStatus.PAYMENT_FAILED);
+		// 予約は解かれ、再び購入できる
+		assertThat(itemStatus()).isEqualTo(ItemStatus.LISTED);
+	}
+
+	@Test
+	void concurrentBuyersReserveItemOnlyOnce() throws Exception {
+		when(stripeService.createPaymentIntent(any(), anyString(), anyString(), anyLong(), anyLong()))
+				.thenAnswer(invocation -> paymentIntent("pi_flow_" + invocation.getArgument(3),
+						"requires_payment_method"));
+		int buyers = 8;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(buyers);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < buyers; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					try {
+						appOrderService.initiatePurchase(item.getId(), buyer);
+						return true;
+					} catch (IllegalStateException e) {
+						return false;
+					}
+				}));
+			}
+			start.countDown();
+			int winners = 0;
+			for (Future<Boolean> result : results) {
+				winners += result.get(30, TimeUnit.SECONDS) ? 1 : 0;
+			}
+			assertThat(winners).isEqualTo(1);
+		} finally {
+			executor.shutdownNow();
+		}
+		assertThat(orderStatus()).isEqualTo(OrderStatus.PAYMENT_PENDING);
+		assertThat(itemStatus()).isEqualTo(ItemStatus.LISTED);
+		assertThat(itemRepository.findById(item.getId()).orElseThrow().getReservationOrderId()).isEqualTo(orderId());
+	}
+
+	@Test
+	void chatMessagesDoNotConflictWithPurchase() throws Exception {
+		Item before = itemRepository.findById(item.getId()).orElseThrow();
+
+		chatService.sendMessage(item.getId(), buyer, "値下げできますか？");
+
+		// 検証子（更新日時）は進むが、バージョンは変わらない
+		Item after = itemRepository.findById(item.getId()).orElseThrow();
+		assertThat(after.getVersion()).isEqualTo(before.getVersion());
+		assertThat(after.getUpdatedAt()).isAfter(before.getUpdatedAt());
+		when(stripeService.createPaymentIntent(any(), anyString(), anyString(), anyLong(), anyLong()))
+				.thenReturn(paymentIntent("pi_flow_chat", "requires_payment_method"));
+		appOrderService.initiatePurchase(item.getId(), buyer);
+		assertThat(orderStatus()).isEqualTo(OrderStatus.PAYMENT_PENDING);
+	}
+
+	// 決済待ちのまま予約の期限が切れた状態を作る
+	private Long abandonedCheckout(String paymentIntentId) throws Exception {
+		when(stripeService.createPaymentIntent(any(), anyString(), anyString(), anyLong(), anyLong()))
+				.thenReturn(paymentIntent(paymentIntentId, "requires_payment_method"));
+		appOrderService.initiatePurchase(item.getId(), buyer);
+		Long orderId = orderId();
+		jdbcTemplate.update("update app_order set created_at = now() - interval '1 day' where id = ?", orderId);
+		assertThat(appOrderService.findExpiredReservationIds(Integer.MAX_VALUE)).contains(orderId);
+		return orderId;
+	}
+
+	@Test
+	void expiredReservationCancelsPaymentIntentAndRelistsItem() throws Exception {
+		Long orderId = abandonedCheckout("pi_flow_expire");
+		when(stripeService.cancelPaymentIntent("pi_flow_expire")).thenAnswer(invocation -> {
+			assertThat(TransactionSynchronizationManager.isActualTransactionActive()).isFalse();
+			return paymentIntent("pi_flow_expire", "canceled");
+		});
+
+		assertThat(appOrderService.expireReservation(orderId)).isTrue();
+
+		assertThat(orderStatus()).isEqualTo(OrderStatus.EXPIRED);
+		Item relisted = itemRepository.findById(item.getId()).orElseThrow();
+		assertThat(relisted.getStatus()).isEqualTo(ItemStatus.LISTED);
+		assertThat(relisted.isReserved()).isFalse();
+		assertThat(appOrderService.findExpiredReservationIds(Integer.MAX_VALUE)).doesNotContain(orderId);
+	}
+
+	@Test
+	void paymentJustBeforeExpiryStartsTrading() throws Exception {
+		Long orderId = abandonedCheckout("pi_flow_late");
+		when(stripeService.cancelPaymentIntent("pi_flow_late"))
+				.thenReturn(paymentIntent("pi_flow_late", "succeeded"));
+
+		assertThat(appOrderService.expireReservation(orderId)).isTrue();
+
+		assertThat(orderStatus()).isEqualTo(OrderStatus.TRADING);
+		Item traded = itemRepository.findById(item.getId()).orElseThrow();
+		assertThat(traded.getStatus()).isEqualTo(ItemStatus.TRADING);
+		assertThat(traded.isReserved()).isFalse();
+	}
+
+	@Test
+	void refundIsQueuedAndCalledOutsideTransaction() throws Exception {
+		Long orderId = purchase("pi_flow_refund");
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicBoolean outsideTransaction = new AtomicBoolean();
+		AtomicReference<OrderStatus> statusDuringRefund = new AtomicReference<>();
+		doAnswer(invocation -> {
+			outsideTransaction.set(!TransactionSynchronizationManager.isActualTransactionActive());
+			statusDuringRefund.set(orderStatus());
+			release.await(10, TimeUnit.SECONDS);
+			return null;
+		}).when(stripeService).refund("pi_flow_refund", RefundQueue.idempotencyKey(orderId));
+
+		// 返金の完了を待たずに戻る。受け付け済みの注文は重ねて返金できない
+		appOrderService.forceCancelByAdmin(orderId, "テスト");
+		assertThat(orderStatus()).isEqualTo(OrderStatus.REFUNDING);
+		assertThat(itemStatus()).isEqualTo(ItemStatus.TRADING);
+		assertThatThrownBy(() -> appOrderService.finalCancel(orderId)).isInstanceOf(IllegalStateException.class);
+
+		release.countDown();
+		awaitRefund(orderId, RefundQueue.DONE);
+
+		assertThat(outsideTransaction).isTrue();
+		assertThat(statusDuringRefund.get()).isEqualTo(OrderStatus.REFUNDING);
+		assertThat(orderStatus()).isEqualTo(OrderStatus.CANCELLED);
+		assertThat(itemStatus()).isEqualTo(ItemStatus.LISTED);
+	}
+
+	@Test
+	void failedRefundIsRetriedUntilLimitThenCanBeRetriedByAdmin() throws Exception {
+		Long orderId = purchase("pi_flow_refund_fail");
+		doThrow(new ApiConnectionException("timeout")).when(stripeService)
+				.refund(eq("pi_flow_refund_fail"), anyString());
+
+		appOrderService.forceCancelByAdmin(orderId, "テスト");
+		awaitRefund(orderId, RefundQueue.DEAD);
+
+		// refund.max-attempts=2 回で止まり、注文は返金処理中のまま管理画面に出る
+		assertThat(refundQueue.findFailed(100)).filteredOn(refund -> refund.orderId().equals(orderId))
+				.singleElement()
+				.satisfies(refund -> {
+					assertThat(refund.attempts()).isEqualTo(2);
+					assertThat(refund.lastError()).contains("timeout");
+				});
+		assertThat(orderStatus()).isEqualTo(OrderStatus.REFUNDING);
+		assertThat(itemStatus()).isEqualTo(ItemStatus.TRADING);
+
+		doNothing().when(stripeService).refund(eq("pi_flow_refund_fail"), anyString());
+		assertThat(refundWorker.retry(orderId)).isTrue();
+		awaitRefund(orderId, RefundQueue.DONE);
+
+		assertThat(orderStatus()).isEqualTo(OrderStatus.CANCELLED);
+		assertThat(itemStatus()).isEqualTo(ItemStatus.LISTED);
+		assertThat(refundQueue.findFailed(100)).noneMatch(refund -> refund.orderId().equals(orderId));
+	}
+
+	@Test
+	void cancelRequestIsRefusedWhilePaymentIsPending() throws Exception {
+		Long orderId = abandonedCheckout("pi_flow_cancel_pending");
+
+		assertThatThrownBy(() -> appOrderService.requestCancel(orderId, buyer))
+				.isInstanceOf(IllegalStateException.class);
+
+		// 予約は期限切れの掃除の対象に残り、商品は出品中に戻せる
+		assertThat(orderStatus()).isEqualTo(OrderStatus.PAYMENT_PENDING);
+		assertThat(appOrderService.findExpiredReservationIds(Integer.MAX_VALUE)).contains(orderId);
+		when(stripeService.cancelPaymentIntent("pi_flow_cancel_pending"))
+				.thenReturn(paymentIntent("pi_flow_cancel_pending", "canceled"));
+		assertThat(appOrderService.expireReservation(orderId)).isTrue();
+		assertThat(itemRepository.findById(item.getId()).orElseThrow().isReserved()).isFalse();
+	}
+
+	@Test
+	void cancelRequestIsRefusedWhileRefunding() throws Exception {
+		Long orderId = purchase("pi_flow_cancel_refunding");
+		jdbcTemplate.update("update app_order set status = ? where id = ?", OrderStatus.REFUNDING.getCode(), orderId);
+
+		assertThatThrownBy(() -> appOrderService.requestCancel(orderId, buyer))
+				.isInstanceOf(IllegalStateException.class);
+		assertThat(orderStatus()).isEqualTo(OrderStatus.REFUNDING);
+	}
+
+	@Test
+	void cancelApprovalRequiresBuyerRequest() throws Exception {
+		Long orderId = purchase("pi_flow_cancel_approve");
+
+		// 購入者の申請がない取引中の注文は承認できない
+		assertThatThrownBy(() -> appOrderService.approveCancel(orderId, seller))
+				.isInstanceOf(IllegalStateException.class);
+		assertThat(orderStatus()).isEqualTo(OrderStatus.TRADING);
+
+		appOrderService.requestCancel(orderId, buyer);
+		appOrderService.approveCancel(orderId, seller);
+		assertThat(orderStatus()).isEqualTo(OrderStatus.CANCEL_AGREED);
+
+		// 承認済みの注文を重ねて承認することもできない
+		assertThatThrownBy(() -> appOrderService.approveCancel(orderId, seller))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void recoveryFinishesStalledOrders() throws Exception {
+		Long orderId = purchase("pi_flow_recover");
+		// 返金処理中のまま、待ち行列に登録されずに止まった状態を作る
+		jdbcTemplate.update("update app_order set status = ?, updated_at = now() - interval '1 day' where id = ?",
+				OrderStatus.REFUNDING.getCode(), orderId);
+
+		paymentRecoveryService.recover();
+		awaitRefund(orderId, RefundQueue.DONE);
+
+		assertThat(orderStatus()).isEqualTo(OrderStatus.CANCELLED);
+		assertThat(itemStatus()).isEqualTo(ItemStatus.LISTED);
+	}
+}
@@ -0,0 +1,183 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.repository.ItemRepository;
+import com.example.fleamarketsystem.repository.UserRepository;
+import com.stripe.model.PaymentIntent;
+
+/**
+ * 1つの商品に N 人が同時に購入した場合の競合を測る。
+ * 通常のテストでは実行しない: mvn test -Dgroups=benchmark -Dtest.excludedGroups=
+ * 人数と回数は -Dbenchmark.purchase.buyers=64 -Dbenchmark.purchase.rounds=20 のように変えられる。
+ * 毎回新しい商品を用意し、全員を同時に走らせて、1人だけが予約できること・全体の処理件数/秒・失敗した側の応答時間を出力する。
+ * Stripe はモックにし、DB の競合だけを測る。
+ */
+@Tag("benchmark")
+@SpringBootTest
+class PurchaseContentionBenchmarkTests {
+
+	private static final int BUYERS = Integer.getInteger("benchmark.purchase.buyers", 64);
+	private static final int ROUNDS = Integer.getInteger("benchmark.purchase.rounds", 20);
+
+	@MockitoBean
+	private StripeService stripeService;
+
+	@Autowired
+	private AppOrderService appOrderService;
+
+	@Autowired
+	private SalesRollupService salesRollupService;
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private User seller;
+	private final List<User> buyers = new ArrayList<>();
+	private final List<Long> itemIds = new ArrayList<>();
+
+	// 購入1件の結果。成否と、開始の合図から戻るまでの時間
+	private record Attempt(boolean won, long nanos) {
+	}
+
+	private User newUser(String name) {
+		User user = new User();
+		user.setName(name);
+		user.setEmail(name + "-" + UUID.randomUUID() + "@example.com");
+		user.setPassword("password");
+		user.setRole("USER");
+		return userRepository.save(user);
+	}
+
+	@BeforeEach
+	void setUp() throws Exception {
+		seller = newUser("contention-seller");
+		for (int i = 0; i < BUYERS; i++) {
+			buyers.add(newUser("contention-buyer"));
+		}
+		when(stripeService.createPaymentIntent(any(), anyString(), anyString(), anyLong(), anyLong())).thenAnswer(invocation -> {
+			PaymentIntent paymentIntent = new PaymentIntent();
+			paymentIntent.setId("pi_contention_" + invocation.getArgument(3));
+			paymentIntent.setStatus("requires_payment_method");
+			return paymentIntent;
+		});
+	}
+
+	@AfterEach
+	void tearDown() {
+		for (Long itemId : itemIds) {
+			jdbcTemplate.update("delete from app_order where item_id = ?", itemId);
+			itemRepository.deleteById(itemId);
+		}
+		buyers.forEach(buyer -> userRepository.deleteById(buyer.getId()));
+		userRepository.deleteById(seller.getId());
+		salesRollupService.reconcile();
+	}
+
+	@Test
+	void exactlyOneBuyerWinsEachItem() throws Exception {
+		// 1回目は JIT やコネクションの準備を含むため捨てる
+		round();
+
+		List<Long> loserNanos = new ArrayList<>();
+		long attempts = 0;
+		long totalNanos = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			List<Attempt> results = round();
+			totalNanos += System.nanoTime() - start;
+			attempts += results.size();
+			results.stream().filter(attempt -> !attempt.won()).forEach(attempt -> loserNanos.add(attempt.nanos()));
+		}
+
+		long[] sorted = loserNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+		System.out.printf("%d buyers x %d rounds: %,.0f purchases/s, loser latency p50 %.2f ms, p99 %.2f ms,"
+				+ " max %.2f ms%n", BUYERS, ROUNDS, attempts * 1e9 / totalNanos, percentile(sorted, 0.50) / 1e6,
+				percentile(sorted, 0.99) / 1e6, sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0.0);
+		assertThat(sorted).hasSize((BUYERS - 1) * ROUNDS);
+	}
+
+	// 新しい商品に全員で同時に購入し、1人だけが予約できたことを確かめる
+	private List<Attempt> round() throws Exception {
+		Item item = new Item();
+		item.setSeller(seller);
+		item.setName("競合テスト");
+		item.setPrice(BigDecimal.valueOf(1000));
+		item.setStatus(ItemStatus.LISTED);
+		item = itemRepository.save(item);
+		itemIds.add(item.getId());
+		Long itemId = item.getId();
+
+		CountDownLatch ready = new CountDownLatch(BUYERS);
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(BUYERS);
+		List<Attempt> attempts = new ArrayList<>();
+		try {
+			List<Future<Attempt>> futures = new ArrayList<>();
+			for (User buyer : buyers) {
+				futures.add(executor.submit(() -> {
+					ready.countDown();
+					start.await();
+					long begin = System.nanoTime();
+					try {
+						appOrderService.initiatePurchase(itemId, buyer);
+						return new Attempt(true, System.nanoTime() - begin);
+					} catch (IllegalStateException e) {
+						return new Attempt(false, System.nanoTime() - begin);
+					}
+				}));
+			}
+			ready.await();
+			start.countDown();
+			for (Future<Attempt> future : futures) {
+				attempts.add(future.get(60, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(attempts.stream().filter(Attempt::won)).hasSize(1);
+		assertThat(jdbcTemplate.queryForObject("select count(*) from app_order where item_id = ?", Long.class,
+				itemId)).isEqualTo(1);
+		return attempts;
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+	}
+}
@@ -0,0 +1,31 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 失敗した返金の再試行間隔（倍々に増え、上限で頭打ち。±20% ずらす）を確認する（待ち行列は使わない）。
+ */
+class RefundWorkerTests {
+
+	private final RefundWorker worker = new RefundWorker(null, null, null, 1, 10, 8, 30, 3600);
+
+	@AfterEach
+	void tearDown() {
+		worker.shutdown();
+	}
+
+	@Test
+	void backoffDoublesUpToMaximum() {
+		assertThat(worker.backoff(1)).isBetween(Duration.ofSeconds(24), Duration.ofSeconds(36));
+		assertThat(worker.backoff(2)).isBetween(Duration.ofSeconds(48), Duration.ofSeconds(72));
+		assertThat(worker.backoff(4)).isBetween(Duration.ofSeconds(192), Duration.ofSeconds(288));
+		assertThat(worker.backoff(8)).isBetween(Duration.ofSeconds(2880), Duration.ofSeconds(4320));
+		// 試行回数が大きくても桁あふれせず上限に留まる
+		assertThat(worker.backoff(100)).isBetween(Duration.ofSeconds(2880), Duration.ofSeconds(4320));
+	}
+}
@@ -0,0 +1,160 @@
+package com.example.fleamarketsystem.service;
+
+import static java.util.Map.entry;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import jakarta.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.fleamarketsystem.entity.AppOrder;
+import com.example.fleamarketsystem.entity.Category;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.OrderStatus;
+import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.service.SalesStatisticsService.CategorySales;
+import com.example.fleamarketsystem.service.SalesStatisticsService.Granularity;
+import com.example.fleamarketsystem.service.SalesStatisticsService.PeriodSales;
+import com.example.fleamarketsystem.service.SalesStatisticsService.SellerSales;
+
+/**
+ * 統計の集計結果を確認する。既存のデータと重ならないよう、注文日は 1999 年にする（日別集計から読まれる）。
+ * 1999-03-01 は月曜日。
+ */
+@SpringBootTest
+@Transactional
+class SalesStatisticsServiceTests {
+
+	private static final LocalDate START = LocalDate.of(1999, 3, 1);
+	private static final LocalDate END = LocalDate.of(1999, 3, 31);
+
+	@Autowired
+	private SalesStatisticsService salesStatisticsService;
+
+	@Autowired
+	private SalesRollupService salesRollupService;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	private User sellerA;
+	private User sellerB;
+	private Category categoryX;
+	private Category categoryY;
+
+	private User newUser(String name) {
+		User user = new User();
+		user.setName(name);
+		user.setEmail(name + "-" + UUID.randomUUID() + "@example.com");
+		user.setPassword("password");
+		user.setRole("USER");
+		entityManager.persist(user);
+		return user;
+	}
+
+	private Category newCategory(String name) {
+		Category category = new Category();
+		category.setName(name + "-" + UUID.randomUUID());
+		entityManager.persist(category);
+		return category;
+	}
+
+	private void newOrder(User seller, Category category, User buyer, int price, OrderStatus status,
+			LocalDateTime createdAt) {
+		Item item = new Item();
+		item.setSeller(seller);
+		item.setCategory(category);
+		item.setName("商品");
+		item.setPrice(BigDecimal.valueOf(price));
+		item.setStatus(ItemStatus.SOLD);
+		entityManager.persist(item);
+		AppOrder order = new AppOrder();
+		order.setItem(item);
+		order.setBuyer(buyer);
+		order.setPrice(item.getPrice());
+		order.setStatus(status);
+		order.setCreatedAt(createdAt);
+		entityManager.persist(order);
+	}
+
+	@BeforeEach
+	void setUp() {
+		sellerA = newUser("sellerA");
+		sellerB = newUser("sellerB");
+		User buyer = newUser("buyer");
+		categoryX = newCategory("X");
+		categoryY = newCategory("Y");
+		newOrder(sellerA, categoryX, buyer, 1000, OrderStatus.COMPLETED, LocalDateTime.of(1999, 3, 1, 10, 0));
+		newOrder(sellerA, categoryX, buyer, 2000, OrderStatus.COMPLETED, LocalDateTime.of(1999, 3, 2, 23, 59));
+		newOrder(sellerB, categoryY, buyer, 500, OrderStatus.COMPLETED, LocalDateTime.of(1999, 3, 9, 0, 0));
+		newOrder(sellerB, categoryY, buyer, 700, OrderStatus.CANCELLED, LocalDateTime.of(1999, 3, 9, 12, 0));
+		// 期間外（終了日の翌日）
+		newOrder(sellerB, categoryY, buyer, 9999, OrderStatus.COMPLETED, LocalDateTime.of(1999, 4, 1, 0, 0));
+		entityManager.flush();
+		entityManager.clear();
+		// 注文を直接登録したため、日別集計は再集計で作る
+		salesRollupService.reconcile();
+	}
+
+	@Test
+	void totalsOnlyCountOrdersInRange() {
+		assertThat(salesStatisticsService.getTotalSales(START, END)).isEqualByComparingTo("3500");
+		assertThat(salesStatisticsService.getOrderCountByStatus(START, END))
+				.containsExactly(entry(OrderStatus.COMPLETED.getLabel(), 3L),
+						entry(OrderStatus.CANCELLED.getLabel(), 1L));
+	}
+
+	@Test
+	void dailySeriesIncludesEmptyDays() {
+		List<PeriodSales> series = salesStatisticsService.getSalesByPeriod(Granularity.DAY, START, END);
+
+		assertThat(series).hasSize(31);
+		assertThat(series.get(0)).extracting(PeriodSales::start, PeriodSales::orders).containsExactly(START, 1L);
+		assertThat(series.get(2).orders()).isZero();
+		assertThat(series.get(2).sales()).isEqualByComparingTo("0");
+		// キャンセルは件数に含め、売上には含めない
+		assertThat(series.get(8).orders()).isEqualTo(2);
+		assertThat(series.get(8).sales()).isEqualByComparingTo("500");
+	}
+
+	@Test
+	void weeklyAndMonthlySeriesGroupByCalendarUnit() {
+		List<PeriodSales> weeks = salesStatisticsService.getSalesByPeriod(Granularity.WEEK, START, END);
+		assertThat(weeks).extracting(PeriodSales::start).containsExactly(START, START.plusWeeks(1),
+				START.plusWeeks(2), START.plusWeeks(3), START.plusWeeks(4));
+		assertThat(weeks.get(0).orders()).isEqualTo(2);
+		assertThat(weeks.get(0).sales()).isEqualByComparingTo("3000");
+
+		List<PeriodSales> months = salesStatisticsService.getSalesByPeriod(Granularity.MONTH, START, END);
+		assertThat(months).hasSize(1);
+		assertThat(months.get(0).orders()).isEqualTo(4);
+		assertThat(months.get(0).sales()).isEqualByComparingTo("3500");
+	}
+
+	@Test
+	void categoriesAndSellersAreRankedBySales() {
+		List<CategorySales> categories = salesStatisticsService.getSalesByCategory(START, END);
+		assertThat(categories).extracting(CategorySales::categoryId, CategorySales::orders)
+				.containsExactly(tuple(categoryX.getId(), 2L),
+						tuple(categoryY.getId(), 2L));
+		assertThat(categories.get(0).sales()).isEqualByComparingTo("3000");
+
+		List<SellerSales> sellers = salesStatisticsService.getTopSellers(START, END, 10);
+		assertThat(sellers).extracting(SellerSales::sellerId, SellerSales::orders)
+				.containsExactly(tuple(sellerA.getId(), 2L),
+						tuple(sellerB.getId(), 1L));
+		assertThat(salesStatisticsService.getTopSellers(START, END, 1)).hasSize(1);
+	}
+}
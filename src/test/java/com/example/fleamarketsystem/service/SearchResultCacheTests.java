@@ -0,0 +1,85 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.fleamarketsystem.entity.ItemStatus;
+
+class SearchResultCacheTests {
+
+	private SearchResultCache cache;
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() {
+		cache = new SearchResultCache(100, 60);
+	}
+
+	private String load(SearchResultCache.Key key) {
+		return cache.get(key, () -> "result-" + loads.incrementAndGet());
+	}
+
+	private static SearchResultCache.Key key(String keyword, Long categoryId) {
+		return new SearchResultCache.Key(keyword, categoryId, "page:0", 20);
+	}
+
+	private static ItemChangedEvent changed(Long categoryId, Long previousCategoryId) {
+		return new ItemChangedEvent(1L, categoryId, previousCategoryId, ItemStatus.SOLD, "本", null,
+				BigDecimal.valueOf(500), LocalDateTime.now(), false);
+	}
+
+	@Test
+	void returnsCachedPageAndRecordsStats() {
+		assertThat(load(key("本", 1L))).isEqualTo("result-1");
+		assertThat(load(key("本", 1L))).isEqualTo("result-1");
+		assertThat(load(key("本", 2L))).isEqualTo("result-2");
+
+		assertThat(cache.stats().hitCount()).isEqualTo(1);
+		assertThat(cache.stats().missCount()).isEqualTo(2);
+	}
+
+	@Test
+	void invalidatesOnlyAffectedCategoriesAndUncategorizedQueries() {
+		load(key("", 1L));
+		load(key("", 2L));
+		load(key("", 3L));
+		load(key("", null));
+
+		cache.onItemChanged(changed(1L, 2L));
+
+		assertThat(load(key("", 3L))).isEqualTo("result-3");
+		assertThat(load(key("", 1L))).isEqualTo("result-5");
+		assertThat(load(key("", 2L))).isEqualTo("result-6");
+		assertThat(load(key("", null))).isEqualTo("result-7");
+	}
+
+	@Test
+	void keywordEntriesOfOtherCategoriesStayCached() {
+		load(key("本", 1L));
+		load(key("本", 3L));
+
+		cache.onItemChanged(changed(1L, 1L));
+
+		assertThat(load(key("本", 3L))).isEqualTo("result-2");
+		assertThat(load(key("本", 1L))).isEqualTo("result-3");
+	}
+
+	@Test
+	void pageLoadedWhileChangeCommitsIsNotServedAfterIt() {
+		// 読み込みの途中で変更がコミットされた（読み込みは変更前の内容を返す）
+		String stale = cache.get(key("", 1L), () -> {
+			cache.onItemChanged(changed(1L, 1L));
+			return "stale";
+		});
+		assertThat(stale).isEqualTo("stale");
+
+		assertThat(load(key("", 1L))).isEqualTo("result-1");
+		assertThat(load(key("", null))).isEqualTo("result-2");
+	}
+}
@@ -0,0 +1,95 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.example.fleamarketsystem.entity.Category;
+import com.example.fleamarketsystem.entity.User;
+
+/**
+ * Category / User の2次キャッシュとクエリキャッシュが効き、更新時に無効化されることを SQL の件数で確認する。
+ * キャッシュはコミット後に反映されるため、テスト全体をトランザクションにはしない。
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class SecondLevelCacheTests {
+
+	@Autowired
+	private CategoryService categoryService;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private AdminUserService adminUserService;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+	private Category category;
+	private User user;
+
+	@BeforeEach
+	void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		category = new Category();
+		category.setName("category-" + UUID.randomUUID());
+		category = categoryService.saveCategory(category);
+
+		user = new User();
+		user.setName("cache-user");
+		user.setEmail("cache-" + UUID.randomUUID() + "@example.com");
+		user.setPassword("password");
+		user.setRole("USER");
+		user = userService.saveUser(user);
+	}
+
+	@AfterEach
+	void tearDown() {
+		categoryService.deleteCategory(category.getId());
+		userService.deleteUser(user.getId());
+	}
+
+	@Test
+	void categoryListIsServedFromQueryCacheUntilCategoriesChange() {
+		categoryService.getAllCategories();
+
+		statistics.clear();
+		assertThat(categoryService.getAllCategories()).extracting(Category::getName).contains(category.getName());
+		assertThat(statistics.getPrepareStatementCount()).isZero();
+
+		category.setName("renamed-" + UUID.randomUUID());
+		categoryService.saveCategory(category);
+
+		statistics.clear();
+		assertThat(categoryService.getAllCategories()).extracting(Category::getName).contains(category.getName());
+		assertThat(statistics.getPrepareStatementCount()).isPositive();
+	}
+
+	@Test
+	void userLookupByEmailSeesBanImmediately() {
+		userService.getUserByEmail(user.getEmail());
+
+		statistics.clear();
+		assertThat(userService.getUserByEmail(user.getEmail())).get().extracting(User::isBanned).isEqualTo(false);
+		assertThat(statistics.getPrepareStatementCount()).isZero();
+
+		adminUserService.banUser(user.getId(), null, "テスト", false);
+		assertThat(userService.getUserByEmail(user.getEmail())).get().extracting(User::isBanned).isEqualTo(true);
+
+		adminUserService.unbanUser(user.getId());
+		assertThat(userService.getUserByEmail(user.getEmail())).get().extracting(User::isBanned).isEqualTo(false);
+	}
+}
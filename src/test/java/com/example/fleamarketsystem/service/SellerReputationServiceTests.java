@@ -0,0 +1,117 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import jakarta.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.fleamarketsystem.entity.AppOrder;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.OrderStatus;
+import com.example.fleamarketsystem.entity.SellerReputation;
+import com.example.fleamarketsystem.entity.User;
+
+@SpringBootTest
+@Transactional
+class SellerReputationServiceTests {
+
+	@Autowired
+	private ReviewService reviewService;
+
+	@Autowired
+	private SellerReputationService sellerReputationService;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private User newUser(String name) {
+		User user = new User();
+		user.setName(name);
+		user.setEmail(name + "-" + UUID.randomUUID() + "@example.com");
+		user.setPassword("password");
+		user.setRole("USER");
+		entityManager.persist(user);
+		return user;
+	}
+
+	private Long newOrder(User seller, User buyer) {
+		Item item = new Item();
+		item.setSeller(seller);
+		item.setName("商品");
+		item.setPrice(BigDecimal.valueOf(1000));
+		item.setStatus(ItemStatus.SOLD);
+		entityManager.persist(item);
+		AppOrder order = new AppOrder();
+		order.setItem(item);
+		order.setBuyer(buyer);
+		order.setPrice(item.getPrice());
+		order.setStatus(OrderStatus.COMPLETED);
+		entityManager.persist(order);
+		return order.getId();
+	}
+
+	private SellerReputation reload(User seller) {
+		entityManager.flush();
+		entityManager.clear();
+		return sellerReputationService.getReputation(seller.getId());
+	}
+
+	@Test
+	void submitReviewUpdatesAggregate() {
+		User seller = newUser("seller");
+		User buyer = newUser("buyer");
+		reviewService.submitReview(newOrder(seller, buyer), buyer, 5, "良い");
+		reviewService.submitReview(newOrder(seller, buyer), buyer, 2, null);
+
+		SellerReputation reputation = reload(seller);
+		assertThat(reputation.getReviewCount()).isEqualTo(2);
+		assertThat(reputation.getAverageRating()).isEqualTo(3.5);
+		assertThat(reputation.getStarCounts()).containsExactly(0L, 1L, 0L, 0L, 1L);
+	}
+
+	@Test
+	void reconcileRepairsDrift() {
+		User seller = newUser("seller");
+		User buyer = newUser("buyer");
+		reviewService.submitReview(newOrder(seller, buyer), buyer, 4, null);
+		entityManager.flush();
+		jdbcTemplate.update("update seller_reputation set review_count = 9, star4 = 0 where seller_id = ?",
+				seller.getId());
+
+		assertThat(sellerReputationService.reconcile()).isPositive();
+
+		SellerReputation reputation = reload(seller);
+		assertThat(reputation.getReviewCount()).isEqualTo(1);
+		assertThat(reputation.getStarCounts()).containsExactly(0L, 0L, 0L, 1L, 0L);
+		assertThat(sellerReputationService.reconcile()).isZero();
+	}
+
+	// 起動時（ApplicationRunner）と夜間の再集計はトランザクションの外から呼ばれる。
+	// 集計表は review から作り直せるため、空にしてから起動時の処理で元に戻す
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	void startupRebuildsEmptyTableOutsideTransaction() {
+		Long sellers = jdbcTemplate.queryForObject("select count(distinct seller_id) from review", Long.class);
+		jdbcTemplate.update("delete from seller_reputation");
+
+		sellerReputationService.run(new DefaultApplicationArguments());
+
+		assertThat(jdbcTemplate.queryForObject("select count(*) from seller_reputation", Long.class))
+				.isEqualTo(sellers);
+		sellerReputationService.scheduledReconcile();
+	}
+}
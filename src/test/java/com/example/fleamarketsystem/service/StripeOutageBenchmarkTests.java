@@ -0,0 +1,113 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.example.fleamarketsystem.util.LatencyHistogram;
+
+/**
+ * 偽の Stripe サーバー（FakeStripeServer）に並行して PaymentIntent の作成を送り、Stripe が正常・遅延・障害のときの
+ * 応答時間と、サーキットブレーカーが Stripe に送らずに断った件数を測る。ネットワークにはつながない。
+ * 通常のテストでは実行しない: mvn test -Dgroups=benchmark -Dtest.excludedGroups=
+ * 並行数と件数は -Dbenchmark.stripe.threads=64 -Dbenchmark.stripe.calls=5000 のように変えられる。
+ */
+@Tag("benchmark")
+class StripeOutageBenchmarkTests {
+
+	private static final int THREADS = Integer.getInteger("benchmark.stripe.threads", 32);
+	private static final int CALLS = Integer.getInteger("benchmark.stripe.calls", 2_000);
+
+	private FakeStripeServer server;
+	private ExecutorService executor;
+	private final AtomicLong orderIds = new AtomicLong();
+
+	// 1つの状況の結果。sent は偽の Stripe サーバーが受け取った件数
+	private record Result(String name, long millis, long succeeded, long sent, StripeService.OperationStats stats) {
+	}
+
+	@BeforeEach
+	void setUp() throws Exception {
+		server = new FakeStripeServer();
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+		server.close();
+	}
+
+	@Test
+	void circuitBreakerShedsLoadDuringOutage() throws Exception {
+		Result healthy = run("正常", 20, 0);
+		Result slow = run("遅延", 1_000, 0);
+		Result outage = run("障害", 20, 1.0);
+		Result flaky = run("一部失敗", 20, 0.1);
+
+		for (Result result : List.of(healthy, slow, outage, flaky)) {
+			print(result);
+		}
+		assertThat(healthy.succeeded()).isEqualTo(CALLS);
+		// 障害中はブレーカーが開き、ほとんどの呼び出しを Stripe に送らずに断る
+		assertThat(outage.sent()).isLessThan(CALLS / 10);
+		assertThat(slow.sent()).isLessThan(CALLS / 10);
+	}
+
+	// latencyMillis の遅延と failureRate の割合の 500 を返す偽の Stripe に、CALLS 件を THREADS 並行で送る
+	private Result run(String name, long latencyMillis, double failureRate) throws Exception {
+		// 応答待ちは 500 ms、SDK の再送なし、5回続けて失敗したら 60 秒止める
+		StripeService stripeService = new StripeService("sk_test_fake", server.baseUrl(), 1_000, 500, 0, 5, 60);
+		server.setLatencyMillis(latencyMillis);
+		server.setFailureRate(failureRate);
+		long sentBefore = server.requests();
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> futures = new ArrayList<>(CALLS);
+		for (int i = 0; i < CALLS; i++) {
+			futures.add(executor.submit(() -> {
+				start.await();
+				long orderId = orderIds.incrementAndGet();
+				try {
+					stripeService.createPaymentIntent(BigDecimal.valueOf(1200), "jpy", "benchmark", orderId, orderId);
+					return true;
+				} catch (Exception e) {
+					return false;
+				}
+			}));
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		long succeeded = 0;
+		for (Future<Boolean> future : futures) {
+			succeeded += future.get(5, TimeUnit.MINUTES) ? 1 : 0;
+		}
+		long millis = (System.nanoTime() - begin) / 1_000_000;
+		StripeService.OperationStats stats = stripeService.getOperationStats().stream()
+				.filter(operation -> operation.operation().equals(StripeService.CREATE_PAYMENT_INTENT))
+				.findFirst().orElseThrow();
+		return new Result(name, millis, succeeded, server.requests() - sentBefore, stats);
+	}
+
+	private void print(Result result) {
+		LatencyHistogram.Snapshot latency = result.stats().latency();
+		System.out.printf("%-6s %6d ms (%,8.0f calls/s) ok %,6d sent %,6d rejected %,6d"
+				+ " | p50 %5d ms p95 %5d ms p99 %5d ms max %5d ms%n",
+				result.name(), result.millis(), CALLS * 1000.0 / Math.max(1, result.millis()), result.succeeded(),
+				result.sent(), result.stats().rejected(), latency.p50Millis(), latency.p95Millis(),
+				latency.p99Millis(), latency.maxMillis());
+	}
+}
@@ -0,0 +1,104 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.fleamarketsystem.util.CircuitBreaker;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.ApiException;
+import com.stripe.model.PaymentIntent;
+
+/**
+ * StripeService を偽の Stripe サーバー（FakeStripeServer）に向けて、冪等キー・タイムアウト・サーキットブレーカー・
+ * 応答時間の記録を確認する。SDK の再送は止め（max-network-retries=0）、応答待ちは 300 ms、3回続けて失敗したら止める。
+ */
+class StripeServiceTests {
+
+	private FakeStripeServer server;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		server = new FakeStripeServer();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.close();
+	}
+
+	private StripeService newService(long openSeconds) {
+		return new StripeService("sk_test_fake", server.baseUrl(), 1000, 300, 0, 3, openSeconds);
+	}
+
+	private static PaymentIntent create(StripeService stripeService, long orderId, long itemId) throws Exception {
+		return stripeService.createPaymentIntent(BigDecimal.valueOf(1200), "jpy", "テスト", orderId, itemId);
+	}
+
+	@Test
+	void paymentIntentCreationIsIdempotentPerOrderAndItem() throws Exception {
+		StripeService stripeService = newService(60);
+
+		PaymentIntent first = create(stripeService, 1L, 10L);
+		PaymentIntent again = create(stripeService, 1L, 10L);
+		PaymentIntent other = create(stripeService, 2L, 10L);
+
+		assertThat(again.getId()).isEqualTo(first.getId());
+		assertThat(other.getId()).isNotEqualTo(first.getId());
+		assertThat(server.replays()).isEqualTo(1);
+	}
+
+	@Test
+	void slowResponsesTimeOutAndOpenTheCircuit() throws Exception {
+		StripeService stripeService = newService(60);
+		server.setLatencyMillis(1000);
+
+		for (int i = 0; i < 3; i++) {
+			assertThatThrownBy(() -> stripeService.retrievePaymentIntent("pi_slow"))
+					.isInstanceOf(ApiConnectionException.class);
+		}
+		assertThat(stripeService.getCircuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+		// 開いている間は Stripe に送らずに断る
+		long requests = server.requests();
+		assertThatThrownBy(() -> stripeService.retrievePaymentIntent("pi_slow"))
+				.isInstanceOf(IllegalStateException.class);
+		assertThat(server.requests()).isEqualTo(requests);
+
+		assertThat(stripeService.getOperationStats())
+				.filteredOn(stats -> stats.operation().equals(StripeService.RETRIEVE_PAYMENT_INTENT))
+				.singleElement()
+				.satisfies(stats -> {
+					assertThat(stats.latency().count()).isEqualTo(3);
+					assertThat(stats.latency().errors()).isEqualTo(3);
+					assertThat(stats.latency().p50Millis()).isGreaterThanOrEqualTo(200);
+					assertThat(stats.rejected()).isEqualTo(1);
+				});
+	}
+
+	@Test
+	void halfOpenProbeClosesTheCircuitOnceStripeRecovers() throws Exception {
+		// 止める時間を 0 秒にし、開いた直後の呼び出しを試しの1件にする
+		StripeService stripeService = newService(0);
+		server.setFailureRate(1.0);
+		for (int i = 0; i < 3; i++) {
+			assertThatThrownBy(() -> stripeService.refund("pi_down", "refund-order-" + 1))
+					.isInstanceOf(ApiException.class);
+		}
+		assertThat(stripeService.getCircuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+		// 試しの1件が失敗すれば、また開く
+		assertThatThrownBy(() -> stripeService.refund("pi_down", "refund-order-" + 1))
+				.isInstanceOf(ApiException.class);
+		assertThat(stripeService.getCircuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+		server.setFailureRate(0);
+		stripeService.refund("pi_down", "refund-order-" + 1);
+		assertThat(stripeService.getCircuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+}
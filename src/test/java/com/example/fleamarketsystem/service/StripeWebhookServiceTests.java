@@ -0,0 +1,204 @@
+package com.example.fleamarketsystem.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.UUID;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.example.fleamarketsystem.entity.AppOrder;
+import com.example.fleamarketsystem.entity.Item;
+import com.example.fleamarketsystem.entity.ItemStatus;
+import com.example.fleamarketsystem.entity.OrderStatus;
+import com.example.fleamarketsystem.entity.User;
+import com.example.fleamarketsystem.repository.AppOrderRepository;
+import com.example.fleamarketsystem.repository.ItemRepository;
+import com.example.fleamarketsystem.repository.UserRepository;
+import com.example.fleamarketsystem.service.StripeWebhookService.Result;
+import com.stripe.exception.SignatureVerificationException;
+
+/**
+ * Stripe の代わりにテスト内で Webhook のペイロードに署名して送り、
+ * 署名の確認・イベント ID での重複除去・ワーカーでの注文への反映を確認する。
+ * 処理はワーカースレッドで別トランザクションとして行われるため、テスト全体をトランザクションにはしない。
+ */
+@SpringBootTest(properties = "stripe.webhook.secret=" + StripeWebhookServiceTests.SECRET)
+class StripeWebhookServiceTests {
+
+	static final String SECRET = "whsec_test_secret";
+
+	// Stripe の API は呼ばれないこと（Webhook の内容だけで反映する）を確かめる
+	@MockitoBean
+	private StripeService stripeService;
+
+	@Autowired
+	private StripeWebhookService stripeWebhookService;
+
+	@Autowired
+	private SalesRollupService salesRollupService;
+
+	@Autowired
+	private AppOrderRepository appOrderRepository;
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private User seller;
+	private User buyer;
+	private Item item;
+	private AppOrder order;
+	private String paymentIntentId;
+
+	// Stripe と同じ形式（t=タイムスタンプ,v1=HMAC-SHA256）の Stripe-Signature ヘッダーを作る
+	static String sign(String payload, String secret, long timestamp) throws Exception {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+		byte[] digest = mac.doFinal((timestamp + "." + payload).getBytes(StandardCharsets.UTF_8));
+		return "t=" + timestamp + ",v1=" + HexFormat.of().formatHex(digest);
+	}
+
+	static String event(String eventId, String type, String object) {
+		return """
+				{"id": "%s", "object": "event", "api_version": "2024-06-20", "created": %d,
+				 "livemode": false, "pending_webhooks": 1, "type": "%s",
+				 "data": {"object": %s}}""".formatted(eventId, System.currentTimeMillis() / 1000, type, object);
+	}
+
+	private Result send(String payload) throws Exception {
+		return stripeWebhookService.receive(payload, sign(payload, SECRET, System.currentTimeMillis() / 1000));
+	}
+
+	private User newUser(String name) {
+		User user = new User();
+		user.setName(name);
+		user.setEmail(name + "-" + UUID.randomUUID() + "@example.com");
+		user.setPassword("password");
+		user.setRole("USER");
+		return userRepository.save(user);
+	}
+
+	@BeforeEach
+	void setUp() {
+		seller = newUser("seller");
+		buyer = newUser("buyer");
+		item = new Item();
+		item.setSeller(seller);
+		item.setName("Webhook テスト");
+		item.setPrice(BigDecimal.valueOf(800));
+		item.setStatus(ItemStatus.LISTED);
+		item = itemRepository.save(item);
+
+		paymentIntentId = "pi_webhook_" + UUID.randomUUID().toString().replace("-", "");
+		order = new AppOrder();
+		order.setItem(item);
+		order.setBuyer(buyer);
+		order.setPrice(item.getPrice());
+		order.setStatus(OrderStatus.PAYMENT_PENDING);
+		order.setPaymentIntentId(paymentIntentId);
+		order.setCreatedAt(LocalDateTime.now());
+		order.setUpdatedAt(order.getCreatedAt());
+		order = appOrderRepository.save(order);
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("delete from stripe_webhook_event where payload like ?", "%" + paymentIntentId + "%");
+		appOrderRepository.deleteById(order.getId());
+		itemRepository.deleteById(item.getId());
+		userRepository.deleteById(buyer.getId());
+		userRepository.deleteById(seller.getId());
+		salesRollupService.reconcile();
+	}
+
+	// ワーカーが処理し終えるまで待つ
+	private OrderStatus awaitStatus(OrderStatus expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		OrderStatus status;
+		do {
+			status = appOrderRepository.findById(order.getId()).orElseThrow().getStatus();
+			if (status == expected) {
+				break;
+			}
+			Thread.sleep(50);
+		} while (System.currentTimeMillis() < deadline);
+		return status;
+	}
+
+	private String paymentSucceeded(String eventId) {
+		return event(eventId, "payment_intent.succeeded",
+				"{\"id\": \"" + paymentIntentId + "\", \"object\": \"payment_intent\", \"status\": \"succeeded\"}");
+	}
+
+	@Test
+	void rejectsPayloadWithInvalidSignature() throws Exception {
+		String payload = paymentSucceeded("evt_" + UUID.randomUUID());
+
+		assertThatThrownBy(() -> stripeWebhookService.receive(payload,
+				sign(payload, "whsec_other", System.currentTimeMillis() / 1000)))
+				.isInstanceOf(SignatureVerificationException.class);
+		// 許容時間（5分）より古い署名も受け付けない
+		assertThatThrownBy(() -> stripeWebhookService.receive(payload,
+				sign(payload, SECRET, System.currentTimeMillis() / 1000 - 3600)))
+				.isInstanceOf(SignatureVerificationException.class);
+
+		assertThat(appOrderRepository.findById(order.getId()).orElseThrow().getStatus())
+				.isEqualTo(OrderStatus.PAYMENT_PENDING);
+	}
+
+	@Test
+	void paymentSucceededStartsTradingOnceEvenIfDeliveredTwice() throws Exception {
+		String payload = paymentSucceeded("evt_" + UUID.randomUUID());
+
+		assertThat(send(payload)).isEqualTo(Result.ACCEPTED);
+		assertThat(send(payload)).isEqualTo(Result.DUPLICATE);
+
+		assertThat(awaitStatus(OrderStatus.TRADING)).isEqualTo(OrderStatus.TRADING);
+		assertThat(itemRepository.findById(item.getId()).orElseThrow().getStatus()).isEqualTo(ItemStatus.TRADING);
+		verifyNoInteractions(stripeService);
+	}
+
+	@Test
+	void chargeRefundedFinishesRefundingOrder() throws Exception {
+		jdbcTemplate.update("update app_order set status = ? where id = ?", OrderStatus.REFUNDING.getCode(),
+				order.getId());
+		String payload = event("evt_" + UUID.randomUUID(), "charge.refunded",
+				"{\"id\": \"ch_test\", \"object\": \"charge\", \"refunded\": true, \"payment_intent\": \""
+						+ paymentIntentId + "\"}");
+
+		assertThat(send(payload)).isEqualTo(Result.ACCEPTED);
+
+		assertThat(awaitStatus(OrderStatus.CANCELLED)).isEqualTo(OrderStatus.CANCELLED);
+		assertThat(itemRepository.findById(item.getId()).orElseThrow().getStatus()).isEqualTo(ItemStatus.LISTED);
+	}
+
+	@Test
+	void unhandledEventTypesAreAcknowledgedWithoutStoring() throws Exception {
+		String payload = event("evt_" + UUID.randomUUID(), "customer.created",
+				"{\"id\": \"cus_test\", \"object\": \"customer\", \"description\": \"" + paymentIntentId + "\"}");
+
+		assertThat(send(payload)).isEqualTo(Result.IGNORED);
+		assertThat(jdbcTemplate.queryForObject("select count(*) from stripe_webhook_event where payload = ?",
+				Long.class, payload)).isZero();
+	}
+}
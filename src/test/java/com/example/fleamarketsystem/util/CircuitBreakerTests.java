@@ -0,0 +1,66 @@
+package com.example.fleamarketsystem.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.fleamarketsystem.util.CircuitBreaker.State;
+
+/**
+ * サーキットブレーカーの開閉と、半開きのときに1件だけ通すことを確認する（時刻はテストで進める）。
+ */
+class CircuitBreakerTests {
+
+	private long now;
+	private final CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofSeconds(30), () -> now);
+
+	private void fail(int times) {
+		for (int i = 0; i < times; i++) {
+			assertThat(breaker.tryAcquire()).isTrue();
+			breaker.recordFailure();
+		}
+	}
+
+	@Test
+	void opensAfterConsecutiveFailuresOnly() {
+		fail(2);
+		breaker.recordSuccess();
+		fail(2);
+		assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+
+		fail(1);
+		assertThat(breaker.getState()).isEqualTo(State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+	}
+
+	@Test
+	void halfOpenAllowsSingleProbe() {
+		fail(3);
+		now += TimeUnit.SECONDS.toNanos(30);
+
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+
+		breaker.recordSuccess();
+		assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+		assertThat(breaker.tryAcquire()).isTrue();
+	}
+
+	@Test
+	void failedProbeReopensForAnotherPeriod() {
+		fail(3);
+		now += TimeUnit.SECONDS.toNanos(30);
+		assertThat(breaker.tryAcquire()).isTrue();
+		breaker.recordFailure();
+
+		assertThat(breaker.getState()).isEqualTo(State.OPEN);
+		now += TimeUnit.SECONDS.toNanos(29);
+		assertThat(breaker.tryAcquire()).isFalse();
+		now += TimeUnit.SECONDS.toNanos(1);
+		assertThat(breaker.tryAcquire()).isTrue();
+	}
+}
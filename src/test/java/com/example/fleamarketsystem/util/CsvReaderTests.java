@@ -0,0 +1,43 @@
+package com.example.fleamarketsystem.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+class CsvReaderTests {
+
+	@Test
+	void readsQuotedFieldsWithCommasNewlinesAndEscapedQuotes() throws IOException {
+		String csv = "\uFEFF商品名,説明,価格\r\n"
+				+ "\"カメラ, 中古\",\"1行目\n2行目\",1000\r\n"
+				+ "\"\"\"限定\"\"版\",,500\n";
+		try (CsvReader reader = new CsvReader(new StringReader(csv))) {
+			assertThat(reader.next()).containsExactly("商品名", "説明", "価格");
+			assertThat(reader.next()).containsExactly("カメラ, 中古", "1行目\n2行目", "1000");
+			assertThat(reader.getRecordLine()).isEqualTo(2);
+			assertThat(reader.next()).containsExactly("\"限定\"版", "", "500");
+			assertThat(reader.getRecordLine()).isEqualTo(4);
+			assertThat(reader.next()).isNull();
+		}
+	}
+
+	@Test
+	void skipsBlankLinesAndReadsLastRecordWithoutNewline() throws IOException {
+		try (CsvReader reader = new CsvReader(new StringReader("a,b\n\n\nc,d"))) {
+			assertThat(reader.next()).containsExactly("a", "b");
+			assertThat(reader.next()).containsExactly("c", "d");
+			assertThat(reader.getRecordLine()).isEqualTo(4);
+			assertThat(reader.next()).isNull();
+		}
+	}
+
+	@Test
+	void rejectsUnterminatedQuote() {
+		CsvReader reader = new CsvReader(new StringReader("a,\"b\nc,d\n"));
+		assertThatThrownBy(reader::next).isInstanceOf(IOException.class);
+	}
+}
@@ -0,0 +1,50 @@
+package com.example.fleamarketsystem.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+class CsvWriterTests {
+
+	@Test
+	void quotesFieldsThatNeedIt() throws IOException {
+		StringWriter out = new StringWriter();
+		CsvWriter csv = new CsvWriter(out).bom();
+		csv.row("商品名", "説明");
+		csv.field("カメラ, 中古").field("1行目\n2行目").field(1000L).field((Object) null).field(true).endRow();
+		csv.field("\"限定\"版").field(new BigDecimal("1500")).endRow();
+
+		assertThat(out.toString()).isEqualTo("\uFEFF商品名,説明\r\n"
+				+ "\"カメラ, 中古\",\"1行目\n2行目\",1000,,true\r\n"
+				+ "\"\"\"限定\"\"版\",1500\r\n");
+	}
+
+	@Test
+	void prefixesFormulaLikeText() throws IOException {
+		StringWriter out = new StringWriter();
+		new CsvWriter(out).row("=1+1", "@SUM(A1)", "-2", "a=b");
+
+		assertThat(out.toString()).isEqualTo("\"'=1+1\",\"'@SUM(A1)\",\"'-2\",a=b\r\n");
+	}
+
+	@Test
+	void outputIsReadableByCsvReader() throws IOException {
+		StringWriter out = new StringWriter();
+		CsvWriter csv = new CsvWriter(out).bom();
+		// 使い回すバッファより長い行も書き出せる
+		String longText = "あ".repeat(1000) + ",\"";
+		csv.row("a", longText, "");
+		csv.row("b", "c", "d");
+
+		try (CsvReader reader = new CsvReader(new StringReader(out.toString()))) {
+			assertThat(reader.next()).containsExactly("a", longText, "");
+			assertThat(reader.next()).containsExactly("b", "c", "d");
+			assertThat(reader.next()).isNull();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.example.fleamarketsystem.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.fleamarketsystem.util.LatencyHistogram.Snapshot;
+
+/**
+ * 度数分布から求める百分位（区切りの上限で返す）と、失敗件数・最大値を確認する。
+ */
+class LatencyHistogramTests {
+
+	private static long millis(long value) {
+		return TimeUnit.MILLISECONDS.toNanos(value);
+	}
+
+	@Test
+	void percentilesUseBucketUpperBounds() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 90; i++) {
+			histogram.record(millis(3), true);
+		}
+		for (int i = 0; i < 9; i++) {
+			histogram.record(millis(150), true);
+		}
+		histogram.record(millis(45_000), false);
+
+		Snapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.count()).isEqualTo(100);
+		assertThat(snapshot.errors()).isEqualTo(1);
+		assertThat(snapshot.p50Millis()).isEqualTo(5);
+		assertThat(snapshot.p95Millis()).isEqualTo(200);
+		assertThat(snapshot.p99Millis()).isEqualTo(200);
+		// 最後の区切りを超えたものは最大値で返す
+		assertThat(snapshot.maxMillis()).isEqualTo(45_000);
+	}
+
+	@Test
+	void emptyHistogramReportsZero() {
+		assertThat(new LatencyHistogram().snapshot()).isEqualTo(new Snapshot(0, 0, 0, 0, 0, 0));
+	}
+}